@@ -0,0 +1,121 @@
+package com.automic.agilecentral.actions;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.automic.agilecentral.benchmark.Fixtures;
+import com.automic.agilecentral.exception.AutomicException;
+import com.automic.agilecentral.util.CSVWriter;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+
+/**
+ * Benchmarks the conversion of a page of work items from the query response to csv lines as done by
+ * {@link ExportWorkItemsAction}.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportBenchmark {
+
+    /**
+     * Width of the work items.
+     */
+    @Param({ Fixtures.NARROW, Fixtures.WIDE })
+    public String width;
+
+    /**
+     * Number of work items in the page.
+     */
+    @Param({ "20", "200" })
+    public int rows;
+
+    /**
+     * Fields to export, empty to export all the fields of the work item.
+     */
+    @Param({ "", "FormattedID,Name,ScheduleState,Owner,Project,PlanEstimate,LastUpdateDate" })
+    public String fields;
+
+    private String response;
+    private JsonArray results;
+    private ExportWorkItemsAction mappedAction;
+    private CSVWriter writer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, AutomicException {
+        response = Fixtures.queryResponse(width, rows);
+        results = Fixtures.results(width, rows);
+        mappedAction = newAction();
+        mappedAction.prepareUserFieldMapping(results.get(0).getAsJsonObject());
+        writer = new CSVWriter(Fixtures.nullFile(), Collections.<String> emptyList());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        writer.close();
+    }
+
+    /**
+     * The whole json to csv path of a page: parse the response, map the fields and write each work item.
+     */
+    @Benchmark
+    public void page() throws IOException, AutomicException {
+        JsonArray page = new JsonParser().parse(response).getAsJsonObject().getAsJsonObject("QueryResult")
+                .getAsJsonArray("Results");
+        ExportWorkItemsAction action = newAction();
+        action.prepareUserFieldMapping(page.get(0).getAsJsonObject());
+        for (int i = 0; i < page.size(); i++) {
+            writer.writeLine(action.readRecord(page.get(i).getAsJsonObject()));
+        }
+    }
+
+    /**
+     * Mapping of the fields which is done for the first work item of the export, it includes creating the action.
+     */
+    @Benchmark
+    public ExportWorkItemsAction prepareUserFieldMapping() throws AutomicException {
+        ExportWorkItemsAction action = newAction();
+        action.prepareUserFieldMapping(results.get(0).getAsJsonObject());
+        return action;
+    }
+
+    /**
+     * Reading the values of the parsed work items of a page.
+     */
+    @Benchmark
+    public void readRecord(Blackhole blackhole) throws AutomicException {
+        for (int i = 0; i < results.size(); i++) {
+            List<String> record = mappedAction.readRecord(results.get(i).getAsJsonObject());
+            blackhole.consume(record);
+        }
+    }
+
+    private ExportWorkItemsAction newAction() throws AutomicException {
+        ExportWorkItemsAction action = new ExportWorkItemsAction();
+        if (!fields.isEmpty()) {
+            action.prepareUserFields(fields);
+        }
+        return action;
+    }
+}
@@ -0,0 +1,188 @@
+package com.automic.agilecentral.actions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.automic.agilecentral.benchmark.Fixtures;
+import com.automic.agilecentral.benchmark.wsapi.FakeWsapiServer;
+import com.automic.agilecentral.client.Client;
+import com.automic.agilecentral.constants.Constants;
+import com.automic.agilecentral.util.CommonUtil;
+import com.automic.agilecentral.util.ConsoleWriter;
+
+/**
+ * Benchmarks whole actions, as executed by the client, against a {@link FakeWsapiServer} which throttles the requests
+ * and fails some of them. Throttled requests are retried, failed ones are not, hence an export may only fail if the
+ * server has failed a request. A bulk edit continues on errors and may only fail as many work items as the server has
+ * throttled or failed requests.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class FakeServerBenchmark {
+
+    private static final Pattern FAILED_COUNT = Pattern.compile("UC4RB_AC_FAILED_COUNT ::=(\\d+)");
+
+    /**
+     * Number of work items of each type.
+     */
+    @Param({ "2000" })
+    public int items;
+
+    /**
+     * Width of the work items.
+     */
+    @Param({ Fixtures.WIDE })
+    public String width;
+
+    /**
+     * Average latency of the server in milliseconds.
+     */
+    @Param({ "5" })
+    public int latency;
+
+    /**
+     * Requests per second above which the server answers with 429.
+     */
+    @Param({ "100" })
+    public int rate;
+
+    /**
+     * Concurrent requests above which the server answers with 503.
+     */
+    @Param({ "2" })
+    public int concurrent;
+
+    /**
+     * Share of the requests which fail with 500.
+     */
+    @Param({ "0.01" })
+    public double errors;
+
+    /**
+     * Number of requests each action sends in parallel.
+     */
+    @Param({ "4" })
+    public int concurrency;
+
+    private FakeWsapiServer server;
+    private String baseUrl;
+    private File directory;
+    private File exportFile;
+    private File descriptionFile;
+    private Map<String, String> environment;
+    private int responseCode;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new FakeWsapiServer(0);
+        server.setDataSet(items, width);
+        server.setLatency(latency, latency / 2);
+        server.setThrottling(rate, concurrent);
+        server.setErrorRate(errors);
+        server.setSeed(7);
+        baseUrl = server.start();
+
+        directory = Files.createTempDirectory("fakeserver").toFile();
+        exportFile = new File(directory, "export.csv");
+        descriptionFile = new File(directory, "description.txt");
+        Files.write(descriptionFile.toPath(), "Updated by the benchmark".getBytes(StandardCharsets.UTF_8));
+
+        environment = new HashMap<>();
+        environment.put(Constants.ENV_PASSWORD, "password");
+        environment.put(Constants.ENV_REF_CACHE_FILE, new File(directory, "refcache").getPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop();
+        System.out.println("Fake WSAPI server handled " + server);
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    /**
+     * Export of all the defects, page by page.
+     */
+    @Benchmark
+    public String export() {
+        long failed = server.getFailedCount();
+        String output = execute("-action", "ExportWorkItemsAction", "-workitemtype", "defect", "-limit", String
+                .valueOf(items), "-concurrency", String.valueOf(concurrency), "-exportfilepath", exportFile.getPath());
+        if (responseCode != 0 && server.getFailedCount() == failed) {
+            throw new IllegalStateException("Export failed although no request has failed\n" + output);
+        }
+        return output;
+    }
+
+    /**
+     * Update of the description of the defects selected by a filter, page by page.
+     */
+    @Benchmark
+    public String bulkEdit() {
+        long refused = server.getThrottledCount() + server.getFailedCount();
+        String output = execute("-action", "BulkEditWorkItemAction", "-workitemtype", "defect", "-filters",
+                "(ObjectID > 0)", "-descriptionfilepath", descriptionFile.getPath(), "-concurrency", String.valueOf(
+                        concurrency), "-continueonerror", "YES");
+        Matcher matcher = FAILED_COUNT.matcher(output);
+        if (!matcher.find()) {
+            throw new IllegalStateException("Bulk edit did not complete\n" + output);
+        }
+        refused = server.getThrottledCount() + server.getFailedCount() - refused;
+        if (Long.parseLong(matcher.group(1)) > refused) {
+            throw new IllegalStateException(String.format("Bulk edit failed %s work items but only %s requests "
+                    + "have been refused\n%s", matcher.group(1), refused, output));
+        }
+        return output;
+    }
+
+    private String execute(String... params) {
+        String[] args = new String[params.length + 6];
+        System.arraycopy(params, 0, args, 0, params.length);
+        args[params.length] = "-baseurl";
+        args[params.length + 1] = baseUrl;
+        args[params.length + 2] = "-username";
+        args[params.length + 3] = "user";
+        args[params.length + 4] = "-basicauth";
+        args[params.length + 5] = "YES";
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        // the actions read the environment and write the output of the current thread
+        CommonUtil.setEnvironment(environment);
+        ConsoleWriter.redirect(output);
+        try {
+            responseCode = Client.execute(args);
+        } finally {
+            ConsoleWriter.redirect(null);
+            CommonUtil.setEnvironment(null);
+        }
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,123 @@
+package com.automic.agilecentral.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Recorded WSAPI query responses used by the benchmarks. The recorded pages hold a few work items of a given width,
+ * pages of any size are built by repeating them.
+ *
+ */
+public final class Fixtures {
+
+    /**
+     * Work items with the fields shown by the default views.
+     */
+    public static final String NARROW = "narrow";
+
+    /**
+     * Work items as fetched with fetch=true including collections, custom fields and rich text.
+     */
+    public static final String WIDE = "wide";
+
+    private Fixtures() {
+    }
+
+    /**
+     * Method to build a query response holding the given number of work items.
+     *
+     * @param width
+     *            {@link #NARROW} or {@link #WIDE}
+     * @param rows
+     *            number of work items
+     * @return query response as sent by the server
+     * @throws IOException
+     */
+    public static String queryResponse(String width, int rows) throws IOException {
+        JsonObject response = load(width);
+        JsonObject queryResult = response.getAsJsonObject("QueryResult");
+        queryResult.add("Results", results(width, rows));
+        queryResult.addProperty("TotalResultCount", rows);
+        return response.toString();
+    }
+
+    /**
+     * Method to build the results of a query response holding the given number of work items.
+     *
+     * @param width
+     *            {@link #NARROW} or {@link #WIDE}
+     * @param rows
+     *            number of work items
+     * @return work items
+     * @throws IOException
+     */
+    public static JsonArray results(String width, int rows) throws IOException {
+        JsonArray recorded = load(width).getAsJsonObject("QueryResult").getAsJsonArray("Results");
+        JsonArray results = new JsonArray();
+        for (int i = 0; i < rows; i++) {
+            results.add(recorded.get(i % recorded.size()));
+        }
+        return results;
+    }
+
+    /**
+     * Method to read the values of the recorded work items in the same form as the export writes them to the csv file
+     * i.e. primitive values and the names of referenced objects.
+     *
+     * @param width
+     *            {@link #NARROW} or {@link #WIDE}
+     * @return values of each work item
+     * @throws IOException
+     */
+    public static List<List<String>> records(String width) throws IOException {
+        JsonArray recorded = load(width).getAsJsonObject("QueryResult").getAsJsonArray("Results");
+        List<List<String>> records = new ArrayList<>(recorded.size());
+        for (JsonElement workItem : recorded) {
+            List<String> record = new ArrayList<>();
+            for (Map.Entry<String, JsonElement> field : workItem.getAsJsonObject().entrySet()) {
+                JsonElement value = field.getValue();
+                if (value.isJsonPrimitive()) {
+                    record.add(value.getAsString());
+                } else if (value.isJsonObject() && value.getAsJsonObject().has("_refObjectName")) {
+                    record.add(value.getAsJsonObject().get("_refObjectName").getAsString());
+                } else if (value.isJsonNull()) {
+                    record.add(null);
+                }
+            }
+            records.add(record);
+        }
+        return records;
+    }
+
+    /**
+     * Method to get the file which discards everything written to it, so that the benchmarks measure the formatting
+     * rather than the disk.
+     *
+     * @return path of the null device
+     */
+    public static String nullFile() {
+        return System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null";
+    }
+
+    private static JsonObject load(String width) throws IOException {
+        String resource = "/wsapi/hierarchicalrequirement-" + width + ".json";
+        try (InputStream in = Fixtures.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("Fixture not found " + resource);
+            }
+            Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+            return new JsonParser().parse(reader).getAsJsonObject();
+        }
+    }
+}
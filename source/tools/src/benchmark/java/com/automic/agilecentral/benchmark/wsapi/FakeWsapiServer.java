@@ -0,0 +1,551 @@
+package com.automic.agilecentral.benchmark.wsapi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.automic.agilecentral.benchmark.Fixtures;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stand-in for the CA Agile Central web services API, so that the actions can be load tested offline with repeatable
+ * numbers. It implements the endpoints used by the actions i.e. queries with paging, filters and ordering, creating,
+ * updating and deleting objects including attachment contents and conversation posts, batch requests and the security
+ * token of the basic authentication. Latency, throttling, errors and the size of the data set are configurable.
+ *
+ */
+public final class FakeWsapiServer {
+
+    /**
+     * Path of the web services API.
+     */
+    public static final String WSAPI_PATH = "/slm/webservice/v2.0";
+
+    private static final int SC_OK = 200;
+    private static final int SC_NOT_FOUND = 404;
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    private static final int SC_INTERNAL_SERVER_ERROR = 500;
+    private static final int SC_SERVICE_UNAVAILABLE = 503;
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 2000;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final Pattern CREATE = Pattern.compile("^/(.+)/create(\\.js)?$");
+    private static final Pattern OBJECT = Pattern.compile("^/(.+)/(\\d+)(\\.js)?$");
+    private static final Pattern COLLECTION = Pattern.compile("^/(.+?)(\\.js)?$");
+    private static final List<String> NAMED_TYPES = Arrays.asList("workspace", "project", "user", "subscription");
+
+    private final int port;
+    private long latency;
+    private long latencyJitter;
+    private int maxRate;
+    private int maxConcurrent;
+    private double errorRate;
+    private int itemCount = 1000;
+    private String width = Fixtures.NARROW;
+    private int threads = 64;
+    private Random random = new Random(1);
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private long rateWindow;
+    private int rateCount;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private WorkItemStore store;
+    private String baseUrl;
+
+    /**
+     * @param port
+     *            port to listen on, 0 for any free port
+     */
+    public FakeWsapiServer(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Method to delay every response.
+     *
+     * @param millis
+     *            average latency
+     * @param jitter
+     *            maximum deviation from the average latency
+     */
+    public void setLatency(long millis, long jitter) {
+        this.latency = millis;
+        this.latencyJitter = jitter;
+    }
+
+    /**
+     * Method to throttle the clients like the server does. Requests above the rate are answered with 429 and a
+     * Retry-After header, requests above the number of concurrent requests with 503.
+     *
+     * @param requestsPerSecond
+     *            maximum number of requests per second, 0 for no limit
+     * @param concurrentRequests
+     *            maximum number of concurrent requests, 0 for no limit
+     */
+    public void setThrottling(int requestsPerSecond, int concurrentRequests) {
+        this.maxRate = requestsPerSecond;
+        this.maxConcurrent = concurrentRequests;
+    }
+
+    /**
+     * Method to fail the given share of the requests with 500.
+     *
+     * @param rate
+     *            share of failed requests between 0 and 1
+     */
+    public void setErrorRate(double rate) {
+        this.errorRate = rate;
+    }
+
+    /**
+     * Method to define the data set.
+     *
+     * @param count
+     *            number of work items of each type
+     * @param recordWidth
+     *            {@link Fixtures#NARROW} or {@link Fixtures#WIDE}
+     */
+    public void setDataSet(int count, String recordWidth) {
+        this.itemCount = count;
+        this.width = recordWidth;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Method to make the injected latency and errors repeatable.
+     *
+     * @param seed
+     */
+    public void setSeed(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Method to start the server.
+     *
+     * @return base URL of the server to be passed to the actions
+     * @throws IOException
+     */
+    public String start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        store = new WorkItemStore(baseUrl + WSAPI_PATH, width, itemCount);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                FakeWsapiServer.this.handle(exchange);
+            }
+        });
+        server.start();
+        return baseUrl;
+    }
+
+    /**
+     * Method to stop the server.
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getThrottledCount() {
+        return throttled.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Method to count the work items of a type e.g. to verify the outcome of a bulk operation.
+     *
+     * @param type
+     * @return number of work items
+     */
+    public int count(String type) {
+        return store.count(type);
+    }
+
+    @Override
+    public String toString() {
+        return "[requests: " + requests + "; throttled: " + throttled + "; failed: " + failed + "]";
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        int concurrent = inFlight.incrementAndGet();
+        try {
+            String body = new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8);
+            delay();
+            if (maxConcurrent > 0 && concurrent > maxConcurrent) {
+                throttled.incrementAndGet();
+                send(exchange, SC_SERVICE_UNAVAILABLE, null);
+            } else if (isRateExceeded()) {
+                throttled.incrementAndGet();
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                send(exchange, SC_TOO_MANY_REQUESTS, null);
+            } else if (errorRate > 0 && random.nextDouble() < errorRate) {
+                failed.incrementAndGet();
+                send(exchange, SC_INTERNAL_SERVER_ERROR, null);
+            } else {
+                String response = dispatch(exchange.getRequestMethod(), exchange.getRequestURI().getPath(),
+                        parseParams(exchange.getRequestURI().getRawQuery()), body);
+                send(exchange, response != null ? SC_OK : SC_NOT_FOUND, response);
+            }
+        } catch (IllegalArgumentException | IllegalStateException | JsonParseException e) {
+            send(exchange, SC_OK, errorResult("QueryResult", e.getMessage()));
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private String dispatch(String method, String path, Map<String, String> params, String body) throws IOException {
+        if (!path.startsWith("/slm/webservice/")) {
+            return null;
+        }
+        int versionEnd = path.indexOf('/', "/slm/webservice/".length());
+        String resource = versionEnd < 0 ? "" : path.substring(versionEnd);
+        if (resource.startsWith("/security/authorize")) {
+            return "{\"OperationResult\":{\"Errors\":[],\"Warnings\":[],\"SecurityToken\":\"fake-security-token\"}}";
+        }
+        if (resource.startsWith("/batch") && "POST".equals(method)) {
+            return batch(body);
+        }
+        StringWriter out = new StringWriter();
+        JsonWriter writer = new JsonWriter(out);
+        Matcher matcher = CREATE.matcher(resource);
+        if (matcher.matches() && "POST".equals(method)) {
+            writer.beginObject().name("CreateResult");
+            create(writer, matcher.group(1), body, parseFetch(params.get("fetch"), null));
+            writer.endObject();
+            return out.toString();
+        }
+        matcher = OBJECT.matcher(resource);
+        if (matcher.matches()) {
+            WorkItemStore.WorkItem item = store.get(matcher.group(1), Long.parseLong(matcher.group(2)));
+            writer.beginObject();
+            if ("GET".equals(method)) {
+                if (item == null) {
+                    return null;
+                }
+                writer.name(item.get("_type").getAsString());
+                item.write(writer, parseFetch(params.get("fetch"), null));
+            } else {
+                writer.name("OperationResult");
+                operate(writer, method, item, body, parseFetch(params.get("fetch"), null));
+            }
+            writer.endObject();
+            return out.toString();
+        }
+        matcher = COLLECTION.matcher(resource);
+        if (matcher.matches() && "GET".equals(method)) {
+            query(writer, matcher.group(1), params);
+            return out.toString();
+        }
+        return null;
+    }
+
+    private void query(JsonWriter writer, String type, Map<String, String> params) throws IOException {
+        String query = params.get("query");
+        QueryExpression expression = query != null && !query.trim().isEmpty() ? QueryExpression.parse(query) : null;
+        Set<String> fetch = parseFetch(params.get("fetch"), Collections.<String> emptySet());
+        int start = Math.max(parseInt(params.get("start"), 1), 1);
+        int pageSize = Math.min(Math.max(parseInt(params.get("pagesize"), DEFAULT_PAGE_SIZE), 1), MAX_PAGE_SIZE);
+
+        writer.beginObject().name("QueryResult").beginObject();
+        writer.name("_rallyAPIMajor").value("2").name("_rallyAPIMinor").value("0");
+        writer.name("Errors").beginArray().endArray().name("Warnings").beginArray().endArray();
+        if (NAMED_TYPES.contains(type.toLowerCase())) {
+            // every workspace, project or user exists
+            List<String> names = expression != null ? expression.getEqualValues("Name") : null;
+            names = names != null ? names : Arrays.asList("Default " + type);
+            writer.name("TotalResultCount").value(names.size()).name("StartIndex").value(start);
+            writer.name("PageSize").value(pageSize).name("Results").beginArray();
+            for (String name : names) {
+                writer.beginObject();
+                writer.name("_ref").value(baseUrl + WSAPI_PATH + "/" + type + "/" + (name.hashCode() & 0xffffff));
+                writer.name("_refObjectName").value(name).name("Name").value(name);
+                writer.name("_type").value(type);
+                writer.endObject();
+            }
+        } else {
+            List<WorkItemStore.WorkItem> items = store.query(type, expression, params.get("order"));
+            writer.name("TotalResultCount").value(items.size()).name("StartIndex").value(start);
+            writer.name("PageSize").value(pageSize).name("Results").beginArray();
+            for (int i = start - 1; i < items.size() && i < start - 1 + pageSize; i++) {
+                items.get(i).write(writer, fetch);
+            }
+        }
+        writer.endArray().endObject().endObject();
+    }
+
+    private void create(JsonWriter writer, String type, String body, Set<String> fetch) throws IOException {
+        JsonObject fields = unwrap(body);
+        if (fields == null) {
+            writeResult(writer, null, "Cannot parse object to create");
+        } else {
+            writeResult(writer, store.create(type, fields), null, fetch);
+        }
+    }
+
+    private void operate(JsonWriter writer, String method, WorkItemStore.WorkItem item, String body, Set<String> fetch)
+            throws IOException {
+        if (item == null) {
+            writeResult(writer, null, "Cannot find object to " + ("DELETE".equals(method) ? "delete" : "update"));
+        } else if ("DELETE".equals(method)) {
+            store.delete(item);
+            writeResult(writer, null, null);
+        } else {
+            JsonObject fields = unwrap(body);
+            if (fields == null) {
+                writeResult(writer, null, "Cannot parse object to update");
+            } else {
+                writeResult(writer, store.update(item, fields), null, fetch);
+            }
+        }
+    }
+
+    // Every entry of the batch is executed like the request to its path.
+    private String batch(String body) throws IOException {
+        StringWriter out = new StringWriter();
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginObject().name("BatchResult").beginObject();
+        writer.name("Errors").beginArray().endArray().name("Warnings").beginArray().endArray();
+        writer.name("Results").beginArray();
+        for (JsonElement element : new JsonParser().parse(body).getAsJsonObject().getAsJsonArray("Batch")) {
+            JsonObject entry = element.getAsJsonObject().getAsJsonObject("Entry");
+            String[] path = entry.get("Path").getAsString().split("\\?", 2);
+            Map<String, String> params = parseParams(path.length > 1 ? path[1] : null);
+            Set<String> fetch = parseFetch(params.get("fetch"), null);
+            String method = entry.get("Method").getAsString();
+            String entryBody = entry.has("Body") ? entry.get("Body").toString() : null;
+            Matcher matcher = CREATE.matcher(path[0]);
+            if (matcher.matches()) {
+                create(writer, matcher.group(1), entryBody, fetch);
+                continue;
+            }
+            matcher = OBJECT.matcher(path[0]);
+            if (matcher.matches()) {
+                WorkItemStore.WorkItem item = store.get(matcher.group(1), Long.parseLong(matcher.group(2)));
+                operate(writer, method, item, entryBody, fetch);
+            } else {
+                writeResult(writer, null, "Unsupported batch entry " + path[0]);
+            }
+        }
+        writer.endArray().endObject().endObject();
+        return out.toString();
+    }
+
+    private void writeResult(JsonWriter writer, WorkItemStore.WorkItem item, String error) throws IOException {
+        writeResult(writer, item, error, null);
+    }
+
+    private void writeResult(JsonWriter writer, WorkItemStore.WorkItem item, String error, Set<String> fetch)
+            throws IOException {
+        writer.beginObject();
+        writer.name("_rallyAPIMajor").value("2").name("_rallyAPIMinor").value("0");
+        writer.name("Errors").beginArray();
+        if (error != null) {
+            writer.value(error);
+        }
+        writer.endArray().name("Warnings").beginArray().endArray();
+        if (item != null) {
+            writer.name("Object");
+            item.write(writer, fetch);
+        }
+        writer.endObject();
+    }
+
+    private static String errorResult(String result, String error) throws IOException {
+        StringWriter out = new StringWriter();
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginObject().name(result).beginObject();
+        writer.name("Errors").beginArray().value(error).endArray().name("Warnings").beginArray().endArray();
+        writer.name("TotalResultCount").value(0).name("Results").beginArray().endArray();
+        writer.endObject().endObject();
+        return out.toString();
+    }
+
+    // the fields are wrapped into an object named by the type e.g. {"Defect": {...}}
+    private static JsonObject unwrap(String body) {
+        if (body == null || body.isEmpty()) {
+            return null;
+        }
+        JsonElement request = new JsonParser().parse(body);
+        if (!request.isJsonObject()) {
+            return null;
+        }
+        for (Map.Entry<String, JsonElement> member : request.getAsJsonObject().entrySet()) {
+            if (member.getValue().isJsonObject()) {
+                return member.getValue().getAsJsonObject();
+            }
+        }
+        return null;
+    }
+
+    private void delay() {
+        long millis = latency;
+        if (latencyJitter > 0) {
+            millis += (long) ((random.nextDouble() * 2 - 1) * latencyJitter);
+        }
+        if (millis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // requests counted in windows of a second
+    private synchronized boolean isRateExceeded() {
+        if (maxRate <= 0) {
+            return false;
+        }
+        long window = System.nanoTime() / TimeUnit.SECONDS.toNanos(1);
+        if (window != rateWindow) {
+            rateWindow = window;
+            rateCount = 0;
+        }
+        return ++rateCount > maxRate;
+    }
+
+    private static void send(HttpExchange exchange, int status, String response) throws IOException {
+        if (response == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Set<String> parseFetch(String fetch, Set<String> defaultFetch) {
+        if (fetch == null || fetch.isEmpty()) {
+            return defaultFetch;
+        }
+        if ("true".equalsIgnoreCase(fetch)) {
+            return null;
+        }
+        if ("false".equalsIgnoreCase(fetch)) {
+            return Collections.emptySet();
+        }
+        // the fields are matched regardless of their case like the server does
+        Set<String> fields = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        fields.addAll(Arrays.asList(fetch.split(",")));
+        return fields;
+    }
+
+    private static Map<String, String> parseParams(String query) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                String[] pair = param.split("=", 2);
+                params.put(URLDecoder.decode(pair[0], "UTF-8"), pair.length > 1 ? URLDecoder.decode(pair[1],
+                        "UTF-8") : "");
+            }
+        }
+        return params;
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        try {
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int length;
+        while ((length = in.read(buffer)) > 0) {
+            out.write(buffer, 0, length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Main method which runs the server until the process is stopped. The options are given as pairs e.g. -port 18080
+     * -items 100000 -width wide -latency 50 -jitter 20 -rate 100 -concurrent 16 -errors 0.01 -seed 7
+     *
+     * @param args
+     *            options
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^-+", ""), args[i + 1]);
+        }
+        final FakeWsapiServer fake = new FakeWsapiServer(parseInt(options.get("port"), 0));
+        fake.setLatency(parseInt(options.get("latency"), 0), parseInt(options.get("jitter"), 0));
+        fake.setThrottling(parseInt(options.get("rate"), 0), parseInt(options.get("concurrent"), 0));
+        fake.setErrorRate(options.containsKey("errors") ? Double.parseDouble(options.get("errors")) : 0);
+        fake.setDataSet(parseInt(options.get("items"), fake.itemCount), options.containsKey("width") ? options
+                .get("width") : fake.width);
+        fake.setThreads(parseInt(options.get("threads"), fake.threads));
+        if (options.containsKey("seed")) {
+            fake.setSeed(Long.parseLong(options.get("seed")));
+        }
+        String url = fake.start();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                System.out.println("Fake WSAPI server handled " + fake);
+            }
+        });
+        System.out.println("Fake WSAPI server is listening on " + url);
+    }
+}
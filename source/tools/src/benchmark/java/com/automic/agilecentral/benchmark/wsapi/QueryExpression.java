@@ -0,0 +1,288 @@
+package com.automic.agilecentral.benchmark.wsapi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Query expression of the WSAPI e.g. ((FormattedID = "US1") OR (LastUpdateDate >= "2017-01-01")). Conditions on
+ * objects compare the reference or the name of the referenced object.
+ *
+ */
+abstract class QueryExpression {
+
+    /**
+     * Method to parse the query expression.
+     *
+     * @param query
+     *            query parameter of the request
+     * @return expression
+     * @throws IllegalArgumentException
+     *             if the query can not be parsed
+     */
+    static QueryExpression parse(String query) {
+        Parser parser = new Parser(query.trim());
+        QueryExpression expression = parser.expression();
+        parser.skipWhitespace();
+        if (parser.pos != parser.query.length()) {
+            throw parser.error();
+        }
+        return expression;
+    }
+
+    abstract boolean matches(WorkItemStore.WorkItem item);
+
+    /**
+     * Method to get the values of the field if the expression only matches items whose field is equal to one of
+     * them, so that the items can be looked up instead of scanning all of them.
+     *
+     * @param field
+     * @return values or null
+     */
+    abstract List<String> getEqualValues(String field);
+
+    private static final class Logical extends QueryExpression {
+
+        private final QueryExpression left;
+        private final QueryExpression right;
+        private final boolean and;
+
+        Logical(QueryExpression left, QueryExpression right, boolean and) {
+            this.left = left;
+            this.right = right;
+            this.and = and;
+        }
+
+        @Override
+        boolean matches(WorkItemStore.WorkItem item) {
+            return and ? left.matches(item) && right.matches(item) : left.matches(item) || right.matches(item);
+        }
+
+        @Override
+        List<String> getEqualValues(String field) {
+            if (and) {
+                return null;
+            }
+            List<String> leftValues = left.getEqualValues(field);
+            List<String> rightValues = leftValues != null ? right.getEqualValues(field) : null;
+            if (rightValues == null) {
+                return null;
+            }
+            List<String> values = new ArrayList<>(leftValues);
+            values.addAll(rightValues);
+            return values;
+        }
+    }
+
+    private static final class Condition extends QueryExpression {
+
+        private final String field;
+        private final String operator;
+        private final List<String> values;
+
+        Condition(String field, String operator, List<String> values) {
+            this.field = field;
+            this.operator = operator;
+            this.values = values;
+        }
+
+        @Override
+        boolean matches(WorkItemStore.WorkItem item) {
+            String value = valueOf(item);
+            switch (operator) {
+                case "=":
+                    return equal(value, values.get(0));
+                case "!=":
+                    return !equal(value, values.get(0));
+                case "in":
+                    for (String candidate : values) {
+                        if (equal(value, candidate)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case "contains":
+                    return value != null && value.toLowerCase().contains(values.get(0).toLowerCase());
+                case "!contains":
+                    return value == null || !value.toLowerCase().contains(values.get(0).toLowerCase());
+                default:
+                    return value != null && compareOrdered(value, values.get(0));
+            }
+        }
+
+        @Override
+        List<String> getEqualValues(String name) {
+            return field.equalsIgnoreCase(name) && ("=".equals(operator) || "in".equals(operator)) ? values : null;
+        }
+
+        // value of the field, referenced objects by their reference if the condition is on a reference
+        private String valueOf(WorkItemStore.WorkItem item) {
+            String[] path = field.split("\\.", 2);
+            JsonElement element = item.get(path[0]);
+            if (element == null || element.isJsonNull()) {
+                return null;
+            }
+            if (element.isJsonPrimitive()) {
+                return element.getAsString();
+            }
+            if (!element.isJsonObject()) {
+                return null;
+            }
+            JsonObject object = element.getAsJsonObject();
+            String member = path.length > 1 ? path[1] : isReference(values.get(0)) ? "_ref" : "_refObjectName";
+            if ("Name".equals(member)) {
+                member = "_refObjectName";
+            }
+            JsonElement value = object.get(member);
+            return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+        }
+
+        private static boolean isReference(String value) {
+            return value.startsWith("/") || value.startsWith("http");
+        }
+
+        private static boolean equal(String value, String expected) {
+            if (value == null) {
+                return "null".equalsIgnoreCase(expected);
+            }
+            if (isReference(expected) && isReference(value)) {
+                return value.endsWith(expected.replaceAll("\\.js$", "")) || expected.endsWith(value);
+            }
+            if (value.equalsIgnoreCase(expected)) {
+                return true;
+            }
+            Double number = toNumber(value);
+            Double expectedNumber = number != null ? toNumber(expected) : null;
+            return expectedNumber != null && number.doubleValue() == expectedNumber.doubleValue();
+        }
+
+        private boolean compareOrdered(String value, String expected) {
+            Double number = toNumber(value);
+            Double expectedNumber = number != null ? toNumber(expected) : null;
+            int result = expectedNumber != null ? number.compareTo(expectedNumber) : value.compareTo(expected);
+            switch (operator) {
+                case ">":
+                    return result > 0;
+                case ">=":
+                    return result >= 0;
+                case "<":
+                    return result < 0;
+                default:
+                    return result <= 0;
+            }
+        }
+
+        private static Double toNumber(String value) {
+            try {
+                return Double.valueOf(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private static final class Parser {
+
+        private static final List<String> OPERATORS = Arrays.asList("=", "!=", ">", ">=", "<", "<=", "contains",
+                "!contains", "in");
+
+        private final String query;
+        private int pos;
+
+        Parser(String query) {
+            this.query = query;
+        }
+
+        QueryExpression expression() {
+            expect('(');
+            skipWhitespace();
+            QueryExpression expression;
+            if (peek() == '(') {
+                QueryExpression left = expression();
+                String operator = word();
+                QueryExpression right = expression();
+                if (!"AND".equalsIgnoreCase(operator) && !"OR".equalsIgnoreCase(operator)) {
+                    throw error();
+                }
+                expression = new Logical(left, right, "AND".equalsIgnoreCase(operator));
+            } else {
+                String field = word();
+                String operator = word().toLowerCase();
+                if (!OPERATORS.contains(operator)) {
+                    throw error();
+                }
+                expression = new Condition(field, operator, values("in".equals(operator)));
+            }
+            expect(')');
+            return expression;
+        }
+
+        // a quoted or an unquoted value, the in operator takes a comma separated list of values
+        private List<String> values(boolean list) {
+            skipWhitespace();
+            String value;
+            if (peek() == '"') {
+                StringBuilder sb = new StringBuilder();
+                pos++;
+                while (pos < query.length() && query.charAt(pos) != '"') {
+                    if (query.charAt(pos) == '\\' && pos + 1 < query.length()) {
+                        pos++;
+                    }
+                    sb.append(query.charAt(pos++));
+                }
+                expect('"');
+                value = sb.toString();
+            } else {
+                int end = query.indexOf(')', pos);
+                if (end < 0) {
+                    throw error();
+                }
+                value = query.substring(pos, end).trim();
+                pos = end;
+            }
+            List<String> values = new ArrayList<>();
+            for (String item : list ? value.split(",") : new String[] { value }) {
+                values.add(item.trim());
+            }
+            return values;
+        }
+
+        private String word() {
+            skipWhitespace();
+            int start = pos;
+            while (pos < query.length() && !Character.isWhitespace(query.charAt(pos)) && query.charAt(pos) != '('
+                    && query.charAt(pos) != ')') {
+                pos++;
+            }
+            if (start == pos) {
+                throw error();
+            }
+            return query.substring(start, pos);
+        }
+
+        private void expect(char c) {
+            skipWhitespace();
+            if (peek() != c) {
+                throw error();
+            }
+            pos++;
+        }
+
+        private char peek() {
+            return pos < query.length() ? query.charAt(pos) : 0;
+        }
+
+        void skipWhitespace() {
+            while (pos < query.length() && Character.isWhitespace(query.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        IllegalArgumentException error() {
+            return new IllegalArgumentException("Could not parse query at position " + pos + " : " + query);
+        }
+    }
+}
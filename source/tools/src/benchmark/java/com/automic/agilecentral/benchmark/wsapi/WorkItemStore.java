@@ -0,0 +1,413 @@
+package com.automic.agilecentral.benchmark.wsapi;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.automic.agilecentral.benchmark.Fixtures;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Work items of the fake server. Each type starts with a generated data set whose items are based on the recorded
+ * work items, only the fields written by the clients are kept per item so that large data sets fit into memory.
+ *
+ */
+final class WorkItemStore {
+
+    private static final long OBJECT_IDS_PER_TYPE = 100000000L;
+    private static final long FIRST_OBJECT_ID = 10000000000L;
+    private static final long FIRST_UPDATE = 1483228800000L;
+    private static final long UPDATE_INTERVAL = 60000L;
+
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            return format;
+        }
+    };
+
+    private static final Map<String, String> TYPE_NAMES = new HashMap<>();
+
+    static {
+        for (String typeName : new String[] { "HierarchicalRequirement", "TestCase", "AttachmentContent",
+                "ConversationPost", "TestFolder", "TestSet" }) {
+            TYPE_NAMES.put(typeName.toLowerCase(), typeName);
+        }
+    }
+
+    private final String wsapiUrl;
+    private final JsonArray templates;
+    private final int size;
+    private final Gson gson = new Gson();
+    private final ConcurrentMap<String, Type> types = new ConcurrentHashMap<>();
+
+    /**
+     * @param wsapiUrl
+     *            URL of the web services API used in the references
+     * @param width
+     *            width of the recorded work items the data set is based on
+     * @param size
+     *            number of work items generated per type
+     * @throws IOException
+     */
+    WorkItemStore(String wsapiUrl, String width, int size) throws IOException {
+        this.wsapiUrl = wsapiUrl;
+        this.templates = Fixtures.results(width, Math.min(size, 3));
+        this.size = size;
+    }
+
+    /**
+     * Method to find the items matching the query in the requested order.
+     *
+     * @param typeName
+     * @param query
+     *            query expression or null
+     * @param order
+     *            comma separated fields each optionally followed by ASC or DESC, null for the order of the ObjectID
+     * @return matching items
+     */
+    List<WorkItem> query(String typeName, QueryExpression query, String order) {
+        Type type = getType(typeName);
+        List<WorkItem> items = new ArrayList<>();
+        List<String> formattedIds = query != null ? query.getEqualValues("FormattedID") : null;
+        if (formattedIds != null) {
+            for (String formattedId : formattedIds) {
+                WorkItem item = type.get(type.indexOf(formattedId));
+                if (item != null && query.matches(item) && !items.contains(item)) {
+                    items.add(item);
+                }
+            }
+            Collections.sort(items, new FieldComparator("ObjectID", true));
+        } else {
+            int last = type.lastIndex.get();
+            for (int index = 1; index <= last; index++) {
+                WorkItem item = type.get(index);
+                if (item != null && (query == null || query.matches(item))) {
+                    items.add(item);
+                }
+            }
+        }
+        if (order != null && !order.trim().isEmpty() && !"ObjectID".equalsIgnoreCase(order.trim())) {
+            String[] keys = order.split(",");
+            for (int i = keys.length - 1; i >= 0; i--) {
+                String[] key = keys[i].trim().split("\\s+");
+                boolean ascending = key.length < 2 || !"DESC".equalsIgnoreCase(key[1]);
+                // the sort is stable, hence sorting by each key starting with the last one sorts by all of them
+                Collections.sort(items, new FieldComparator(key[0], ascending));
+            }
+        }
+        return items;
+    }
+
+    WorkItem get(String typeName, long objectId) {
+        Type type = getType(typeName);
+        return type.get((int) (objectId - type.firstObjectId));
+    }
+
+    WorkItem create(String typeName, JsonObject fields) {
+        Type type = getType(typeName);
+        int index = type.lastIndex.incrementAndGet();
+        JsonObject values = fields;
+        values.addProperty("LastUpdateDate", formatDate(System.currentTimeMillis()));
+        type.changes.put(index, values);
+        return type.get(index);
+    }
+
+    WorkItem update(WorkItem item, JsonObject fields) {
+        JsonObject values = item.type.changes.get(item.index);
+        if (values == null) {
+            JsonObject created = new JsonObject();
+            values = item.type.changes.putIfAbsent(item.index, created);
+            values = values != null ? values : created;
+        }
+        synchronized (values) {
+            for (Map.Entry<String, JsonElement> field : fields.entrySet()) {
+                values.add(field.getKey(), field.getValue());
+            }
+            values.addProperty("LastUpdateDate", formatDate(System.currentTimeMillis()));
+        }
+        return item;
+    }
+
+    boolean delete(WorkItem item) {
+        return item.type.deleted.add(item.index);
+    }
+
+    int count(String typeName) {
+        Type type = getType(typeName);
+        int count = 0;
+        int last = type.lastIndex.get();
+        for (int index = 1; index <= last; index++) {
+            if (type.get(index) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Type getType(String typeName) {
+        String name = typeName.toLowerCase();
+        Type type = types.get(name);
+        if (type == null) {
+            Type created = new Type(name, isWorkItem(name) ? size : 0, types.size());
+            type = types.putIfAbsent(name, created);
+            type = type != null ? type : created;
+        }
+        return type;
+    }
+
+    private static boolean isWorkItem(String type) {
+        return type.equals("hierarchicalrequirement") || type.equals("defect") || type.equals("task")
+                || type.equals("testcase") || type.startsWith("portfolioitem");
+    }
+
+    private static String formatDate(long millis) {
+        return DATE_FORMAT.get().format(millis);
+    }
+
+    /**
+     * Items of a single type.
+     */
+    private final class Type {
+
+        private final String name;
+        private final String typeName;
+        private final String prefix;
+        private final int size;
+        private final long firstObjectId;
+        private final AtomicInteger lastIndex;
+        private final ConcurrentMap<Integer, JsonObject> changes = new ConcurrentHashMap<>();
+        private final Set<Integer> deleted = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+        Type(String name, int size, int number) {
+            this.name = name;
+            this.size = size;
+            this.firstObjectId = FIRST_OBJECT_ID + number * OBJECT_IDS_PER_TYPE;
+            this.lastIndex = new AtomicInteger(size);
+            String simpleName = name.substring(name.lastIndexOf('/') + 1);
+            this.typeName = TYPE_NAMES.containsKey(simpleName) ? TYPE_NAMES.get(simpleName) : Character
+                    .toUpperCase(simpleName.charAt(0)) + simpleName.substring(1);
+            switch (simpleName) {
+                case "hierarchicalrequirement":
+                    prefix = "US";
+                    break;
+                case "defect":
+                    prefix = "DE";
+                    break;
+                case "task":
+                    prefix = "TA";
+                    break;
+                case "testcase":
+                    prefix = "TC";
+                    break;
+                default:
+                    prefix = simpleName.substring(0, 1).toUpperCase();
+                    break;
+            }
+        }
+
+        int indexOf(String formattedId) {
+            if (formattedId.length() <= prefix.length() || !formattedId.toUpperCase().startsWith(prefix)) {
+                return -1;
+            }
+            try {
+                return Integer.parseInt(formattedId.substring(prefix.length()));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        WorkItem get(int index) {
+            if (index < 1 || index > lastIndex.get() || deleted.contains(index)) {
+                return null;
+            }
+            JsonObject values = changes.get(index);
+            if (index > size && values == null) {
+                return null;
+            }
+            JsonObject template = index <= size ? templates.get((index - 1) % templates.size()).getAsJsonObject()
+                    : null;
+            return new WorkItem(this, index, template, values);
+        }
+    }
+
+    /**
+     * View of a work item combining its recorded, generated and written fields.
+     */
+    final class WorkItem {
+
+        private final Type type;
+        private final int index;
+        private final JsonObject template;
+        private final JsonObject values;
+
+        WorkItem(Type type, int index, JsonObject template, JsonObject values) {
+            this.type = type;
+            this.index = index;
+            this.template = template;
+            this.values = values;
+        }
+
+        long getObjectId() {
+            return type.firstObjectId + index;
+        }
+
+        String getRef() {
+            return wsapiUrl + "/" + type.name + "/" + getObjectId();
+        }
+
+        JsonElement get(String field) {
+            if (values != null) {
+                synchronized (values) {
+                    JsonElement value = values.get(field);
+                    if (value != null) {
+                        return value;
+                    }
+                }
+            }
+            JsonElement value = generated(field);
+            if (value == null && template != null) {
+                value = template.get(field);
+            }
+            if (value == null && "_refObjectName".equals(field)) {
+                value = get("Name");
+            }
+            return value;
+        }
+
+        private JsonElement generated(String field) {
+            switch (field) {
+                case "ObjectID":
+                    return new JsonPrimitive(getObjectId());
+                case "FormattedID":
+                    return new JsonPrimitive(type.prefix + index);
+                case "_ref":
+                    return new JsonPrimitive(getRef());
+                case "_type":
+                    return new JsonPrimitive(type.typeName);
+                case "_refObjectName":
+                case "Name":
+                    String name = template != null ? template.get("Name").getAsString() : null;
+                    return name != null ? new JsonPrimitive(name + " " + index) : null;
+                case "LastUpdateDate":
+                    return template != null ? new JsonPrimitive(formatDate(FIRST_UPDATE + index * UPDATE_INTERVAL))
+                            : null;
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * Method to write the item in the form returned by the server.
+         *
+         * @param writer
+         * @param fetch
+         *            fields to write besides the meta data of the item, null to write all the fields
+         * @throws IOException
+         */
+        void write(JsonWriter writer, Set<String> fetch) throws IOException {
+            writer.beginObject();
+            writer.name("_rallyAPIMajor").value("2");
+            writer.name("_rallyAPIMinor").value("0");
+            writeField(writer, "_ref");
+            writeField(writer, "_refObjectName");
+            List<String> written = new ArrayList<>();
+            if (template != null) {
+                for (Map.Entry<String, JsonElement> field : template.entrySet()) {
+                    String name = field.getKey();
+                    if (!name.startsWith("_") && (fetch == null || fetch.contains(name))) {
+                        writeField(writer, name);
+                        written.add(name);
+                    }
+                }
+            } else {
+                for (String name : new String[] { "ObjectID", "FormattedID", "Name" }) {
+                    if (fetch == null || fetch.contains(name)) {
+                        writeField(writer, name);
+                        written.add(name);
+                    }
+                }
+            }
+            if (values != null) {
+                synchronized (values) {
+                    for (Map.Entry<String, JsonElement> field : values.entrySet()) {
+                        String name = field.getKey();
+                        if (!written.contains(name) && (fetch == null || fetch.contains(name))) {
+                            writer.name(name);
+                            gson.toJson(field.getValue(), writer);
+                        }
+                    }
+                }
+            }
+            writeField(writer, "_type");
+            writer.endObject();
+        }
+
+        private void writeField(JsonWriter writer, String name) throws IOException {
+            JsonElement value = get(name);
+            if (value != null) {
+                writer.name(name);
+                gson.toJson(value, writer);
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof WorkItem && ((WorkItem) obj).type == type && ((WorkItem) obj).index == index;
+        }
+
+        @Override
+        public int hashCode() {
+            return index;
+        }
+    }
+
+    /**
+     * Orders the items by a field, numbers by their value and everything else by its text.
+     */
+    private static final class FieldComparator implements Comparator<WorkItem> {
+
+        private final String field;
+        private final boolean ascending;
+
+        FieldComparator(String field, boolean ascending) {
+            this.field = field;
+            this.ascending = ascending;
+        }
+
+        @Override
+        public int compare(WorkItem a, WorkItem b) {
+            int result = compare(a.get(field), b.get(field));
+            return ascending ? result : -result;
+        }
+
+        private static int compare(JsonElement a, JsonElement b) {
+            boolean aNull = a == null || !a.isJsonPrimitive();
+            boolean bNull = b == null || !b.isJsonPrimitive();
+            if (aNull || bNull) {
+                return aNull == bNull ? 0 : aNull ? -1 : 1;
+            }
+            if (a.getAsJsonPrimitive().isNumber() && b.getAsJsonPrimitive().isNumber()) {
+                return Double.compare(a.getAsDouble(), b.getAsDouble());
+            }
+            return a.getAsString().compareTo(b.getAsString());
+        }
+    }
+}
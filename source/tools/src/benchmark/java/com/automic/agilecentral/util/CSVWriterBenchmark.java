@@ -0,0 +1,89 @@
+package com.automic.agilecentral.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.automic.agilecentral.benchmark.Fixtures;
+
+/**
+ * Benchmarks the formatting of csv lines by {@link CSVWriter}. Each operation writes the recorded work items, some of
+ * whose values contain quotes which have to be escaped.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CSVWriterBenchmark {
+
+    /**
+     * Width of the work items.
+     */
+    @Param({ Fixtures.NARROW, Fixtures.WIDE })
+    public String width;
+
+    /**
+     * Gzip compression level, 0 for no compression.
+     */
+    @Param({ "0", "6" })
+    public int compressionLevel;
+
+    private List<List<String>> records;
+    private String[][] rows;
+    private CSVWriter writer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        records = Fixtures.records(width);
+        rows = new String[records.size()][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = records.get(i).toArray(new String[0]);
+        }
+        writer = new CSVWriter(Fixtures.nullFile(), Collections.<String> emptyList(), StandardCharsets.UTF_8,
+                compressionLevel);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        writer.close();
+    }
+
+    /**
+     * Lines written by the export which reads the work items into lists.
+     */
+    @Benchmark
+    public void writeLineList() throws IOException {
+        for (List<String> record : records) {
+            writer.writeLine(record);
+        }
+    }
+
+    /**
+     * Lines written by the streaming export which reads the work items into a reused array.
+     */
+    @Benchmark
+    public void writeLineArray() throws IOException {
+        for (String[] row : rows) {
+            writer.writeLine(row);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.automic.agilecentral.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Writes records whose values do not match the type derived from the first record using {@link ParquetWriter} and
+ * reads them back with the parquet reference implementation, checking the type of every column and every value.
+ * Columns change their type after the first record, start with null values and, with a large text size, exceed the
+ * size of a row group so that the records are spilled.
+ *
+ * <pre>
+ * java -cp target/agilecentral-benchmarks.jar com.automic.agilecentral.util.ParquetRoundTrip -rows 50000
+ *     -textsize 2000
+ * </pre>
+ *
+ */
+public final class ParquetRoundTrip {
+
+    private static final List<String> HEADERS = Arrays.asList("Id", "Estimate", "Blocked", "Rank", "Notes", "Count",
+            "Created", "Accepted", "Text");
+    // types of the columns once all the records have been written
+    private static final List<PrimitiveTypeName> EXPECTED = Arrays.asList(PrimitiveTypeName.INT64,
+            PrimitiveTypeName.DOUBLE, PrimitiveTypeName.BOOLEAN, PrimitiveTypeName.BINARY, PrimitiveTypeName.BINARY,
+            PrimitiveTypeName.INT64, PrimitiveTypeName.INT64, PrimitiveTypeName.BINARY, PrimitiveTypeName.BINARY);
+
+    private ParquetRoundTrip() {
+    }
+
+    /**
+     * Main method which accepts the number of rows (-rows) and the length of the text column (-textsize).
+     *
+     * @param args
+     *            command line options
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        int rows = 50000;
+        int textSize = 100;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if ("-rows".equals(args[i])) {
+                rows = Integer.parseInt(args[i + 1]);
+            } else if ("-textsize".equals(args[i])) {
+                textSize = Integer.parseInt(args[i + 1]);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        List<String[]> records = createRecords(rows, textSize);
+        File file = File.createTempFile("roundtrip", ".parquet");
+        try {
+            write(file, records);
+            verify(file, records);
+        } finally {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+        System.out.println(String.format("Round trip of %s rows of %s columns succeeded", rows, HEADERS.size()));
+    }
+
+    private static List<String[]> createRecords(int rows, int textSize) {
+        Random random = new Random(42);
+        char[] text = new char[textSize];
+        List<String[]> records = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            String[] record = new String[HEADERS.size()];
+            record[0] = String.valueOf(i + 1);
+            // integers followed by fractions
+            record[1] = i < rows / 2 ? String.valueOf(random.nextInt(20)) : String.valueOf(random.nextInt(80) / 4.0);
+            record[2] = i % 7 == 3 ? null : String.valueOf(random.nextBoolean());
+            // integers followed by text
+            record[3] = i < rows / 3 ? String.valueOf(random.nextInt(1000)) : "R" + random.nextInt(1000);
+            // null in the first record, integers with leading zeros are text
+            record[4] = i == 0 ? null : String.format("%03d", random.nextInt(1000));
+            // null in the first record followed by integers
+            record[5] = i % 5 == 0 ? null : String.valueOf(random.nextInt(Integer.MAX_VALUE) * 3L);
+            record[6] = String.format("2017-%02d-%02dT%02d:%02d:%02d.%03dZ", 1 + random.nextInt(12),
+                    1 + random.nextInt(28), random.nextInt(24), random.nextInt(60), random.nextInt(60),
+                    random.nextInt(1000));
+            // dates followed by text
+            record[7] = i < rows - 1 ? "2018-01-01T10:00:00.000Z" : "n/a";
+            for (int c = 0; c < text.length; c++) {
+                text[c] = (char) ('a' + random.nextInt(26));
+            }
+            record[8] = i % 11 == 0 ? "" : new String(text);
+            records.add(record);
+        }
+        return records;
+    }
+
+    // Write the records with the types an export derives from the first record.
+    private static void write(File file, List<String[]> records) throws IOException {
+        JsonObject first = new JsonObject();
+        first.add("Id", new JsonPrimitive(1));
+        first.add("Estimate", new JsonPrimitive(Long.parseLong(records.get(0)[1])));
+        first.add("Blocked", new JsonPrimitive(Boolean.parseBoolean(records.get(0)[2])));
+        first.add("Rank", new JsonPrimitive(Long.parseLong(records.get(0)[3])));
+        first.add("Created", new JsonPrimitive(records.get(0)[6]));
+        first.add("Accepted", new JsonPrimitive(records.get(0)[7]));
+        first.add("Text", new JsonPrimitive(records.get(0)[8]));
+        List<ParquetWriter.ColumnType> types = new ArrayList<>(HEADERS.size());
+        for (String header : HEADERS) {
+            types.add(ParquetWriter.ColumnType.of(first.get(header)));
+        }
+        try (ParquetWriter writer = new ParquetWriter(file.getPath(), HEADERS, types)) {
+            for (String[] record : records) {
+                writer.writeLine(record);
+            }
+        }
+    }
+
+    private static void verify(File file, List<String[]> records) throws IOException {
+        Configuration conf = new Configuration();
+        Path path = new Path(file.getAbsolutePath());
+        MessageType schema;
+        try (ParquetFileReader fileReader = ParquetFileReader.open(HadoopInputFile.fromPath(path, conf))) {
+            schema = fileReader.getFooter().getFileMetaData().getSchema();
+            System.out.println(String.format("%s row groups, schema %s", fileReader.getRowGroups().size(), schema));
+        }
+        for (int i = 0; i < HEADERS.size(); i++) {
+            PrimitiveTypeName type = schema.getType(i).asPrimitiveType().getPrimitiveTypeName();
+            check(type == EXPECTED.get(i), "Column %s has type %s instead of %s", HEADERS.get(i), type,
+                    EXPECTED.get(i));
+        }
+        int row = 0;
+        try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), path).withConf(conf)
+                .build()) {
+            Group group;
+            while ((group = reader.read()) != null) {
+                check(row < records.size(), "File has more than %s rows", records.size());
+                String[] record = records.get(row);
+                for (int i = 0; i < HEADERS.size(); i++) {
+                    String actual = read(group, i);
+                    String expected = normalize(record[i], EXPECTED.get(i), HEADERS.get(i));
+                    check(expected == null ? actual == null : expected.equals(actual),
+                            "Row %s column %s is [%s] instead of [%s]", row, HEADERS.get(i), actual, expected);
+                }
+                row++;
+            }
+        }
+        check(row == records.size(), "File has %s rows instead of %s", row, records.size());
+    }
+
+    // value as read by the reference reader, timestamps as milliseconds
+    private static String read(Group group, int column) {
+        if (group.getFieldRepetitionCount(column) == 0) {
+            return null;
+        }
+        switch (group.getType().getType(column).asPrimitiveType().getPrimitiveTypeName()) {
+            case BOOLEAN:
+                return String.valueOf(group.getBoolean(column, 0));
+            case INT64:
+                return String.valueOf(group.getLong(column, 0));
+            case DOUBLE:
+                return String.valueOf(group.getDouble(column, 0));
+            default:
+                return group.getString(column, 0);
+        }
+    }
+
+    // value as the column of the given type holds it
+    private static String normalize(String value, PrimitiveTypeName type, String header) {
+        if (value == null) {
+            return null;
+        }
+        switch (type) {
+            case DOUBLE:
+                return String.valueOf(Double.parseDouble(value));
+            case INT64:
+                if ("Created".equals(header)) {
+                    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+                    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+                    try {
+                        return String.valueOf(format.parse(value).getTime());
+                    } catch (ParseException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return value;
+            default:
+                return value;
+        }
+    }
+
+    private static void check(boolean condition, String format, Object... args) {
+        if (!condition) {
+            throw new IllegalStateException(String.format(format, args));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.automic.agilecentral.util;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.automic.agilecentral.constants.Constants;
+import com.automic.agilecentral.exception.AutomicException;
+import com.rallydev.rest.RallyRestApi;
+import com.rallydev.rest.request.QueryRequest;
+import com.rallydev.rest.response.QueryResponse;
+
+/**
+ * Benchmarks building the query of {@link RallyUtil#queryOR} for the work item ids of a bulk edit. The request is
+ * encoded as for sending it, but answered without contacting a server.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryORBenchmark {
+
+    private static final String EMPTY_RESPONSE = "{\"QueryResult\":{\"Errors\":[],\"Warnings\":[],"
+            + "\"TotalResultCount\":0,\"StartIndex\":1,\"PageSize\":200,\"Results\":[]}}";
+
+    /**
+     * Number of work item ids.
+     */
+    @Param({ "10", "100", "1000" })
+    public int ids;
+
+    private RallyRestApi restApi;
+    private Map<String, List<String>> queryFilter;
+    private List<String> fetch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws URISyntaxException {
+        restApi = new UrlEncodingRallyRestApi();
+        List<String> formattedIds = new ArrayList<>(ids);
+        for (int i = 0; i < ids; i++) {
+            formattedIds.add("US" + (1000 + i));
+        }
+        queryFilter = new HashMap<>();
+        queryFilter.put(Constants.FORMATTED_ID, formattedIds);
+        fetch = Arrays.asList(Constants.REFERENCE, Constants.FORMATTED_ID);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        restApi.close();
+    }
+
+    @Benchmark
+    public QueryResponse queryOR() throws IOException, AutomicException {
+        return RallyUtil.queryOR(restApi, "hierarchicalrequirement", "/workspace/1", queryFilter, fetch, null);
+    }
+
+    /**
+     * Encodes the query request into its URL instead of sending it.
+     */
+    private static class UrlEncodingRallyRestApi extends RallyRestApi {
+
+        // keeps the encoded request alive so that it is not optimized away
+        private String url;
+
+        UrlEncodingRallyRestApi() throws URISyntaxException {
+            super(new URI("https://rally1.rallydev.com"), "benchmark");
+        }
+
+        @Override
+        public QueryResponse query(QueryRequest request) {
+            url = request.toUrl();
+            return new QueryResponse(EMPTY_RESPONSE);
+        }
+    }
+}
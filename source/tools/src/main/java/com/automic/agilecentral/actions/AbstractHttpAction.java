@@ -9,6 +9,7 @@ import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
 
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
@@ -18,10 +19,15 @@ import org.apache.http.conn.ssl.TrustStrategy;
 import com.automic.agilecentral.constants.Constants;
 import com.automic.agilecentral.constants.ExceptionConstants;
 import com.automic.agilecentral.exception.AutomicException;
+import com.automic.agilecentral.exception.StaleRefException;
 import com.automic.agilecentral.util.CommonUtil;
 import com.automic.agilecentral.util.ConsoleWriter;
+import com.automic.agilecentral.util.Metrics;
+import com.automic.agilecentral.util.PooledRallyRestApi;
+import com.automic.agilecentral.util.PooledRallyRestApi.PoolSettings;
+import com.automic.agilecentral.util.RallyClientCache;
+import com.automic.agilecentral.util.RefCache;
 import com.automic.agilecentral.validator.AgileCentralValidator;
-import com.rallydev.rest.RallyRestApi;
 
 /**
  * This class defines the execution of any action.It provides some initializations and validations on common inputs .The
@@ -32,7 +38,12 @@ public abstract class AbstractHttpAction extends AbstractAction {
     /**
      * apiKey to make the request for all the actions
      */
-    protected RallyRestApi rallyRestTarget;
+    protected PooledRallyRestApi rallyRestTarget;
+
+    private static SSLSocketFactory trustAllSocketFactory;
+
+    // client is kept by the cache and must not be closed by the action
+    private boolean sharedClient;
 
     public AbstractHttpAction() {
         addOption(Constants.BASE_URL, true, "CA Agile Central URL");
@@ -48,11 +59,28 @@ public abstract class AbstractHttpAction extends AbstractAction {
      *             exception while executing an action
      */
     public final void execute() throws AutomicException {
+        Metrics metrics = Metrics.current();
+        RefCache.startRun();
         try {
+            long start = System.nanoTime();
             prepareCommonInputs();
-            executeSpecific();
+            metrics.phase(Metrics.PREPARE, start);
+            start = System.nanoTime();
+            try {
+                executeSpecific();
+            } catch (StaleRefException e) {
+                // the stale reference has been removed from the cache, run once more with live references
+                ConsoleWriter.writeln(e.getMessage() + ", resolving the references again");
+                executeSpecific();
+            }
+            metrics.phase(Metrics.EXECUTE, start);
         } finally {
-            if (rallyRestTarget != null) {
+            RefCache.stopRun();
+            if (rallyRestTarget != null && CommonUtil.convert2Bool(CommonUtil.getEnv(Constants.ENV_POOL_STATS))) {
+                ConsoleWriter.writeln("Connection pool " + rallyRestTarget.getPoolStats() + " requests "
+                        + rallyRestTarget.getGovernor());
+            }
+            if (rallyRestTarget != null && !sharedClient) {
                 try {
                     rallyRestTarget.close();
                 } catch (IOException e) {
@@ -62,8 +90,23 @@ public abstract class AbstractHttpAction extends AbstractAction {
         }
     }
 
+    /**
+     * Method to let the action use the client of another action e.g. when several actions are run in the same process.
+     * The client is not closed by this action.
+     *
+     * @param client
+     *            client to use instead of creating one
+     */
+    final void shareClient(PooledRallyRestApi client) {
+        rallyRestTarget = client;
+        sharedClient = true;
+    }
+
     @SuppressWarnings("deprecation")
     private void prepareCommonInputs() throws AutomicException {
+        if (sharedClient && rallyRestTarget != null) {
+            return;
+        }
 
         URI baseUrl = null; // base url
 
@@ -82,25 +125,61 @@ public abstract class AbstractHttpAction extends AbstractAction {
         boolean basicAuth = CommonUtil.convert2Bool(tempAuth);
 
         // api token or password to username
-        String password = System.getenv(Constants.ENV_PASSWORD);
+        String password = CommonUtil.getEnv(Constants.ENV_PASSWORD);
+        String userName = getOptionValue(Constants.USERNAME);
+
+        PoolSettings poolSettings = PoolSettings.fromEnvironment();
+        String apiVersion = CommonUtil.getEnvParameter(Constants.ENV_API_VERSION, Constants.AC_API_VERSION);
+        boolean skipCertValidation = CommonUtil.convert2Bool(getOptionValue(Constants.SKIP_CERT_VALIDATION))
+                && Constants.HTTPS.equalsIgnoreCase(baseUrl.getScheme());
+        int port = CommonUtil.getEnvParameter(Constants.ENV_PORT, Constants.AC_PORT);
+
+        // reuse the warm client of a long running process
+        String clientKey = null;
+        if (RallyClientCache.isEnabled()) {
+            clientKey = Arrays.asList(baseUrl, basicAuth, userName, password, poolSettings, apiVersion,
+                    skipCertValidation, port).toString();
+            rallyRestTarget = RallyClientCache.get(clientKey);
+            if (rallyRestTarget != null) {
+                sharedClient = true;
+                return;
+            }
+        }
 
         // for performing all the CRUD and query operations
         if (basicAuth) {
-            rallyRestTarget = new RallyRestApi(baseUrl, getOptionValue(Constants.USERNAME), password);
+            rallyRestTarget = PooledRallyRestApi.withBasicAuth(baseUrl, userName, password, poolSettings);
         } else {
-            rallyRestTarget = new RallyRestApi(baseUrl, password);
+            rallyRestTarget = PooledRallyRestApi.withApiKey(baseUrl, password, poolSettings);
         }
-
-        String apiVersion = CommonUtil.getEnvParameter(Constants.ENV_API_VERSION, Constants.AC_API_VERSION);
         rallyRestTarget.setWsapiVersion(apiVersion);
 
         // if cert validation needs to be skipped
-        if (CommonUtil.convert2Bool(getOptionValue(Constants.SKIP_CERT_VALIDATION))
-                && Constants.HTTPS.equalsIgnoreCase(baseUrl.getScheme())) {
-            int port = CommonUtil.getEnvParameter(Constants.ENV_PORT, Constants.AC_PORT);
+        if (skipCertValidation) {
             SchemeRegistry registry = rallyRestTarget.getClient().getConnectionManager().getSchemeRegistry();
-            registry.register(new Scheme(Constants.HTTPS, port, buildSSLSocketFactory()));
+            registry.register(new Scheme(Constants.HTTPS, port, getTrustAllSocketFactory()));
+        }
+
+        if (clientKey != null) {
+            PooledRallyRestApi registered = RallyClientCache.register(clientKey, rallyRestTarget);
+            if (registered != rallyRestTarget) {
+                try {
+                    rallyRestTarget.close();
+                } catch (IOException e) {
+                    ConsoleWriter.writeln("Unable to close Rally client");
+                }
+            }
+            rallyRestTarget = registered;
+            sharedClient = true;
+        }
+    }
+
+    // A single factory is shared by all the clients so that TLS sessions can be resumed.
+    private static synchronized SSLSocketFactory getTrustAllSocketFactory() throws AutomicException {
+        if (trustAllSocketFactory == null) {
+            trustAllSocketFactory = buildSSLSocketFactory();
         }
+        return trustAllSocketFactory;
     }
 
     /**
@@ -109,7 +188,7 @@ public abstract class AbstractHttpAction extends AbstractAction {
      * @return
      * @throws AutomicException
      */
-    private SSLSocketFactory buildSSLSocketFactory() throws AutomicException {
+    private static SSLSocketFactory buildSSLSocketFactory() throws AutomicException {
         TrustStrategy ts = new TrustStrategy() {
             @Override
             public boolean isTrusted(X509Certificate[] x509Certificates, String s) throws CertificateException {
@@ -3,19 +3,14 @@ package com.automic.agilecentral.actions;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.util.Arrays;
 
-import org.apache.commons.codec.binary.Base64;
-
-import com.automic.agilecentral.constants.Constants;
 import com.automic.agilecentral.exception.AutomicException;
+import com.automic.agilecentral.util.Base64FileEntity.Compression;
 import com.automic.agilecentral.util.CommonUtil;
 import com.automic.agilecentral.util.ConsoleWriter;
 import com.automic.agilecentral.util.RallyUtil;
 import com.automic.agilecentral.validator.AgileCentralValidator;
 import com.google.gson.JsonObject;
-import com.rallydev.rest.request.CreateRequest;
-import com.rallydev.rest.response.CreateResponse;
 
 /**
  * Attache a file to the given work item
@@ -40,12 +35,18 @@ public class AddAttachmentAction extends AbstractHttpAction {
      */
     private String description;
 
+    /**
+     * Compression applied to the file before it is uploaded
+     */
+    private Compression compression;
+
     public AddAttachmentAction() {
         addOption("workspace", false, "Workspace name");
         addOption("workitemid", true, "Work item ID");
         addOption("filepath", true, "File path");
         addOption("workitemtype", true, "Work item type");
         addOption("description", false, "Description");
+        addOption("compression", false, "Compress the file before upload NONE, GZIP or ZIP");
     }
 
     @Override
@@ -53,48 +54,22 @@ public class AddAttachmentAction extends AbstractHttpAction {
         prepareInputs();
         try {
 
-            // Read file
-            byte[] fileBytes = Files.readAllBytes(filePath.toPath());
-            String imageBase64 = Base64.encodeBase64String(fileBytes);
-
-            // create AttachmentContent from imageBase64String
-            JsonObject attachmentContent = new JsonObject();
-            attachmentContent.addProperty(Constants.CONTENT, imageBase64);
-
-            CreateRequest attachmentContentCreateRequest = new CreateRequest("AttachmentContent", attachmentContent);
-            CreateResponse attachmentContentResponse = rallyRestTarget.create(attachmentContentCreateRequest);
-            if (!attachmentContentResponse.wasSuccessful()) {
-                ConsoleWriter.writeln(Arrays.toString(attachmentContentResponse.getErrors()));
-                throw new AutomicException("Unable to attach the file");
-            }
+            // create AttachmentContent, the file is compressed and Base64 encoded while it is sent
+            String contentRef = RallyUtil.createAttachmentContent(rallyRestTarget, filePath.toPath(), compression);
 
             // Attach the file uploaded to the story
-            JsonObject myAttachment = new JsonObject();
-            myAttachment.addProperty(Constants.ARTIFACT, workItemRef);
-            myAttachment.addProperty(Constants.CONTENT,
-                    attachmentContentResponse.getObject().getAsJsonObject().get(Constants.REFERENCE).getAsString());
-
             String contentType = Files.probeContentType(filePath.toPath());
             if (contentType == null) {
                 contentType = "";
             }
+            contentType = compression.getContentType(contentType);
             ConsoleWriter.writeln(String.format("Content Type of the file[%s] : [%s]", filePath, contentType));
-            myAttachment.addProperty("ContentType", contentType);
-            myAttachment.addProperty(Constants.NAME, filePath.getName());
-
-            if (CommonUtil.checkNotEmpty(description)) {
-                myAttachment.addProperty(Constants.DESCRIPTION, description);
-            }
-
-            CreateRequest attachmentCreateRequest = new CreateRequest("Attachment", myAttachment);
-            CreateResponse attachmentResponse = rallyRestTarget.create(attachmentCreateRequest);
-            if (!attachmentResponse.wasSuccessful()) {
-                ConsoleWriter.writeln(Arrays.toString(attachmentResponse.getErrors()));
-                throw new AutomicException("Unable to attach the file to the work item.");
-            }
-            ConsoleWriter.writeln("Response Json Object: " + attachmentResponse.getObject());
+            JsonObject attachment = RallyUtil.createAttachment(rallyRestTarget, workItemRef, contentRef,
+                    compression.getName(filePath.getName()), contentType, description);
+            ConsoleWriter.writeln("Response Json Object: " + attachment);
         } catch (IOException e) {
             ConsoleWriter.writeln(e);
+            RallyUtil.checkStaleRefs(e.getMessage(), workItemRef);
             throw new AutomicException(e.getMessage());
         }
 
@@ -121,6 +96,8 @@ public class AddAttachmentAction extends AbstractHttpAction {
         // description
         description = getOptionValue("description");
 
+        compression = Compression.of(getOptionValue("compression"));
+
         // Workspace name where the user story is located
         String workSpaceRef = null;
         String workSpaceName = getOptionValue("workspace");
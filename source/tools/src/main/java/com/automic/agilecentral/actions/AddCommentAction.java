@@ -40,10 +40,13 @@ public class AddCommentAction extends AbstractHttpAction {
             ConsoleWriter.writeln("Response Json Object: " + createResponse.getObject());
             if (!createResponse.wasSuccessful()) {
                 ConsoleWriter.writeln(Arrays.toString(createResponse.getErrors()));
+                RallyUtil.checkStaleRefs(Arrays.toString(createResponse.getErrors()), newComment.get(
+                        Constants.ARTIFACT).getAsString());
                 throw new AutomicException("Unable to add the comment to wotk item.");
             }
         } catch (IOException e) {
             ConsoleWriter.writeln(e);
+            RallyUtil.checkStaleRefs(e.getMessage(), newComment.get(Constants.ARTIFACT).getAsString());
             throw new AutomicException(e.getMessage());
         }
 
@@ -0,0 +1,411 @@
+package com.automic.agilecentral.actions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.automic.agilecentral.constants.Constants;
+import com.automic.agilecentral.exception.AutomicException;
+import com.automic.agilecentral.util.Base64FileEntity.Compression;
+import com.automic.agilecentral.util.BulkExecutor;
+import com.automic.agilecentral.util.BulkOperation;
+import com.automic.agilecentral.util.BulkResult;
+import com.automic.agilecentral.util.CommonUtil;
+import com.automic.agilecentral.util.ConsoleWriter;
+import com.automic.agilecentral.util.Metrics;
+import com.automic.agilecentral.util.QueryPlanner;
+import com.automic.agilecentral.util.RallyUtil;
+import com.automic.agilecentral.validator.AgileCentralValidator;
+import com.google.gson.JsonObject;
+
+/**
+ * This class attaches several files to several work items. The files are given by a directory, whose files are all
+ * attached, or by a glob pattern e.g. build/reports/**&#47;*.xml. Files having the same content are uploaded only once
+ * and the uploaded AttachmentContent is linked to every work item. The files can be compressed while they are
+ * uploaded. Contents are uploaded concurrently and the attachments are created concurrently once the contents have
+ * been uploaded. The outcome of every upload and every attachment can be written to a result file.
+ *
+ */
+public class BulkAddAttachmentAction extends AbstractHttpAction {
+
+    private static final int DEFAULT_CONCURRENCY = 4;
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+    private static final String GLOB_CHARS = "*?[{";
+
+    private String workItemType;
+    private String workspaceRef;
+    private String description;
+    private Compression compression;
+    private String resultFilePath;
+    private int concurrency;
+    private boolean continueOnError;
+
+    public BulkAddAttachmentAction() {
+        addOption("workspace", false, "Workspace name");
+        addOption("workitemids", true, "Work item ids");
+        addOption("workitemtype", true, "Work item type");
+        addOption("filepath", true, "Directory or glob pattern of the files to attach");
+        addOption("description", false, "Description");
+        addOption("compression", false, "Compress the files before upload NONE, GZIP or ZIP");
+        addOption("concurrency", false, "Number of requests to send in parallel");
+        addOption("continueonerror", false, "Continue if a file can not be attached");
+        addOption("resultfilepath", false, "Result file path");
+    }
+
+    @Override
+    protected void executeSpecific() throws AutomicException {
+        List<Path> files = prepareInputs();
+        List<String> workItemIds = getWorkItemIds();
+        List<Content> contents = groupByContent(files);
+        ConsoleWriter.writeln(String.format("Number of files %s, distinct contents %s, work items %s", files.size(),
+                contents.size(), workItemIds.size()));
+
+        List<BulkResult> results = new ArrayList<>();
+        List<WorkItem> workItems = resolveWorkItems(workItemIds, results);
+
+        List<BulkResult> uploads = BulkExecutor.execute(contents, new UploadOperation(), concurrency,
+                continueOnError);
+
+        List<Link> links = new ArrayList<>(files.size() * workItems.size());
+        for (WorkItem workItem : workItems) {
+            for (Content content : contents) {
+                for (Path file : content.files) {
+                    links.add(new Link(workItem, content, file));
+                }
+            }
+        }
+        List<BulkResult> attachments;
+        if (continueOnError || BulkResult.count(uploads, BulkResult.Status.FAILED) == 0) {
+            attachments = BulkExecutor.execute(links, new LinkOperation(), concurrency, continueOnError);
+        } else {
+            attachments = new ArrayList<>(links.size());
+            for (Link link : links) {
+                attachments.add(BulkResult.skipped(link.describe()));
+            }
+        }
+        results.addAll(uploads);
+        results.addAll(attachments);
+
+        if (resultFilePath != null) {
+            BulkResult.writeResults(resultFilePath, results);
+            ConsoleWriter.writeln("UC4RB_AC_RESULT_FILE_PATH ::=" + resultFilePath);
+        }
+        int failed = BulkResult.count(results, BulkResult.Status.FAILED);
+        ConsoleWriter.writeln("UC4RB_AC_UPLOADED_COUNT ::=" + BulkResult.count(uploads, BulkResult.Status.SUCCESS));
+        ConsoleWriter.writeln("UC4RB_AC_ATTACHED_COUNT ::=" + BulkResult.count(attachments,
+                BulkResult.Status.SUCCESS));
+        ConsoleWriter.writeln("UC4RB_AC_FAILED_COUNT ::=" + failed);
+        if (failed != 0) {
+            throw new AutomicException(String.format("Unable to attach %s file(s).", failed));
+        }
+    }
+
+    private List<Path> prepareInputs() throws AutomicException {
+        workItemType = getOptionValue("workitemtype");
+        AgileCentralValidator.checkNotEmpty(workItemType, "Work Item type");
+
+        String filePath = getOptionValue("filepath");
+        AgileCentralValidator.checkNotEmpty(filePath, "File path");
+
+        description = getOptionValue("description");
+        compression = Compression.of(getOptionValue("compression"));
+
+        concurrency = CommonUtil.parseStringValue(getOptionValue("concurrency"), DEFAULT_CONCURRENCY);
+        AgileCentralValidator.lessThan(concurrency, 1, "Concurrency");
+        continueOnError = CommonUtil.convert2Bool(getOptionValue("continueonerror"));
+
+        String temp = getOptionValue("resultfilepath");
+        if (CommonUtil.checkNotEmpty(temp)) {
+            File file = new File(temp);
+            AgileCentralValidator.checkFileWritable(file);
+            resultFilePath = file.getAbsolutePath();
+        }
+
+        String workSpaceName = getOptionValue("workspace");
+        if (CommonUtil.checkNotEmpty(workSpaceName)) {
+            workspaceRef = RallyUtil.getWorspaceRef(rallyRestTarget, workSpaceName);
+        }
+
+        List<Path> files;
+        try {
+            files = findFiles(filePath);
+        } catch (IOException e) {
+            ConsoleWriter.writeln(e);
+            throw new AutomicException(String.format("Unable to list the files [%s] : %s", filePath,
+                    e.getMessage()));
+        }
+        if (files.isEmpty()) {
+            throw new AutomicException(String.format("No files found for [%s]", filePath));
+        }
+        return files;
+    }
+
+    // formatted ids are not case sensitive, the first spelling of an id is kept
+    private List<String> getWorkItemIds() throws AutomicException {
+        String workItemIds = getOptionValue("workitemids");
+        AgileCentralValidator.checkNotEmpty(workItemIds, "Work item ids");
+        Map<String, String> ids = new LinkedHashMap<>();
+        for (String id : workItemIds.split(",")) {
+            String tmp = id.trim();
+            if (!tmp.isEmpty() && !ids.containsKey(tmp.toUpperCase())) {
+                ids.put(tmp.toUpperCase(), tmp);
+            }
+        }
+        if (ids.isEmpty()) {
+            throw new AutomicException(String.format("Please provide valid work items %s", workItemIds));
+        }
+        return new ArrayList<>(ids.values());
+    }
+
+    // Resolve the references of the work items with a few large queries. Ids which do not exist are added as failed
+    // results if the attachment continues on errors.
+    private List<WorkItem> resolveWorkItems(List<String> workItemIds, List<BulkResult> results)
+            throws AutomicException {
+        long start = System.nanoTime();
+        List<JsonObject> found = new QueryPlanner(rallyRestTarget, workItemType, workspaceRef, Arrays.asList(
+                Constants.REFERENCE, Constants.FORMATTED_ID)).queryEqual(Constants.FORMATTED_ID, workItemIds,
+                concurrency);
+        Metrics.current().phase(Metrics.REF_RESOLUTION, start);
+
+        Map<String, String> refs = new HashMap<>(found.size());
+        for (JsonObject workItem : found) {
+            refs.put(workItem.get(Constants.FORMATTED_ID).getAsString().toUpperCase(), workItem.get(
+                    Constants.REFERENCE).getAsString());
+        }
+        List<WorkItem> workItems = new ArrayList<>(workItemIds.size());
+        Set<String> missing = new LinkedHashSet<>();
+        for (String workItemId : workItemIds) {
+            String ref = refs.get(workItemId.toUpperCase());
+            if (ref == null) {
+                missing.add(workItemId);
+                results.add(BulkResult.failure(workItemId, "Work item does not exist"));
+            } else {
+                workItems.add(new WorkItem(workItemId, ref));
+            }
+        }
+        if (!missing.isEmpty()) {
+            ConsoleWriter.writeln("Some of the Work items does not exist " + missing);
+            if (!continueOnError) {
+                throw new AutomicException("Invalid work items have been provided.");
+            }
+        }
+        return workItems;
+    }
+
+    // The files of a directory, the file itself or the files matching the glob pattern. The directory tree is only
+    // walked below the part of the pattern which does not contain a wildcard.
+    private static List<Path> findFiles(String pattern) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        String glob = File.separatorChar == '\\' ? pattern.replace('\\', '/') : pattern;
+        int wildcard = indexOfWildcard(glob);
+        if (wildcard < 0) {
+            Path path = Paths.get(pattern);
+            if (Files.isDirectory(path)) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                    for (Path file : stream) {
+                        addFile(files, file);
+                    }
+                }
+            } else {
+                addFile(files, path);
+            }
+        } else {
+            int separator = glob.lastIndexOf('/', wildcard);
+            Path base = Paths.get(separator < 0 ? "" : glob.substring(0, separator + 1));
+            int depth = glob.contains("**") ? Integer.MAX_VALUE : glob.substring(separator + 1).split("/").length;
+            final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+            if (Files.isDirectory(base)) {
+                Files.walkFileTree(base, EnumSet.noneOf(FileVisitOption.class), depth, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (matcher.matches(file)) {
+                            addFile(files, file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static int indexOfWildcard(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if (GLOB_CHARS.indexOf(pattern.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void addFile(List<Path> files, Path file) {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        if (file.toFile().length() == 0) {
+            ConsoleWriter.writeln(String.format("Skipping empty file[%s]", file));
+            return;
+        }
+        files.add(file);
+    }
+
+    // Group the files by the SHA-256 hash of their content. A zip archive also holds the name of the file, hence only
+    // files having the same name share the archive.
+    private List<Content> groupByContent(List<Path> files) throws AutomicException {
+        Map<String, Content> contents = new LinkedHashMap<>();
+        ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AutomicException(e.getMessage());
+        }
+        for (Path file : files) {
+            String hash;
+            try {
+                hash = hash(file, digest, buffer);
+            } catch (IOException e) {
+                ConsoleWriter.writeln(e);
+                throw new AutomicException(String.format("Unable to read the file[%s] : %s", file, e.getMessage()));
+            }
+            if (compression == Compression.ZIP) {
+                hash += file.getFileName();
+            }
+            Content content = contents.get(hash);
+            if (content == null) {
+                content = new Content();
+                contents.put(hash, content);
+            }
+            content.files.add(file);
+        }
+        return new ArrayList<>(contents.values());
+    }
+
+    private static String hash(Path file, MessageDigest digest, ByteBuffer buffer) throws IOException {
+        digest.reset();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                ((Buffer) buffer).flip();
+                digest.update(buffer);
+                ((Buffer) buffer).clear();
+            }
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit(b >> 4 & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private String getContentType(Path file) throws IOException {
+        String contentType = Files.probeContentType(file);
+        return compression.getContentType(contentType != null ? contentType : "");
+    }
+
+    /**
+     * Work item the files are attached to.
+     */
+    private static class WorkItem {
+
+        private final String formattedId;
+        private final String ref;
+
+        WorkItem(String formattedId, String ref) {
+            this.formattedId = formattedId;
+            this.ref = ref;
+        }
+    }
+
+    /**
+     * Distinct content shared by one or more files. The reference is set once the content has been uploaded.
+     */
+    private static class Content {
+
+        private final List<Path> files = new ArrayList<>(1);
+        private volatile String ref;
+    }
+
+    /**
+     * Attachment of a file to a work item.
+     */
+    private static class Link {
+
+        private final WorkItem workItem;
+        private final Content content;
+        private final Path file;
+
+        Link(WorkItem workItem, Content content, Path file) {
+            this.workItem = workItem;
+            this.content = content;
+            this.file = file;
+        }
+
+        String describe() {
+            return workItem.formattedId + " " + file;
+        }
+    }
+
+    /**
+     * Uploads a distinct content, read from the first file having that content.
+     */
+    private class UploadOperation implements BulkOperation<Content> {
+
+        @Override
+        public String describe(Content item) {
+            return item.files.get(0).toString();
+        }
+
+        @Override
+        public BulkResult execute(Content item) throws AutomicException, IOException {
+            item.ref = RallyUtil.createAttachmentContent(rallyRestTarget, item.files.get(0), compression);
+            return BulkResult.success(describe(item), null, item.ref.substring(item.ref.lastIndexOf('/') + 1));
+        }
+    }
+
+    /**
+     * Creates the attachment of a file to a work item using the uploaded content.
+     */
+    private class LinkOperation implements BulkOperation<Link> {
+
+        @Override
+        public String describe(Link item) {
+            return item.describe();
+        }
+
+        @Override
+        public BulkResult execute(Link item) throws AutomicException, IOException {
+            if (item.content.ref == null) {
+                return BulkResult.skipped(describe(item));
+            }
+            JsonObject attachment = RallyUtil.createAttachment(rallyRestTarget, item.workItem.ref, item.content.ref,
+                    compression.getName(item.file.getFileName().toString()), getContentType(item.file), description);
+            return BulkResult.success(describe(item), null, attachment.get("ObjectID").getAsString());
+        }
+    }
+}
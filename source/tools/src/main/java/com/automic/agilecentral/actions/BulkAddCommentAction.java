@@ -0,0 +1,351 @@
+package com.automic.agilecentral.actions;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.automic.agilecentral.constants.Constants;
+import com.automic.agilecentral.exception.AutomicException;
+import com.automic.agilecentral.util.BatchOperation;
+import com.automic.agilecentral.util.BulkExecutor;
+import com.automic.agilecentral.util.BulkOperation;
+import com.automic.agilecentral.util.BulkResult;
+import com.automic.agilecentral.util.CSVReader;
+import com.automic.agilecentral.util.CommonUtil;
+import com.automic.agilecentral.util.ConsoleWriter;
+import com.automic.agilecentral.util.Metrics;
+import com.automic.agilecentral.util.QueryPlanner;
+import com.automic.agilecentral.util.RallyBatchUtil;
+import com.automic.agilecentral.util.RallyUtil;
+import com.automic.agilecentral.validator.AgileCentralValidator;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.rallydev.rest.request.CreateRequest;
+import com.rallydev.rest.response.CreateResponse;
+import com.rallydev.rest.util.Fetch;
+
+/**
+ * This action adds comments to many work items in one run. Either the same comment is added to every work item of a
+ * list, or the comments are read from a csv file whose rows hold the work item id and its comment. A comment may
+ * refer to fields of its work item e.g. ${Name}, which are replaced by the values of the work item. The work items
+ * are resolved with a few large queries and the comments are posted concurrently, either one request per comment or
+ * several comments per batch request.
+ *
+ */
+public class BulkAddCommentAction extends AbstractHttpAction {
+
+    private static final int DEFAULT_CONCURRENCY = 4;
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([A-Za-z0-9_.]+)\\}");
+    private static final String OBJECT_ID = "ObjectID";
+
+    private String workSpaceRef;
+    private String workItemType;
+    private int concurrency;
+    private int batchSize;
+    private boolean continueOnError;
+    private String resultFilePath;
+
+    public BulkAddCommentAction() {
+        addOption("workspace", false, "Workspace name");
+        addOption("workitemtype", true, "Work item type");
+        addOption("workitemids", false, "Work item ids");
+        addOption("commentfilepath", false, "Comment added to all the work items");
+        addOption("mappingfilepath", false, "Csv file of work item ids and their comments");
+        addOption("concurrency", false, "Number of requests to send in parallel");
+        addOption("batchsize", false, "Number of comments to add per batch request");
+        addOption("continueonerror", false, "Continue if a comment can not be added");
+        addOption("resultfilepath", false, "Result file path");
+    }
+
+    @Override
+    protected void executeSpecific() throws AutomicException {
+        List<Comment> comments = prepareInputs();
+        List<BulkResult> results = new ArrayList<>();
+        List<Comment> resolved = resolveWorkItems(comments, results);
+
+        if (batchSize > 1) {
+            results.addAll(BulkExecutor.execute(resolved, new PostBatchOperation(), batchSize, concurrency,
+                    continueOnError));
+        } else {
+            results.addAll(BulkExecutor.execute(resolved, new PostOperation(), concurrency, continueOnError));
+        }
+
+        if (resultFilePath != null) {
+            BulkResult.writeResults(resultFilePath, results);
+            ConsoleWriter.writeln("UC4RB_AC_RESULT_FILE_PATH ::=" + resultFilePath);
+        }
+        int failed = BulkResult.count(results, BulkResult.Status.FAILED);
+        ConsoleWriter.writeln("UC4RB_AC_COMMENTED_COUNT ::=" + BulkResult.count(results, BulkResult.Status.SUCCESS));
+        ConsoleWriter.writeln("UC4RB_AC_FAILED_COUNT ::=" + failed);
+        if (failed != 0) {
+            throw new AutomicException("Unable to add the comment(s).");
+        }
+    }
+
+    private List<Comment> prepareInputs() throws AutomicException {
+        workItemType = getOptionValue("workitemtype");
+        AgileCentralValidator.checkNotEmpty(workItemType, "Work Item type");
+
+        concurrency = CommonUtil.parseStringValue(getOptionValue("concurrency"), DEFAULT_CONCURRENCY);
+        AgileCentralValidator.lessThan(concurrency, 1, "Concurrency");
+        batchSize = CommonUtil.parseStringValue(getOptionValue("batchsize"), 1);
+        AgileCentralValidator.lessThan(batchSize, 1, "Batch size");
+        continueOnError = CommonUtil.convert2Bool(getOptionValue("continueonerror"));
+
+        String temp = getOptionValue("resultfilepath");
+        if (CommonUtil.checkNotEmpty(temp)) {
+            File file = new File(temp);
+            AgileCentralValidator.checkFileWritable(file);
+            resultFilePath = file.getAbsolutePath();
+        }
+
+        String workItemIds = getOptionValue("workitemids");
+        String commentFilePath = getOptionValue("commentfilepath");
+        String mappingFilePath = getOptionValue("mappingfilepath");
+        List<Comment> comments;
+        if (CommonUtil.checkNotEmpty(mappingFilePath)) {
+            if (CommonUtil.checkNotEmpty(workItemIds) || CommonUtil.checkNotEmpty(commentFilePath)) {
+                throw new AutomicException("Please provide either a mapping file or work item ids and a comment");
+            }
+            AgileCentralValidator.checkFileExists(new File(mappingFilePath));
+            comments = readMapping(mappingFilePath);
+        } else {
+            AgileCentralValidator.checkNotEmpty(workItemIds, "Work item ids");
+            AgileCentralValidator.checkNotEmpty(commentFilePath, "Comment file path");
+            AgileCentralValidator.checkFileExists(new File(commentFilePath));
+            String text = CommonUtil.readFileIntoString(commentFilePath);
+            Map<String, String> ids = new LinkedHashMap<>();
+            for (String id : workItemIds.split(",")) {
+                String tmp = id.trim();
+                if (!tmp.isEmpty() && !ids.containsKey(tmp.toUpperCase())) {
+                    ids.put(tmp.toUpperCase(), tmp);
+                }
+            }
+            comments = new ArrayList<>(ids.size());
+            for (String id : ids.values()) {
+                comments.add(new Comment(id, id, text));
+            }
+        }
+        if (comments.isEmpty()) {
+            throw new AutomicException("No comments have been provided.");
+        }
+
+        String workSpaceName = getOptionValue("workspace");
+        if (CommonUtil.checkNotEmpty(workSpaceName)) {
+            workSpaceRef = RallyUtil.getWorspaceRef(rallyRestTarget, workSpaceName);
+        }
+        return comments;
+    }
+
+    // Read the comments from the csv file, the first column holds the work item id and the second the comment.
+    private static List<Comment> readMapping(String filePath) throws AutomicException {
+        List<Comment> comments = new ArrayList<>();
+        try (CSVReader reader = new CSVReader(filePath)) {
+            List<String> values;
+            int row = 0;
+            while ((values = reader.readLine()) != null) {
+                row++;
+                if (values.size() == 1 && values.get(0).trim().isEmpty()) {
+                    continue;
+                }
+                String id = values.get(0).trim();
+                if (row == 1 && Constants.FORMATTED_ID.equalsIgnoreCase(id)) {
+                    continue;
+                }
+                if (values.size() != 2 || id.isEmpty()) {
+                    throw new AutomicException(String.format(
+                            "Row %s of file [%s] has to contain the work item id and the comment", row, filePath));
+                }
+                comments.add(new Comment("Row " + row, id, values.get(1)));
+            }
+        } catch (IOException e) {
+            ConsoleWriter.writeln(e);
+            throw new AutomicException(String.format("Error occured while reading file [%s] : %s", filePath,
+                    e.getMessage()));
+        }
+        return comments;
+    }
+
+    // Resolve the work items of all the comments at once along with the fields their comments refer to. Comments of
+    // work items which do not exist or which refer to unknown fields are added as failed results if the action
+    // continues on errors.
+    private List<Comment> resolveWorkItems(List<Comment> comments, List<BulkResult> results)
+            throws AutomicException {
+        long start = System.nanoTime();
+        Map<String, String> ids = new LinkedHashMap<>();
+        Set<String> fetch = new LinkedHashSet<>(Arrays.asList(Constants.REFERENCE, Constants.FORMATTED_ID));
+        for (Comment comment : comments) {
+            if (!ids.containsKey(comment.workItemId.toUpperCase())) {
+                ids.put(comment.workItemId.toUpperCase(), comment.workItemId);
+            }
+            Matcher matcher = PLACEHOLDER.matcher(comment.text);
+            while (matcher.find()) {
+                // the fields of referenced objects are fetched along with the fields of the work item
+                fetch.addAll(Arrays.asList(matcher.group(1).split("\\.", 2)));
+            }
+        }
+        List<JsonObject> found = new QueryPlanner(rallyRestTarget, workItemType, workSpaceRef, new ArrayList<>(
+                fetch)).queryEqual(Constants.FORMATTED_ID, ids.values(), concurrency);
+        Metrics.current().phase(Metrics.REF_RESOLUTION, start);
+
+        Map<String, JsonObject> workItems = new HashMap<>(found.size());
+        for (JsonObject workItem : found) {
+            workItems.put(workItem.get(Constants.FORMATTED_ID).getAsString().toUpperCase(), workItem);
+        }
+        List<Comment> resolved = new ArrayList<>(comments.size());
+        Set<String> missing = new LinkedHashSet<>();
+        Set<String> unknown = new LinkedHashSet<>();
+        for (Comment comment : comments) {
+            JsonObject workItem = workItems.get(comment.workItemId.toUpperCase());
+            if (workItem == null) {
+                missing.add(comment.workItemId);
+                results.add(BulkResult.failure(comment.item, "Work item does not exist " + comment.workItemId));
+                continue;
+            }
+            Set<String> unknownFields = comment.resolve(workItem);
+            if (unknownFields.isEmpty()) {
+                resolved.add(comment);
+            } else {
+                unknown.addAll(unknownFields);
+                results.add(BulkResult.failure(comment.item, "Comment refers to unknown fields " + unknownFields));
+            }
+        }
+        if (!missing.isEmpty()) {
+            ConsoleWriter.writeln("Some of the Work items does not exist " + missing);
+        }
+        if (!unknown.isEmpty()) {
+            ConsoleWriter.writeln(String.format("Some of the fields do not exist for work item type [%s] %s",
+                    workItemType, unknown));
+        }
+        if (!continueOnError) {
+            if (!missing.isEmpty()) {
+                throw new AutomicException("Invalid work items have been provided.");
+            }
+            if (!unknown.isEmpty()) {
+                throw new AutomicException("Invalid fields have been referred to in the comment(s).");
+            }
+        }
+        return resolved;
+    }
+
+    // Value of a field of the work item, referenced objects are replaced by their name. Fields which are not returned
+    // by the server do not exist, empty references have no fields.
+    private static String getFieldValue(JsonObject workItem, String field) {
+        String[] path = field.split("\\.", 2);
+        JsonElement value = workItem.get(path[0]);
+        if (value != null && value.isJsonObject()) {
+            value = value.getAsJsonObject().get(path.length > 1 ? path[1] : "_refObjectName");
+        } else if (value != null && path.length > 1 && !value.isJsonNull()) {
+            value = null;
+        }
+        if (value == null) {
+            return null;
+        }
+        return value.isJsonNull() ? "" : value.isJsonPrimitive() ? value.getAsString() : value.toString();
+    }
+
+    private static BulkResult toResult(Comment comment, boolean successful, String[] errors, JsonObject created) {
+        if (!successful) {
+            return BulkResult.failure(comment.item, Arrays.toString(errors));
+        }
+        JsonElement objectId = created != null ? created.get(OBJECT_ID) : null;
+        return BulkResult.success(comment.item, comment.formattedId, objectId != null ? objectId.getAsString()
+                : null);
+    }
+
+    /**
+     * Comment to be added to a work item.
+     */
+    private static class Comment {
+
+        private final String item;
+        private final String workItemId;
+        private final String text;
+        private String formattedId;
+        private JsonObject post;
+
+        Comment(String item, String workItemId, String text) {
+            this.item = item;
+            this.workItemId = workItemId;
+            this.text = text;
+        }
+
+        // prepare the post for the resolved work item and return the fields of the placeholders which do not exist
+        Set<String> resolve(JsonObject workItem) {
+            formattedId = workItem.get(Constants.FORMATTED_ID).getAsString();
+            Set<String> unknown = new LinkedHashSet<>();
+            Matcher matcher = PLACEHOLDER.matcher(text);
+            StringBuffer sb = new StringBuffer(text.length());
+            while (matcher.find()) {
+                String value = getFieldValue(workItem, matcher.group(1));
+                if (value == null) {
+                    unknown.add(matcher.group(1));
+                    value = matcher.group();
+                }
+                matcher.appendReplacement(sb, Matcher.quoteReplacement(value));
+            }
+            matcher.appendTail(sb);
+            post = new JsonObject();
+            post.addProperty("Text", sb.toString());
+            post.addProperty(Constants.ARTIFACT, workItem.get(Constants.REFERENCE).getAsString());
+            return unknown;
+        }
+    }
+
+    /**
+     * Posts a single comment.
+     */
+    private class PostOperation implements BulkOperation<Comment> {
+
+        @Override
+        public String describe(Comment comment) {
+            return comment.item;
+        }
+
+        @Override
+        public BulkResult execute(Comment comment) throws AutomicException, IOException {
+            CreateRequest createRequest = new CreateRequest(Constants.CONVERSATION_POST, comment.post);
+            // the text of the comment is not needed in the response
+            createRequest.setFetch(new Fetch(OBJECT_ID));
+            CreateResponse createResponse = rallyRestTarget.create(createRequest);
+            return toResult(comment, createResponse.wasSuccessful(), createResponse.getErrors(), createResponse
+                    .getObject());
+        }
+    }
+
+    /**
+     * Posts a batch of comments with a single batch request.
+     */
+    private class PostBatchOperation implements BatchOperation<Comment> {
+
+        @Override
+        public String describe(Comment comment) {
+            return comment.item;
+        }
+
+        @Override
+        public List<BulkResult> execute(List<Comment> comments) throws AutomicException, IOException {
+            List<RallyBatchUtil.Entry> entries = new ArrayList<>(comments.size());
+            for (Comment comment : comments) {
+                entries.add(RallyBatchUtil.Entry.create(Constants.CONVERSATION_POST, comment.post));
+            }
+            List<RallyBatchUtil.Result> responses = RallyBatchUtil.execute(rallyRestTarget, entries);
+            List<BulkResult> results = new ArrayList<>(comments.size());
+            for (int i = 0; i < comments.size(); i++) {
+                RallyBatchUtil.Result response = responses.get(i);
+                results.add(toResult(comments.get(i), response.wasSuccessful(), response.getErrors(), response
+                        .getObject()));
+            }
+            return results;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.automic.agilecentral.actions;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.automic.agilecentral.constants.Constants;
+import com.automic.agilecentral.constants.ExceptionConstants;
+import com.automic.agilecentral.exception.AutomicException;
+import com.automic.agilecentral.exception.StaleRefException;
+import com.automic.agilecentral.util.BatchOperation;
+import com.automic.agilecentral.util.BulkExecutor;
+import com.automic.agilecentral.util.BulkOperation;
+import com.automic.agilecentral.util.BulkResult;
+import com.automic.agilecentral.util.CSVReader;
+import com.automic.agilecentral.util.CommonUtil;
+import com.automic.agilecentral.util.ConsoleWriter;
+import com.automic.agilecentral.util.Metrics;
+import com.automic.agilecentral.util.RallyBatchUtil;
+import com.automic.agilecentral.util.RallyUtil;
+import com.automic.agilecentral.validator.AgileCentralValidator;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.rallydev.rest.request.CreateRequest;
+import com.rallydev.rest.response.CreateResponse;
+
+/**
+ * This class creates the work items described in an input file. The file is either a csv file whose header contains
+ * the field names and every further line describes one work item, or a JSON lines file with one JSON object per line.
+ * Workspace and project are resolved once for all the work items and the work items are created concurrently, either
+ * one request per work item or several work items per batch request. The FormattedID and ObjectID of every created
+ * work item are written to the result file.
+ *
+ */
+public class BulkCreateWorkItemAction extends AbstractHttpAction {
+
+    private static final String CSV = "CSV";
+    private static final String JSONL = "JSONL";
+
+    private String workItemType;
+    private String workspaceRef;
+    private String projectRef;
+    private String resultFilePath;
+    private int concurrency;
+    private int batchSize;
+    private boolean continueOnError;
+
+    public BulkCreateWorkItemAction() {
+        addOption("workitemtype", true, "Work item type you wanted to create");
+        addOption("workspacename", false, "Workspace in which project is located");
+        addOption("projectname", false, "Project Name where work items need to be created");
+        addOption("inputfilepath", true, "File describing the work items");
+        addOption("inputformat", false, "Format of the input file CSV or JSONL");
+        addOption("resultfilepath", true, "Result file path");
+        addOption("concurrency", false, "Number of requests to send in parallel");
+        addOption("batchsize", false, "Number of work items to create per batch request");
+        addOption("continueonerror", false, "Continue if a work item can not be created");
+    }
+
+    @Override
+    protected void executeSpecific() throws AutomicException {
+        List<InputItem> items = prepareInputs();
+        ConsoleWriter.writeln("Number of work items to be created " + items.size());
+
+        List<BulkResult> results;
+        if (batchSize > 1) {
+            results = BulkExecutor.execute(items, new CreateBatchOperation(), batchSize, concurrency,
+                    continueOnError);
+        } else {
+            results = BulkExecutor.execute(items, new CreateOperation(), concurrency, continueOnError);
+        }
+        BulkResult.writeResults(resultFilePath, results);
+
+        int failed = BulkResult.count(results, BulkResult.Status.FAILED);
+        ConsoleWriter.writeln("UC4RB_AC_CREATED_COUNT ::=" + BulkResult.count(results, BulkResult.Status.SUCCESS));
+        ConsoleWriter.writeln("UC4RB_AC_FAILED_COUNT ::=" + failed);
+        ConsoleWriter.writeln("UC4RB_AC_RESULT_FILE_PATH ::=" + resultFilePath);
+        if (failed != 0) {
+            throw new AutomicException(String.format("Unable to create %s work item(s).", failed));
+        }
+    }
+
+    private List<InputItem> prepareInputs() throws AutomicException {
+        workItemType = getOptionValue("workitemtype");
+        AgileCentralValidator.checkNotEmpty(workItemType, "Type of work item e.g HIERARCHICALREQUIREMENT ,DEFECT etc");
+
+        String inputFilePath = getOptionValue("inputfilepath");
+        AgileCentralValidator.checkNotEmpty(inputFilePath, "Input file path");
+        AgileCentralValidator.checkFileExists(new File(inputFilePath));
+
+        String inputFormat = getOptionValue("inputformat");
+        if (!CommonUtil.checkNotEmpty(inputFormat)) {
+            inputFormat = CSV;
+        }
+        inputFormat = inputFormat.toUpperCase();
+        if (!CSV.equals(inputFormat) && !JSONL.equals(inputFormat)) {
+            throw new AutomicException(String.format(ExceptionConstants.INVALID_INPUT_PARAMETER, "Input format",
+                    inputFormat));
+        }
+
+        String temp = getOptionValue("resultfilepath");
+        AgileCentralValidator.checkNotEmpty(temp, "Result file path");
+        File file = new File(temp);
+        AgileCentralValidator.checkFileWritable(file);
+        resultFilePath = file.getAbsolutePath();
+
+        concurrency = CommonUtil.parseStringValue(getOptionValue("concurrency"), 1);
+        AgileCentralValidator.lessThan(concurrency, 1, "Concurrency");
+        batchSize = CommonUtil.parseStringValue(getOptionValue("batchsize"), 1);
+        AgileCentralValidator.lessThan(batchSize, 1, "Batch size");
+        continueOnError = CommonUtil.convert2Bool(getOptionValue("continueonerror"));
+
+        List<InputItem> items = CSV.equals(inputFormat) ? readCsv(inputFilePath) : readJsonLines(inputFilePath);
+        if (items.isEmpty()) {
+            throw new AutomicException(String.format("No work items found in file [%s]", inputFilePath));
+        }
+
+        // resolve workspace and project once for all the work items
+        String workspace = getOptionValue("workspacename");
+        if (CommonUtil.checkNotEmpty(workspace)) {
+            workspaceRef = RallyUtil.getWorspaceRef(rallyRestTarget, workspace);
+        }
+        String project = getOptionValue("projectname");
+        if (CommonUtil.checkNotEmpty(project)) {
+            projectRef = RallyUtil.getProjectRef(rallyRestTarget, project, workspaceRef);
+        }
+        return items;
+    }
+
+    // Read the work items from csv file. First line contains the field names.
+    private List<InputItem> readCsv(String filePath) throws AutomicException {
+        List<InputItem> items = new ArrayList<>();
+        try (CSVReader reader = new CSVReader(filePath)) {
+            List<String> headers = reader.readLine();
+            if (headers == null) {
+                return items;
+            }
+            List<String> values;
+            int row = 1;
+            while ((values = reader.readLine()) != null) {
+                row++;
+                if (values.size() == 1 && values.get(0).isEmpty()) {
+                    continue;
+                }
+                if (values.size() != headers.size()) {
+                    throw new AutomicException(String.format("Row %s of file [%s] has %s values, expected %s", row,
+                            filePath, values.size(), headers.size()));
+                }
+                JsonObject fields = new JsonObject();
+                for (int i = 0; i < headers.size(); i++) {
+                    String field = headers.get(i).trim();
+                    if (CommonUtil.checkNotEmpty(field) && CommonUtil.checkNotEmpty(values.get(i))) {
+                        fields.addProperty(field, values.get(i));
+                    }
+                }
+                items.add(new InputItem("Row " + row, fields));
+            }
+        } catch (IOException e) {
+            ConsoleWriter.writeln(e);
+            throw new AutomicException(String.format("Error occured while reading file [%s] : %s", filePath,
+                    e.getMessage()));
+        }
+        return items;
+    }
+
+    // Read the work items from JSON lines file i.e. one JSON object per line.
+    private List<InputItem> readJsonLines(String filePath) throws AutomicException {
+        List<InputItem> items = new ArrayList<>();
+        JsonParser parser = new JsonParser();
+        try (BufferedReader reader = Files.newBufferedReader(new File(filePath).toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            int row = 0;
+            while ((line = reader.readLine()) != null) {
+                row++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                JsonElement fields = parser.parse(line);
+                if (!fields.isJsonObject()) {
+                    throw new AutomicException(String.format("Line %s of file [%s] is not a JSON object", row,
+                            filePath));
+                }
+                items.add(new InputItem("Line " + row, fields.getAsJsonObject()));
+            }
+        } catch (IOException | JsonParseException e) {
+            ConsoleWriter.writeln(e);
+            throw new AutomicException(String.format("Error occured while reading file [%s] : %s", filePath,
+                    e.getMessage()));
+        }
+        return items;
+    }
+
+    /**
+     * Work item read from the input file.
+     */
+    private static class InputItem {
+
+        private final String id;
+        private final JsonObject fields;
+
+        InputItem(String id, JsonObject fields) {
+            this.id = id;
+            this.fields = fields;
+        }
+    }
+
+    // Add the workspace and project to the work item unless it defines them itself
+    private JsonObject prepareWorkItem(InputItem item) {
+        JsonObject newObj = item.fields;
+        if (workspaceRef != null && !newObj.has(Constants.WORKSPACE)) {
+            newObj.addProperty(Constants.WORKSPACE, workspaceRef);
+        }
+        if (projectRef != null && !newObj.has(Constants.PROJECT)) {
+            newObj.addProperty(Constants.PROJECT, projectRef);
+        }
+        return newObj;
+    }
+
+    private BulkResult toResult(InputItem item, boolean successful, String[] errors, JsonObject created) {
+        if (!successful) {
+            try {
+                RallyUtil.checkStaleRefs(Arrays.toString(errors), workspaceRef, projectRef);
+            } catch (StaleRefException e) {
+                // work items may have been created already, the references are resolved again by the next run
+                ConsoleWriter.writeln(e.getMessage());
+            }
+            return BulkResult.failure(item.id, Arrays.toString(errors));
+        }
+        return BulkResult.success(item.id, getString(created, Constants.FORMATTED_ID), getString(created, "ObjectID"));
+    }
+
+    // value of the field, null if the created object or the field is missing e.g. a type without formatted id
+    private static String getString(JsonObject created, String field) {
+        JsonElement value = created != null ? created.get(field) : null;
+        return value != null && !value.isJsonNull() ? value.getAsString() : null;
+    }
+
+    /**
+     * Creates a single work item.
+     */
+    private class CreateOperation implements BulkOperation<InputItem> {
+
+        @Override
+        public String describe(InputItem item) {
+            return item.id;
+        }
+
+        @Override
+        public BulkResult execute(InputItem item) throws AutomicException, IOException {
+            long start = System.nanoTime();
+            CreateResponse createResponse = rallyRestTarget.create(new CreateRequest(workItemType,
+                    prepareWorkItem(item)));
+            Metrics.current().phase(Metrics.ITEM_CREATE, start);
+            return toResult(item, createResponse.wasSuccessful(), createResponse.getErrors(),
+                    createResponse.getObject());
+        }
+    }
+
+    /**
+     * Creates a batch of work items with a single batch request.
+     */
+    private class CreateBatchOperation implements BatchOperation<InputItem> {
+
+        @Override
+        public String describe(InputItem item) {
+            return item.id;
+        }
+
+        @Override
+        public List<BulkResult> execute(List<InputItem> items) throws AutomicException, IOException {
+            List<RallyBatchUtil.Entry> entries = new ArrayList<>(items.size());
+            for (InputItem item : items) {
+                entries.add(RallyBatchUtil.Entry.create(workItemType, prepareWorkItem(item)));
+            }
+            long start = System.nanoTime();
+            List<RallyBatchUtil.Result> responses = RallyBatchUtil.execute(rallyRestTarget, entries);
+            Metrics.current().phase(Metrics.ITEM_CREATE, start);
+            List<BulkResult> results = new ArrayList<>(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                RallyBatchUtil.Result response = responses.get(i);
+                results.add(toResult(items.get(i), response.wasSuccessful(), response.getErrors(),
+                        response.getObject()));
+            }
+            return results;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.automic.agilecentral.actions;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.automic.agilecentral.constants.Constants;
+import com.automic.agilecentral.exception.AutomicException;
+import com.automic.agilecentral.util.BatchOperation;
+import com.automic.agilecentral.util.BulkExecutor;
+import com.automic.agilecentral.util.BulkOperation;
+import com.automic.agilecentral.util.BulkResult;
+import com.automic.agilecentral.util.CommonUtil;
+import com.automic.agilecentral.util.ConsoleWriter;
+import com.automic.agilecentral.util.Metrics;
+import com.automic.agilecentral.util.QueryPlanner;
+import com.automic.agilecentral.util.RallyBatchUtil;
+import com.automic.agilecentral.util.RallyUtil;
+import com.automic.agilecentral.validator.AgileCentralValidator;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.rallydev.rest.request.DeleteRequest;
+import com.rallydev.rest.request.QueryRequest;
+import com.rallydev.rest.response.DeleteResponse;
+import com.rallydev.rest.response.QueryResponse;
+import com.rallydev.rest.util.Fetch;
+
+/**
+ * This action deletes many work items of the same type in one run. The work items are given by their ids, either
+ * as a list or in a file, or selected by a query filter. Their references are resolved with a few large queries and
+ * the work items are deleted concurrently, either one request per work item or several work items per batch request.
+ * A dry run only prints the work items which would be deleted.
+ *
+ */
+public class BulkDeleteWorkItemAction extends AbstractHttpAction {
+
+    private static final int DEFAULT_CONCURRENCY = 4;
+    private static final int PAGE_SIZE = 2000;
+
+    private String workSpaceRef;
+    private String workItemType;
+    private int concurrency;
+    private int batchSize;
+    private boolean continueOnError;
+    private boolean dryRun;
+    private String resultFilePath;
+
+    public BulkDeleteWorkItemAction() {
+        addOption("workspace", false, "Workspace name");
+        addOption("workitemtype", true, "Work item type");
+        addOption("workitemids", false, "Work item ids");
+        addOption("workitemidsfilepath", false, "File containing the work item ids");
+        addOption("filters", false, "Query filter selecting the work items");
+        addOption("concurrency", false, "Maximum number of delete requests in flight");
+        addOption("batchsize", false, "Number of work items to delete per batch request");
+        addOption("continueonerror", false, "Continue if a work item can not be deleted");
+        addOption("dryrun", false, "Only print the work items which would be deleted");
+        addOption("resultfilepath", false, "Result file path");
+    }
+
+    @Override
+    protected void executeSpecific() throws AutomicException {
+        prepareInputs();
+        List<BulkResult> results = new ArrayList<>();
+        List<WorkItem> workItems = resolveWorkItems(results);
+        ConsoleWriter.writeln("UC4RB_AC_RESOLVED_COUNT ::=" + workItems.size());
+
+        if (dryRun) {
+            for (WorkItem workItem : workItems) {
+                ConsoleWriter.writeln(String.format("Work item %s %s would be deleted", workItem.formattedId,
+                        workItem.ref));
+            }
+            return;
+        }
+
+        if (batchSize > 1) {
+            results.addAll(BulkExecutor.execute(workItems, new DeleteBatchOperation(), batchSize, concurrency,
+                    continueOnError));
+        } else {
+            results.addAll(BulkExecutor.execute(workItems, new DeleteOperation(), concurrency, continueOnError));
+        }
+
+        if (resultFilePath != null) {
+            BulkResult.writeResults(resultFilePath, results);
+            ConsoleWriter.writeln("UC4RB_AC_RESULT_FILE_PATH ::=" + resultFilePath);
+        }
+        int failed = BulkResult.count(results, BulkResult.Status.FAILED);
+        ConsoleWriter.writeln("UC4RB_AC_DELETED_COUNT ::=" + BulkResult.count(results, BulkResult.Status.SUCCESS));
+        ConsoleWriter.writeln("UC4RB_AC_FAILED_COUNT ::=" + failed);
+        if (failed != 0) {
+            throw new AutomicException("Unable to delete the work item(s).");
+        }
+    }
+
+    private void prepareInputs() throws AutomicException {
+        workItemType = getOptionValue("workitemtype");
+        AgileCentralValidator.checkNotEmpty(workItemType, "Work Item type");
+
+        String workSpaceName = getOptionValue("workspace");
+        if (CommonUtil.checkNotEmpty(workSpaceName)) {
+            workSpaceRef = RallyUtil.getWorspaceRef(rallyRestTarget, workSpaceName);
+        }
+
+        concurrency = CommonUtil.parseStringValue(getOptionValue("concurrency"), DEFAULT_CONCURRENCY);
+        AgileCentralValidator.lessThan(concurrency, 1, "Concurrency");
+        batchSize = CommonUtil.parseStringValue(getOptionValue("batchsize"), 1);
+        AgileCentralValidator.lessThan(batchSize, 1, "Batch size");
+        continueOnError = CommonUtil.convert2Bool(getOptionValue("continueonerror"));
+        dryRun = CommonUtil.convert2Bool(getOptionValue("dryrun"));
+
+        String temp = getOptionValue("resultfilepath");
+        if (CommonUtil.checkNotEmpty(temp)) {
+            File file = new File(temp);
+            AgileCentralValidator.checkFileWritable(file);
+            resultFilePath = file.getAbsolutePath();
+        }
+    }
+
+    // Resolve the work items selected by the ids or by the filter. Ids which do not exist are added as failed
+    // results if the deletion continues on errors or only reported by a dry run.
+    private List<WorkItem> resolveWorkItems(List<BulkResult> results) throws AutomicException {
+        long start = System.nanoTime();
+        try {
+            String filters = getOptionValue("filters");
+            Set<String> ids = getWorkItemIds();
+            if (CommonUtil.checkNotEmpty(filters)) {
+                if (!ids.isEmpty()) {
+                    throw new AutomicException("Please provide either work item ids or a filter, not both");
+                }
+                return queryWorkItems(filters);
+            }
+            if (ids.isEmpty()) {
+                throw new AutomicException("Please provide the work item ids or a filter");
+            }
+
+            List<String> fetch = Arrays.asList(Constants.REFERENCE, Constants.FORMATTED_ID, "ObjectID");
+            List<JsonObject> found = new QueryPlanner(rallyRestTarget, workItemType, workSpaceRef, fetch)
+                    .queryEqual(Constants.FORMATTED_ID, ids, concurrency);
+            List<WorkItem> workItems = toWorkItems(found);
+            // formatted ids are not case sensitive, the missing ones are reported as they have been given
+            Map<String, String> missing = new LinkedHashMap<>();
+            for (String id : ids) {
+                if (!missing.containsKey(id.toUpperCase())) {
+                    missing.put(id.toUpperCase(), id);
+                }
+            }
+            for (WorkItem workItem : workItems) {
+                missing.remove(workItem.formattedId.toUpperCase());
+            }
+            if (!missing.isEmpty()) {
+                ConsoleWriter.writeln("Some of the Work items does not exist " + missing.values());
+                if (!continueOnError && !dryRun) {
+                    throw new AutomicException("Invalid work items have been provided.");
+                }
+                for (String id : missing.values()) {
+                    results.add(BulkResult.failure(id, "Work item does not exist"));
+                }
+            }
+            return workItems;
+        } finally {
+            Metrics.current().phase(Metrics.REF_RESOLUTION, start);
+        }
+    }
+
+    // ids given as a comma separated list and in the file, separated by commas or white spaces
+    private Set<String> getWorkItemIds() throws AutomicException {
+        StringBuilder input = new StringBuilder();
+        String workItemIds = getOptionValue("workitemids");
+        if (CommonUtil.checkNotEmpty(workItemIds)) {
+            input.append(workItemIds);
+        }
+        String filePath = getOptionValue("workitemidsfilepath");
+        if (CommonUtil.checkNotEmpty(filePath)) {
+            AgileCentralValidator.checkFileExists(new File(filePath));
+            input.append(',').append(CommonUtil.readFileIntoString(filePath));
+        }
+        Set<String> ids = new LinkedHashSet<>();
+        for (String id : input.toString().split("[,\\s]+")) {
+            if (!id.isEmpty()) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private List<WorkItem> queryWorkItems(String filters) throws AutomicException {
+        QueryRequest queryRequest = new QueryRequest(workItemType);
+        if (workSpaceRef != null) {
+            queryRequest.setWorkspace(workSpaceRef);
+        }
+        queryRequest.setFetch(new Fetch(Constants.REFERENCE, Constants.FORMATTED_ID, "ObjectID"));
+        queryRequest.addParam("query", filters);
+        queryRequest.setPageSize(PAGE_SIZE);
+        queryRequest.setLimit(Integer.MAX_VALUE);
+        QueryResponse queryResponse;
+        try {
+            queryResponse = rallyRestTarget.query(queryRequest);
+        } catch (IOException e) {
+            ConsoleWriter.writeln(e);
+            throw new AutomicException(String.format("Error occured while querying the work items : %s",
+                    e.getMessage()));
+        }
+        if (!queryResponse.wasSuccessful()) {
+            ConsoleWriter.writeln(Arrays.toString(queryResponse.getErrors()));
+            RallyUtil.checkStaleRefs(Arrays.toString(queryResponse.getErrors()), workSpaceRef);
+            throw new AutomicException(String.format("Unable to query the work items matching %s", filters));
+        }
+        List<JsonObject> found = new ArrayList<>(queryResponse.getResults().size());
+        for (JsonElement result : queryResponse.getResults()) {
+            found.add(result.getAsJsonObject());
+        }
+        return toWorkItems(found);
+    }
+
+    private static List<WorkItem> toWorkItems(List<JsonObject> found) {
+        List<WorkItem> workItems = new ArrayList<>(found.size());
+        Set<String> refs = new HashSet<>(found.size());
+        for (JsonObject workItem : found) {
+            String ref = workItem.get(Constants.REFERENCE).getAsString();
+            if (refs.add(ref)) {
+                workItems.add(new WorkItem(workItem.get(Constants.FORMATTED_ID).getAsString(), ref, workItem.get(
+                        "ObjectID").getAsString()));
+            }
+        }
+        return workItems;
+    }
+
+    private BulkResult toResult(WorkItem item, boolean successful, String[] errors) {
+        if (!successful) {
+            return BulkResult.failure(item.formattedId, Arrays.toString(errors));
+        }
+        RallyUtil.invalidateWorkItemRef(rallyRestTarget, item.formattedId, workSpaceRef, workItemType);
+        return BulkResult.success(item.formattedId, item.formattedId, item.objectId);
+    }
+
+    /**
+     * Work item which is to be deleted.
+     */
+    private static class WorkItem {
+
+        private final String formattedId;
+        private final String ref;
+        private final String objectId;
+
+        WorkItem(String formattedId, String ref, String objectId) {
+            this.formattedId = formattedId;
+            this.ref = ref;
+            this.objectId = objectId;
+        }
+    }
+
+    /**
+     * Deletes a single work item.
+     */
+    private class DeleteOperation implements BulkOperation<WorkItem> {
+
+        @Override
+        public String describe(WorkItem item) {
+            return item.formattedId;
+        }
+
+        @Override
+        public BulkResult execute(WorkItem item) throws AutomicException, IOException {
+            DeleteResponse deleteResponse = rallyRestTarget.delete(new DeleteRequest(item.ref));
+            return toResult(item, deleteResponse.wasSuccessful(), deleteResponse.getErrors());
+        }
+    }
+
+    /**
+     * Deletes a batch of work items with a single batch request.
+     */
+    private class DeleteBatchOperation implements BatchOperation<WorkItem> {
+
+        @Override
+        public String describe(WorkItem item) {
+            return item.formattedId;
+        }
+
+        @Override
+        public List<BulkResult> execute(List<WorkItem> items) throws AutomicException, IOException {
+            List<RallyBatchUtil.Entry> entries = new ArrayList<>(items.size());
+            for (WorkItem item : items) {
+                entries.add(RallyBatchUtil.Entry.delete(item.ref));
+            }
+            List<RallyBatchUtil.Result> responses = RallyBatchUtil.execute(rallyRestTarget, entries);
+            List<BulkResult> results = new ArrayList<>(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                RallyBatchUtil.Result response = responses.get(i);
+                results.add(toResult(items.get(i), response.wasSuccessful(), response.getErrors()));
+            }
+            return results;
+        }
+    }
+}
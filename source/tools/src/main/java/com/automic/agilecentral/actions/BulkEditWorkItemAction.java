@@ -7,66 +7,113 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import com.automic.agilecentral.constants.Constants;
 import com.automic.agilecentral.exception.AutomicException;
+import com.automic.agilecentral.exception.StaleRefException;
+import com.automic.agilecentral.util.BatchOperation;
+import com.automic.agilecentral.util.BulkExecutor;
+import com.automic.agilecentral.util.BulkOperation;
+import com.automic.agilecentral.util.BulkResult;
 import com.automic.agilecentral.util.CommonUtil;
 import com.automic.agilecentral.util.ConsoleWriter;
+import com.automic.agilecentral.util.Metrics;
+import com.automic.agilecentral.util.QueryPlanner;
+import com.automic.agilecentral.util.RallyBatchUtil;
 import com.automic.agilecentral.util.RallyUtil;
 import com.automic.agilecentral.validator.AgileCentralValidator;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.rallydev.rest.request.QueryRequest;
 import com.rallydev.rest.request.UpdateRequest;
 import com.rallydev.rest.response.QueryResponse;
 import com.rallydev.rest.response.UpdateResponse;
+import com.rallydev.rest.util.Fetch;
 
 /**
- * This class is used to perform update on more than one work item i.e user story,defects etc. It will throw an error
- * and quits as soon as an error occurred while updating the fields of a particular work item.This might result in
- * partial update of the work items.Following fields can be updated for more than one work items using this action
- * :Project Name,Description,Schedule State and Custom fields.
+ * This class is used to perform update on more than one work item i.e user story,defects etc. The work items are
+ * updated concurrently, either one request per work item or several work items per batch request. By default no
+ * further work item is updated once an error occurred while updating the fields of a particular work item, unless
+ * continue on error has been requested. The outcome of every work item can be written to a result file so that a
+ * partial update can be identified.Following fields can be updated for more than one work items using this action
+ * :Project Name,Description,Schedule State and Custom fields. The work items are given by their ids or selected by a
+ * query filter, in which case each page of matching work items is updated while the following pages are queried.
  * 
  */
 public class BulkEditWorkItemAction extends AbstractHttpAction {
 
-    private static final int REQUEST_SIZE = 15;
+    private static final int PAGE_SIZE = 500;
+    private static final String OBJECT_ID = "ObjectID";
+
+    private int concurrency;
+    private int batchSize;
+    private boolean continueOnError;
+    private String resultFilePath;
 
     public BulkEditWorkItemAction() {
-        addOption("workitemids", true, "Work item ids");
+        addOption("workitemids", false, "Work item ids");
+        addOption("filters", false, "Query filter selecting the work items");
         addOption("workitemtype", true, "Work item type you wanted to edit");
         addOption("workspacename", false, "Workspace in which stories are located");
         addOption("projectname", false, "New project name");
         addOption("descriptionfilepath", false, "Description file path");
         addOption("schedulestate", false, "New schedule state of work item");
         addOption("customfilepath", false, "Custom fields file path");
+        addOption("concurrency", false, "Number of requests to send in parallel");
+        addOption("batchsize", false, "Number of work items to update per batch request");
+        addOption("continueonerror", false, "Continue if a work item can not be updated");
+        addOption("resultfilepath", false, "Result file path");
     }
 
     @Override
     protected void executeSpecific() throws AutomicException {
+        prepareExecutionInputs();
         JsonObject updateObj = prepareJsonObject();
-        List<String> workItemRefArray = prepareWorkItemReferences();
-
-        for (String ref : workItemRefArray) {
-            try {
-                UpdateRequest req = new UpdateRequest(ref, updateObj);
-                UpdateResponse updateResponse = rallyRestTarget.update(req);
-                if (!updateResponse.wasSuccessful()) {
-                    ConsoleWriter.writeln("Response Json Object: " + updateResponse.getObject());
-                    ConsoleWriter.writeln(Arrays.toString(updateResponse.getErrors()));
-                    throw new AutomicException("Unable to update the work item(s).");
-                }
-                ConsoleWriter.writeln(String.format("Work Item %s updated",
-                        updateResponse.getObject().get(Constants.FORMATTED_ID)));
-            } catch (IOException e) {
-                ConsoleWriter.writeln(e);
-                throw new AutomicException(String.format("Error occured while updating work item ids: %s",
-                        e.getMessage()));
-            }
+        String filters = getOptionValue("filters");
+        if (CommonUtil.checkNotEmpty(filters) && CommonUtil.checkNotEmpty(getOptionValue("workitemids"))) {
+            throw new AutomicException("Please provide either work item ids or a filter, not both");
+        }
+
+        List<BulkResult> results;
+        if (CommonUtil.checkNotEmpty(filters)) {
+            results = updateMatchingWorkItems(filters, updateObj);
+        } else if (batchSize > 1) {
+            List<WorkItem> workItems = prepareWorkItemReferences();
+            results = BulkExecutor.execute(workItems, new UpdateBatchOperation(updateObj), batchSize, concurrency,
+                    continueOnError);
+        } else {
+            List<WorkItem> workItems = prepareWorkItemReferences();
+            results = BulkExecutor.execute(workItems, new UpdateOperation(updateObj), concurrency, continueOnError);
+        }
+
+        if (resultFilePath != null) {
+            BulkResult.writeResults(resultFilePath, results);
+            ConsoleWriter.writeln("UC4RB_AC_RESULT_FILE_PATH ::=" + resultFilePath);
+        }
+        int failed = BulkResult.count(results, BulkResult.Status.FAILED);
+        ConsoleWriter.writeln("UC4RB_AC_UPDATED_COUNT ::=" + BulkResult.count(results, BulkResult.Status.SUCCESS));
+        ConsoleWriter.writeln("UC4RB_AC_FAILED_COUNT ::=" + failed);
+        if (failed != 0) {
+            throw new AutomicException("Unable to update the work item(s).");
+        }
+    }
+
+    private void prepareExecutionInputs() throws AutomicException {
+        concurrency = CommonUtil.parseStringValue(getOptionValue("concurrency"), 1);
+        AgileCentralValidator.lessThan(concurrency, 1, "Concurrency");
+        batchSize = CommonUtil.parseStringValue(getOptionValue("batchsize"), 1);
+        AgileCentralValidator.lessThan(batchSize, 1, "Batch size");
+        continueOnError = CommonUtil.convert2Bool(getOptionValue("continueonerror"));
+
+        String temp = getOptionValue("resultfilepath");
+        if (CommonUtil.checkNotEmpty(temp)) {
+            File file = new File(temp);
+            AgileCentralValidator.checkFileWritable(file);
+            resultFilePath = file.getAbsolutePath();
         }
     }
 
@@ -110,76 +157,235 @@ public class BulkEditWorkItemAction extends AbstractHttpAction {
         return updateObj;
     }
 
-    private List<String> prepareWorkItemReferences() throws AutomicException {
+    private List<WorkItem> prepareWorkItemReferences() throws AutomicException {
         // checking if given work item exists
         String workItemIds = getOptionValue("workitemids");
         AgileCentralValidator.checkNotEmpty(workItemIds, "Work item ids");
 
+        // formatted ids are not case sensitive, the first spelling of an id is kept
         String[] workItemsArray = workItemIds.split(",");
-        Set<String> uniqueWorkItemSet = new HashSet<>(workItemsArray.length);
+        Map<String, String> uniqueWorkItems = new LinkedHashMap<>(workItemsArray.length);
         for (String s : workItemsArray) {
             String tmp = s.trim();
-            if (!tmp.isEmpty()) {
-                uniqueWorkItemSet.add(tmp);
+            if (!tmp.isEmpty() && !uniqueWorkItems.containsKey(tmp.toUpperCase())) {
+                uniqueWorkItems.put(tmp.toUpperCase(), tmp);
             }
         }
 
         // check the size 0
-        if (uniqueWorkItemSet.size() == 0) {
+        if (uniqueWorkItems.size() == 0) {
             throw new AutomicException(String.format("Please provide valid work items %s", workItemIds));
         }
 
-        List<String> workItemList = new ArrayList<String>(uniqueWorkItemSet);
+        List<String> workItemList = new ArrayList<String>(uniqueWorkItems.values());
         return retrieveWorkItemRefs(workItemList);
     }
 
-    private List<String> retrieveWorkItemRefs(List<String> workItemList) throws AutomicException {
+    // Resolve the references of the work items. The ids are queried in as few chunks as the URL length allows and
+    // the chunks are sent in parallel.
+    private List<WorkItem> retrieveWorkItemRefs(List<String> workItemList) throws AutomicException {
+        String workItemType = getWorkItemType();
+        String workSpace = getWorkspaceRef();
+
+        List<String> fetch = Arrays.asList(Constants.REFERENCE, Constants.FORMATTED_ID);
+        List<JsonObject> results = new QueryPlanner(rallyRestTarget, workItemType, workSpace, fetch).queryEqual(
+                Constants.FORMATTED_ID, workItemList, concurrency);
+
+        List<WorkItem> workItems = new ArrayList<>(results.size());
+        Map<String, String> missing = new LinkedHashMap<>(workItemList.size());
+        for (String id : workItemList) {
+            missing.put(id.toUpperCase(), id);
+        }
+        for (JsonObject workItem : results) {
+            String formattedId = workItem.get(Constants.FORMATTED_ID).getAsString();
+            workItems.add(new WorkItem(formattedId, workItem.get(Constants.REFERENCE).getAsString()));
+            missing.remove(formattedId.toUpperCase());
+        }
+        if (!missing.isEmpty() || workItems.size() != workItemList.size()) {
+            ConsoleWriter.writeln("Expected Count: " + workItemList.size() + " Actual Count: " + workItems.size());
+            ConsoleWriter.writeln("Some of the Work items does not exist " + missing.values());
+            throw new AutomicException("Invalid work items have been provided.");
+        }
+        return workItems;
+    }
+
+    // Update the work items matching the filter while they are queried. The pages are requested in the order of the
+    // object ids and each page starts after the last work item of the previous page, so that work items which no
+    // longer match the filter once updated do not shift the following pages.
+    private List<BulkResult> updateMatchingWorkItems(String filters, JsonObject updateObj) throws AutomicException {
+        String workItemType = getWorkItemType();
+        String workSpace = getWorkspaceRef();
+
+        BulkExecutor.Pipeline<WorkItem> pipeline = batchSize > 1 ? new BulkExecutor.Pipeline<>(
+                new UpdateBatchOperation(updateObj), batchSize, concurrency, continueOnError)
+                : new BulkExecutor.Pipeline<>(new UpdateOperation(updateObj), concurrency, continueOnError);
+        try {
+            String lastObjectId = null;
+            int matched = 0;
+            BulkResult queryFailure = null;
+            JsonArray page;
+            do {
+                QueryRequest queryRequest = new QueryRequest(workItemType);
+                if (workSpace != null) {
+                    queryRequest.setWorkspace(workSpace);
+                }
+                queryRequest.setFetch(new Fetch(Constants.REFERENCE, Constants.FORMATTED_ID, OBJECT_ID));
+                queryRequest.setOrder(OBJECT_ID);
+                queryRequest.setPageSize(PAGE_SIZE);
+                queryRequest.setLimit(PAGE_SIZE);
+                queryRequest.addParam("query", lastObjectId == null ? filters : "(" + filters + " AND (" + OBJECT_ID
+                        + " > " + lastObjectId + "))");
+                List<WorkItem> workItems;
+                try {
+                    page = queryPage(queryRequest, filters, lastObjectId == null);
+                    workItems = new ArrayList<>(page.size());
+                    for (JsonElement elem : page) {
+                        JsonObject workItem = elem.getAsJsonObject();
+                        workItems.add(new WorkItem(workItem.get(Constants.FORMATTED_ID).getAsString(), workItem
+                                .get(Constants.REFERENCE).getAsString()));
+                        lastObjectId = workItem.get(OBJECT_ID).getAsString();
+                    }
+                } catch (StaleRefException e) {
+                    // thrown for the first page only, before any work item has been updated
+                    throw e;
+                } catch (AutomicException | RuntimeException e) {
+                    // the work items of the pages fetched so far are still updated and reported
+                    ConsoleWriter.writeln(e);
+                    queryFailure = BulkResult.failure(filters, e.getMessage() != null ? e.getMessage() : e
+                            .toString());
+                    break;
+                }
+                pipeline.submit(workItems);
+                matched += workItems.size();
+            } while (page.size() == PAGE_SIZE && (continueOnError || !pipeline.hasFailed()));
+            ConsoleWriter.writeln("UC4RB_AC_MATCHED_COUNT ::=" + matched);
+            List<BulkResult> results = pipeline.finish();
+            if (queryFailure != null) {
+                results.add(queryFailure);
+            }
+            return results;
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    private JsonArray queryPage(QueryRequest queryRequest, String filters, boolean firstPage)
+            throws AutomicException {
+        long start = System.nanoTime();
+        QueryResponse queryResponse;
+        try {
+            queryResponse = rallyRestTarget.query(queryRequest);
+        } catch (IOException e) {
+            ConsoleWriter.writeln(e);
+            throw new AutomicException(String.format("Error occured while querying the work items : %s",
+                    e.getMessage()));
+        }
+        Metrics.current().phase(Metrics.QUERY_PAGE, start);
+        if (!queryResponse.wasSuccessful()) {
+            ConsoleWriter.writeln(Arrays.toString(queryResponse.getErrors()));
+            // nothing has been updated before the first page
+            if (firstPage) {
+                RallyUtil.checkStaleRefs(Arrays.toString(queryResponse.getErrors()), queryRequest.getWorkspace());
+            }
+            throw new AutomicException(String.format("Unable to query the work items matching %s", filters));
+        }
+        return queryResponse.getResults();
+    }
+
+    private String getWorkItemType() throws AutomicException {
         String workItemType = getOptionValue("workitemtype");
         AgileCentralValidator.checkNotEmpty(workItemType, "Type of work item e.g HIERARCHICALREQUIREMENT ,DEFECT etc");
+        return workItemType;
+    }
 
+    private String getWorkspaceRef() throws AutomicException {
         String workSpace = getOptionValue("workspacename");
         if (CommonUtil.checkNotEmpty(workSpace)) {
             workSpace = RallyUtil.getWorspaceRef(rallyRestTarget, workSpace);
         }
+        return workSpace;
+    }
 
-        List<String> workItemRefArray = new ArrayList<>(workItemList.size());
-        Map<String, List<String>> queryFilter = new HashMap<>();
-        List<String> fetch = new ArrayList<>(Arrays.asList(new String[] { Constants.REFERENCE }));
+    /**
+     * Work item which is to be updated.
+     */
+    private static class WorkItem {
 
-        int totalRequestSize = workItemList.size();
-        int start = 0;
-        int end;
-        while (start < totalRequestSize) {
-            end = start + REQUEST_SIZE;
-            if (end > totalRequestSize) {
-                end = totalRequestSize;
-            }
-            List<String> requestList = workItemList.subList(start, end);
-            queryFilter.put(Constants.FORMATTED_ID, requestList);
-
-            QueryResponse queryResponse = null;
-            try {
-                queryResponse = RallyUtil.queryOR(rallyRestTarget, workItemType, workSpace, queryFilter, fetch, null);
-            } catch (IOException e) {
-                ConsoleWriter.writeln(e);
-                throw new AutomicException(String.format("Error occured while fetching details of work items : %s",
-                        requestList));
-            }
+        private final String formattedId;
+        private final String ref;
 
-            int totalResults = queryResponse.getTotalResultCount();
-            if (totalResults != requestList.size()) {
-                ConsoleWriter.writeln(queryResponse.getResults());
-                ConsoleWriter.writeln("Expected Count: " + requestList.size() + " Actual Count: " + totalResults);
-                ConsoleWriter.writeln("Some of the Work items does not exist " + requestList);
-                throw new AutomicException("Invalid work items have been provided.");
-            }
+        WorkItem(String formattedId, String ref) {
+            this.formattedId = formattedId;
+            this.ref = ref;
+        }
+    }
 
-            for (JsonElement elem : queryResponse.getResults()) {
-                workItemRefArray.add(elem.getAsJsonObject().get(Constants.REFERENCE).getAsString());
-            }
-            start = end;
+    private static BulkResult toResult(WorkItem item, boolean successful, String[] errors, JsonObject updated) {
+        if (!successful) {
+            return BulkResult.failure(item.formattedId, Arrays.toString(errors));
         }
-        return workItemRefArray;
+        return BulkResult.success(item.formattedId, updated.get(Constants.FORMATTED_ID).getAsString(), updated.get(
+                OBJECT_ID).getAsString());
     }
 
+    /**
+     * Updates a single work item.
+     */
+    private class UpdateOperation implements BulkOperation<WorkItem> {
+
+        private final JsonObject updateObj;
+
+        UpdateOperation(JsonObject updateObj) {
+            this.updateObj = updateObj;
+        }
+
+        @Override
+        public String describe(WorkItem item) {
+            return item.formattedId;
+        }
+
+        @Override
+        public BulkResult execute(WorkItem item) throws AutomicException, IOException {
+            long start = System.nanoTime();
+            UpdateResponse updateResponse = rallyRestTarget.update(new UpdateRequest(item.ref, updateObj));
+            Metrics.current().phase(Metrics.ITEM_UPDATE, start);
+            return toResult(item, updateResponse.wasSuccessful(), updateResponse.getErrors(),
+                    updateResponse.getObject());
+        }
+    }
+
+    /**
+     * Updates a batch of work items with a single batch request.
+     */
+    private class UpdateBatchOperation implements BatchOperation<WorkItem> {
+
+        private final JsonObject updateObj;
+
+        UpdateBatchOperation(JsonObject updateObj) {
+            this.updateObj = updateObj;
+        }
+
+        @Override
+        public String describe(WorkItem item) {
+            return item.formattedId;
+        }
+
+        @Override
+        public List<BulkResult> execute(List<WorkItem> items) throws AutomicException, IOException {
+            List<RallyBatchUtil.Entry> entries = new ArrayList<>(items.size());
+            for (WorkItem item : items) {
+                entries.add(RallyBatchUtil.Entry.update(item.ref, updateObj));
+            }
+            long start = System.nanoTime();
+            List<RallyBatchUtil.Result> responses = RallyBatchUtil.execute(rallyRestTarget, entries);
+            Metrics.current().phase(Metrics.ITEM_UPDATE, start);
+            List<BulkResult> results = new ArrayList<>(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                RallyBatchUtil.Result response = responses.get(i);
+                results.add(toResult(items.get(i), response.wasSuccessful(), response.getErrors(),
+                        response.getObject()));
+            }
+            return results;
+        }
+    }
 }
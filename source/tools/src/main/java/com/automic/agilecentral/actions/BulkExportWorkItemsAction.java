@@ -0,0 +1,377 @@
+package com.automic.agilecentral.actions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.automic.agilecentral.constants.Constants;
+import com.automic.agilecentral.constants.ExceptionConstants;
+import com.automic.agilecentral.exception.AutomicException;
+import com.automic.agilecentral.util.CSVReader;
+import com.automic.agilecentral.util.CSVWriter;
+import com.automic.agilecentral.util.CommonUtil;
+import com.automic.agilecentral.util.ConsoleWriter;
+import com.automic.agilecentral.validator.AgileCentralValidator;
+
+/**
+ * This class exports several work item types from several workspaces in a single run. Every pair of workspace and
+ * work item type is exported by an {@link ExportWorkItemsAction}; the exports run concurrently and share the
+ * connection pool of this action. Either one file per pair is written to the export directory or all the pairs are
+ * combined into a single csv file whose first columns identify the workspace and the type of each work item. The
+ * number of work items and the duration of every export are printed once all the exports have completed.
+ *
+ */
+public class BulkExportWorkItemsAction extends AbstractHttpAction {
+
+    private static final int DEFAULT_CONCURRENCY = 4;
+    private static final String WORKSPACE_COLUMN = "Workspace";
+    private static final String TYPE_COLUMN = "WorkItemType";
+    private static final String FORMAT_PARQUET = "PARQUET";
+    private static final String COMPRESSION_NONE = "NONE";
+    private static final String COMPRESSION_GZIP = "GZIP";
+    private static final int DEFAULT_COMPRESSION_LEVEL = 6;
+    private static final int MAX_COMPRESSION_LEVEL = 9;
+
+    // options which are handed over to every export unchanged
+    private static final String[] EXPORT_OPTIONS = { "filters", "fields", "limit", "streaming", "charset",
+            "exportformat", "compression", "compressionlevel" };
+
+    private List<String> workspaces;
+    private List<String> workItemTypes;
+    private File exportPath;
+    private boolean combined;
+    private int concurrency;
+    private Charset charset;
+    private int compressionLevel;
+    // lower case names of the export files, file systems may not be case sensitive
+    private final Set<String> exportNames = new HashSet<>();
+
+    public BulkExportWorkItemsAction() {
+        addOption("workspaces", false, "Workspace names");
+        addOption("workitemtypes", true, "Work item types");
+        addOption("filters", false, "Result filter");
+        addOption("fields", false, "Fields to export");
+        addOption("exportfilepath", true, "Export directory, or export file if the exports are combined");
+        addOption("combined", false, "Combine all the exports into a single csv file");
+        addOption("limit", true, "Maximum result to fetch per workspace and work item type");
+        addOption("concurrency", false, "Number of exports to run in parallel");
+        addOption("streaming", false, "Stream the query results into the export files");
+        addOption("charset", false, "Character set of the export files, UTF-8 by default");
+        addOption("exportformat", false, "Format of the export files i.e. CSV or PARQUET, CSV by default");
+        addOption("compression", false, "Compression of the csv files i.e. NONE or GZIP, NONE by default");
+        addOption("compressionlevel", false, "Gzip compression level from 1 to 9, 6 by default");
+    }
+
+    @Override
+    protected void executeSpecific() throws AutomicException {
+        prepareInputs();
+        List<Export> exports = new ArrayList<>(workspaces.size() * workItemTypes.size());
+        for (String workspace : workspaces) {
+            for (String workItemType : workItemTypes) {
+                exports.add(new Export(workspace, workItemType, getExportFile(workspace, workItemType,
+                        exports.size())));
+            }
+        }
+        ConsoleWriter.writeln("Number of exports " + exports.size());
+
+        long start = System.nanoTime();
+        runExports(exports);
+        int failed = 0;
+        long total = 0;
+        for (Export export : exports) {
+            if (export.error != null) {
+                failed++;
+                ConsoleWriter.writeln(new String(export.log.toByteArray(), StandardCharsets.UTF_8));
+            }
+        }
+        for (Export export : exports) {
+            ConsoleWriter.writeln(String.format("Workspace [%s] type [%s] : %s", export.workspace,
+                    export.workItemType, export.error != null ? "FAILED " + export.error : export.count
+                            + " work items in " + export.duration + " ms"));
+            total += export.count;
+        }
+        ConsoleWriter.writeln(String.format("Exported %s work items in %s ms", total, TimeUnit.NANOSECONDS
+                .toMillis(System.nanoTime() - start)));
+
+        try {
+            if (combined && failed == 0) {
+                combine(exports);
+            }
+        } finally {
+            if (combined) {
+                for (Export export : exports) {
+                    export.file.delete();
+                }
+            }
+        }
+        ConsoleWriter.writeln("UC4RB_AC_TOTAL_RESULT_COUNT ::=" + total);
+        ConsoleWriter.writeln("UC4RB_AC_FAILED_COUNT ::=" + failed);
+        if (failed != 0) {
+            throw new AutomicException(String.format("Unable to export %s of %s workspace and type pair(s).",
+                    failed, exports.size()));
+        }
+        ConsoleWriter.writeln("UC4RB_AC_EXPORT_FILE_PATH ::=" + exportPath);
+    }
+
+    private void runExports(List<Export> exports) throws AutomicException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, exports.size()));
+        try {
+            List<Future<?>> futures = new ArrayList<>(exports.size());
+            for (Export export : exports) {
+                futures.add(executor.submit(export));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AutomicException("Export of work items has been interrupted");
+        } catch (ExecutionException e) {
+            ConsoleWriter.writeln(e.getCause());
+            throw new AutomicException(e.getCause().getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Concatenate the exports into the export file. The header is the union of the headers of all the exports since
+    // the fields differ between the types unless they have been given. Exports without results have no file.
+    private void combine(List<Export> exports) throws AutomicException {
+        Map<String, Integer> columns = new LinkedHashMap<>();
+        columns.put(WORKSPACE_COLUMN, 0);
+        columns.put(TYPE_COLUMN, 1);
+        List<int[]> mappings = new ArrayList<>(exports.size());
+        try {
+            for (Export export : exports) {
+                if (!export.file.exists()) {
+                    mappings.add(null);
+                    continue;
+                }
+                try (CSVReader reader = new CSVReader(export.file.getPath(), charset)) {
+                    List<String> header = reader.readLine();
+                    int[] mapping = new int[header != null ? header.size() : 0];
+                    for (int i = 0; i < mapping.length; i++) {
+                        Integer column = columns.get(header.get(i));
+                        if (column == null) {
+                            column = columns.size();
+                            columns.put(header.get(i), column);
+                        }
+                        mapping[i] = column;
+                    }
+                    mappings.add(mapping);
+                }
+            }
+
+            String[] line = new String[columns.size()];
+            try (CSVWriter writer = new CSVWriter(exportPath.getPath(), new ArrayList<>(columns.keySet()), charset,
+                    compressionLevel)) {
+                for (int e = 0; e < exports.size(); e++) {
+                    Export export = exports.get(e);
+                    int[] mapping = mappings.get(e);
+                    if (mapping == null) {
+                        continue;
+                    }
+                    try (CSVReader reader = new CSVReader(export.file.getPath(), charset)) {
+                        reader.readLine();
+                        List<String> row;
+                        while ((row = reader.readLine()) != null) {
+                            line[0] = export.workspace;
+                            line[1] = export.workItemType;
+                            for (int i = 2; i < line.length; i++) {
+                                line[i] = null;
+                            }
+                            for (int i = 0; i < mapping.length && i < row.size(); i++) {
+                                line[mapping[i]] = row.get(i);
+                            }
+                            writer.writeLine(line);
+                        }
+                    }
+                }
+                writer.finish();
+            }
+        } catch (IOException e) {
+            ConsoleWriter.writeln(e);
+            throw new AutomicException(String.format("Error occured while combining the exports into file [%s] : %s",
+                    exportPath, e.getMessage()));
+        }
+    }
+
+    // The exports of a combined export are written to temporary csv files next to the export file. Pairs whose
+    // names only differ in characters which are not allowed in file names get the index of the export as suffix.
+    private File getExportFile(String workspace, String workItemType, int index) {
+        if (combined) {
+            return new File(exportPath.getPath() + "." + index + ".part");
+        }
+        String extension = ".csv";
+        if (FORMAT_PARQUET.equalsIgnoreCase(getOptionValue("exportformat"))) {
+            extension = ".parquet";
+        } else if (COMPRESSION_GZIP.equalsIgnoreCase(getOptionValue("compression"))) {
+            extension = ".csv.gz";
+        }
+        String name = workspace.isEmpty() ? workItemType : workspace + "_" + workItemType;
+        name = name.replaceAll("[^A-Za-z0-9._-]", "_");
+        String unique = name;
+        for (int suffix = index; !exportNames.add(unique.toLowerCase()); suffix++) {
+            unique = name + "_" + suffix;
+        }
+        if (!unique.equals(name)) {
+            ConsoleWriter.writeln(String.format("Workspace [%s] type [%s] is exported to [%s] as [%s] is already used",
+                    workspace, workItemType, unique + extension, name + extension));
+        }
+        return new File(exportPath, unique + extension);
+    }
+
+    private void prepareInputs() throws AutomicException {
+        workItemTypes = split(getOptionValue("workitemtypes"));
+        if (workItemTypes.isEmpty()) {
+            throw new AutomicException(String.format(ExceptionConstants.INVALID_INPUT_PARAMETER, "Work item types",
+                    getOptionValue("workitemtypes")));
+        }
+        // the default workspace of the user if no workspace is given
+        workspaces = split(getOptionValue("workspaces"));
+        if (workspaces.isEmpty()) {
+            workspaces.add("");
+        }
+
+        concurrency = CommonUtil.parseStringValue(getOptionValue("concurrency"), DEFAULT_CONCURRENCY);
+        AgileCentralValidator.lessThan(concurrency, 1, "Concurrency");
+
+        combined = CommonUtil.convert2Bool(getOptionValue("combined"));
+        if (combined && FORMAT_PARQUET.equalsIgnoreCase(getOptionValue("exportformat"))) {
+            throw new AutomicException("Parquet export can not be combined into a single file");
+        }
+
+        String charsetName = getOptionValue("charset");
+        charset = StandardCharsets.UTF_8;
+        if (CommonUtil.checkNotEmpty(charsetName)) {
+            try {
+                charset = Charset.forName(charsetName);
+            } catch (IllegalArgumentException e) {
+                throw new AutomicException(String.format(ExceptionConstants.INVALID_INPUT_PARAMETER, "Charset",
+                        charsetName));
+            }
+        }
+
+        // the combined file is compressed by this action, the exports validate the compression themselves otherwise
+        compressionLevel = CSVWriter.NO_COMPRESSION;
+        String compression = getOptionValue("compression");
+        if (combined && CommonUtil.checkNotEmpty(compression) && !COMPRESSION_NONE.equalsIgnoreCase(compression)) {
+            String level = getOptionValue("compressionlevel");
+            compressionLevel = CommonUtil.parseStringValue(level, DEFAULT_COMPRESSION_LEVEL);
+            if (!COMPRESSION_GZIP.equalsIgnoreCase(compression)) {
+                throw new AutomicException(String.format(ExceptionConstants.INVALID_INPUT_PARAMETER, "Compression",
+                        compression));
+            }
+            if (compressionLevel < 1 || compressionLevel > MAX_COMPRESSION_LEVEL) {
+                throw new AutomicException(String.format(ExceptionConstants.INVALID_INPUT_PARAMETER,
+                        "Compression level", level));
+            }
+        }
+
+        String temp = getOptionValue("exportfilepath");
+        AgileCentralValidator.checkNotEmpty(temp, "Export file path");
+        File file = new File(temp);
+        if (combined) {
+            AgileCentralValidator.checkFileWritable(file);
+        } else if (!file.isDirectory() && !file.mkdirs()) {
+            throw new AutomicException(String.format(ExceptionConstants.INVALID_FILE_PATH, file));
+        }
+        try {
+            exportPath = file.getCanonicalFile();
+        } catch (IOException e) {
+            throw new AutomicException(" Error in getting unique absolute path " + e.getMessage());
+        }
+    }
+
+    private static List<String> split(String value) {
+        Set<String> values = new LinkedHashSet<>();
+        if (value != null) {
+            for (String s : value.split(",")) {
+                String tmp = s.trim();
+                if (!tmp.isEmpty()) {
+                    values.add(tmp);
+                }
+            }
+        }
+        return new ArrayList<>(values);
+    }
+
+    private String[] getExportArguments(Export export) {
+        List<String> args = new ArrayList<>();
+        addArgument(args, Constants.ACTION, ExportWorkItemsAction.class.getSimpleName());
+        addArgument(args, Constants.BASE_URL, getOptionValue(Constants.BASE_URL));
+        addArgument(args, Constants.USERNAME, getOptionValue(Constants.USERNAME));
+        addArgument(args, Constants.BASIC_AUTH, getOptionValue(Constants.BASIC_AUTH));
+        addArgument(args, "workspace", export.workspace);
+        addArgument(args, "workitemtype", export.workItemType);
+        addArgument(args, "exportfilepath", export.file.getPath());
+        for (String option : EXPORT_OPTIONS) {
+            // the temporary files of a combined export are plain csv files
+            if (!combined || !option.startsWith("compression")) {
+                addArgument(args, option, getOptionValue(option));
+            }
+        }
+        return args.toArray(new String[args.size()]);
+    }
+
+    private static void addArgument(List<String> args, String name, String value) {
+        if (CommonUtil.checkNotEmpty(value)) {
+            args.add("-" + name);
+            args.add(value);
+        }
+    }
+
+    /**
+     * Export of a work item type from a workspace. The output of the export is kept so that the exports running in
+     * parallel do not mix their output.
+     */
+    private class Export implements Runnable {
+
+        private final String workspace;
+        private final String workItemType;
+        private final File file;
+        private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+        private int count;
+        private long duration;
+        private String error;
+
+        Export(String workspace, String workItemType, File file) {
+            this.workspace = workspace;
+            this.workItemType = workItemType;
+            this.file = file;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            ExportWorkItemsAction action = new ExportWorkItemsAction();
+            action.shareClient(rallyRestTarget);
+            ConsoleWriter.redirect(log);
+            try {
+                action.executeAction(getExportArguments(this));
+            } catch (AutomicException | RuntimeException e) {
+                ConsoleWriter.writeln(e);
+                error = e.getMessage();
+            } finally {
+                ConsoleWriter.flush();
+                ConsoleWriter.redirect(null);
+            }
+            count = action.getExportedCount();
+            duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+    }
+}
@@ -51,12 +51,14 @@ public class ChangeWorkItemStatusAction extends AbstractHttpAction {
             UpdateResponse updateResponse = rallyRestTarget.update(updateRequest);
             if (!updateResponse.wasSuccessful()) {
                 ConsoleWriter.writeln(Arrays.toString(updateResponse.getErrors()));
+                RallyUtil.checkStaleRefs(Arrays.toString(updateResponse.getErrors()), workItemRef);
                 throw new AutomicException("Unable to change the status of work item.");
             }
 
             ConsoleWriter.writeln("Response Json Object: " + updateResponse.getObject());
         } catch (IOException e) {
             ConsoleWriter.writeln(e);
+            RallyUtil.checkStaleRefs(e.getMessage(), workItemRef);
             throw new AutomicException(e.getMessage());
         }
     }
@@ -0,0 +1,33 @@
+package com.automic.agilecentral.actions;
+
+import java.io.IOException;
+
+import com.automic.agilecentral.constants.Constants;
+import com.automic.agilecentral.exception.AutomicException;
+import com.automic.agilecentral.util.CommonUtil;
+import com.automic.agilecentral.util.ConsoleWriter;
+import com.automic.agilecentral.util.RefCache;
+
+/**
+ * This action removes the cached workspace, project and work item references of the given CA Agile Central URL, or
+ * all cached references if no URL is given, so that they are resolved again by the next actions.
+ *
+ */
+public class ClearRefCacheAction extends AbstractAction {
+
+    public ClearRefCacheAction() {
+        addOption(Constants.BASE_URL, false, "CA Agile Central URL");
+    }
+
+    @Override
+    protected void execute() throws AutomicException {
+        String baseUrl = getOptionValue(Constants.BASE_URL);
+        try {
+            int count = RefCache.getInstance().clear(CommonUtil.checkNotEmpty(baseUrl) ? baseUrl : null);
+            ConsoleWriter.writeln("UC4RB_AC_CLEARED_COUNT ::=" + count);
+        } catch (IOException e) {
+            ConsoleWriter.writeln(e);
+            throw new AutomicException("Unable to clear the reference cache : " + e.getMessage());
+        }
+    }
+}
@@ -26,6 +26,8 @@ import com.rallydev.rest.response.CreateResponse;
 public class CreateWorkItemAction extends AbstractHttpAction {
 
     private String workItemType;
+    // references the new work item refers to
+    private String[] refs;
 
     public CreateWorkItemAction() {
         addOption("workitemname", true, "Name of the work item");
@@ -52,6 +54,7 @@ public class CreateWorkItemAction extends AbstractHttpAction {
 
             if (!createResponse.wasSuccessful()) {
                 ConsoleWriter.writeln(Arrays.toString(createResponse.getErrors()));
+                RallyUtil.checkStaleRefs(Arrays.toString(createResponse.getErrors()), refs);
                 throw new AutomicException("Unable to create the work item.");
             }
 
@@ -61,6 +64,7 @@ public class CreateWorkItemAction extends AbstractHttpAction {
 
         } catch (IOException e) {
             ConsoleWriter.writeln(e);
+            RallyUtil.checkStaleRefs(e.getMessage(), refs);
             throw new AutomicException(e.getMessage());
         }
 
@@ -85,6 +89,7 @@ public class CreateWorkItemAction extends AbstractHttpAction {
             project = RallyUtil.getProjectRef(rallyRestTarget, project, workspace);
             newObj.addProperty(Constants.PROJECT, project);
         }
+        refs = new String[] { workspace, project };
 
         String scheduleState = getOptionValue("schedulestate");
         if (CommonUtil.checkNotEmpty(scheduleState)) {
@@ -19,6 +19,10 @@ import com.rallydev.rest.response.DeleteResponse;
  */
 public class DeleteWorkItemAction extends AbstractHttpAction {
 
+    private String workSpaceRef;
+    private String workItemType;
+    private String workItemId;
+
     public DeleteWorkItemAction() {
         addOption("workspace", false, "Workspace name");
         addOption("workitemid", true, "Work Item ID");
@@ -35,10 +39,13 @@ public class DeleteWorkItemAction extends AbstractHttpAction {
             deleteResponse = rallyRestTarget.delete(deleteRequest);
             if (!deleteResponse.wasSuccessful()) {
                 ConsoleWriter.writeln(Arrays.toString(deleteResponse.getErrors()));
+                RallyUtil.checkStaleRefs(Arrays.toString(deleteResponse.getErrors()), workItemRef);
                 throw new AutomicException("Unable to delete the work item.");
             }
+            RallyUtil.invalidateWorkItemRef(rallyRestTarget, workItemId, workSpaceRef, workItemType);
         } catch (IOException e) {
             ConsoleWriter.writeln(e);
+            RallyUtil.checkStaleRefs(e.getMessage(), workItemRef);
             throw new AutomicException(e.getMessage());
         }
 
@@ -46,19 +53,18 @@ public class DeleteWorkItemAction extends AbstractHttpAction {
 
     private String getWorkItemRef() throws AutomicException {
         // Workspace name where the user story is located
-        String workSpaceRef = null;
         String workSpaceName = getOptionValue("workspace");
         if (CommonUtil.checkNotEmpty(workSpaceName)) {
             workSpaceRef = RallyUtil.getWorspaceRef(rallyRestTarget, workSpaceName);
         }
 
         // Work item type
-        String workItemType = getOptionValue("workitemtype");
+        workItemType = getOptionValue("workitemtype");
         AgileCentralValidator.checkNotEmpty(workItemType, "Work Item type");
 
-        String temp = getOptionValue("workitemid");
-        AgileCentralValidator.checkNotEmpty(temp, "Work Item ID");
-        return RallyUtil.getWorkItemRef(rallyRestTarget, temp, workSpaceRef, workItemType);
+        workItemId = getOptionValue("workitemid");
+        AgileCentralValidator.checkNotEmpty(workItemId, "Work Item ID");
+        return RallyUtil.getWorkItemRef(rallyRestTarget, workItemId, workSpaceRef, workItemType);
     }
 
 }
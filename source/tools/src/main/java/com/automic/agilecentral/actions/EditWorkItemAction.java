@@ -21,6 +21,8 @@ import com.rallydev.rest.response.UpdateResponse;
 public class EditWorkItemAction extends AbstractHttpAction {
 
     private String workItemId;
+    // references the update refers to
+    private String[] refs;
 
     public EditWorkItemAction() {
         addOption("workitemid", true, "Work item id");
@@ -43,10 +45,12 @@ public class EditWorkItemAction extends AbstractHttpAction {
             ConsoleWriter.writeln("Response Json Object: " + updateResponse.getObject());
             if (!updateResponse.wasSuccessful()) {
                 ConsoleWriter.writeln(Arrays.toString(updateResponse.getErrors()));
+                RallyUtil.checkStaleRefs(Arrays.toString(updateResponse.getErrors()), refs);
                 throw new AutomicException("Unable to update the work item.");
             }
         } catch (IOException e) {
             ConsoleWriter.writeln(e);
+            RallyUtil.checkStaleRefs(e.getMessage(), refs);
             throw new AutomicException(String.format("Error occured while updating work item id: %s", workItemId));
         }
 
@@ -107,6 +111,7 @@ public class EditWorkItemAction extends AbstractHttpAction {
         }
 
         ConsoleWriter.writeln("Request Json Object: " + updateObj);
+        refs = new String[] { workItemRef, workSpace, project };
         return new UpdateRequest(workItemRef, updateObj);
     }
 }
@@ -1,32 +1,59 @@
 package com.automic.agilecentral.actions;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
 
 import com.automic.agilecentral.constants.ExceptionConstants;
 import com.automic.agilecentral.exception.AutomicException;
+import com.automic.agilecentral.util.CSVReader;
 import com.automic.agilecentral.util.CSVWriter;
 import com.automic.agilecentral.util.CommonUtil;
 import com.automic.agilecentral.util.ConsoleWriter;
+import com.automic.agilecentral.util.ExportCheckpoint;
+import com.automic.agilecentral.util.ExportWatermark;
+import com.automic.agilecentral.util.Metrics;
+import com.automic.agilecentral.util.ParquetWriter;
 import com.automic.agilecentral.util.RallyUtil;
+import com.automic.agilecentral.util.RecordWriter;
+import com.automic.agilecentral.util.ResponseStreamHandler;
 import com.automic.agilecentral.validator.AgileCentralValidator;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.rallydev.rest.request.QueryRequest;
 import com.rallydev.rest.response.QueryResponse;
 import com.rallydev.rest.util.Fetch;
 
 /**
- * This used to import data from Agile Central and saved in csv format
+ * This used to import data from Agile Central and saved in csv or parquet format
  * 
  * @author Anurag Upadhyay
  *
@@ -34,8 +61,32 @@ import com.rallydev.rest.util.Fetch;
 public class ExportWorkItemsAction extends AbstractHttpAction {
 
     private static final int BATCH_SIZE = 200;
+    private static final int PAGES_PER_WORKER = 2;
+    private static final String LAST_UPDATE_DATE = "LastUpdateDate";
+    private static final String OBJECT_ID = "ObjectID";
+    private static final String FORMAT_CSV = "CSV";
+    private static final String FORMAT_PARQUET = "PARQUET";
+    private static final String COMPRESSION_NONE = "NONE";
+    private static final String COMPRESSION_GZIP = "GZIP";
+    private static final int DEFAULT_COMPRESSION_LEVEL = 6;
+    private static final int MAX_COMPRESSION_LEVEL = 9;
     private String filePath;
     private int limit;
+    private int concurrency;
+    private boolean streaming;
+    private boolean checkpointing;
+    private boolean resume;
+    private boolean incremental;
+    private String filters;
+    private String workSpaceRef;
+    private Charset charset;
+    private String exportFormat;
+    private int compressionLevel;
+
+    private ExportCheckpoint checkpoint;
+    private boolean resumed;
+    private int exportedCount;
+    private String lastUpdateDate;
 
     private List<String> userInputFields;
     private Set<String> uniqueFields;
@@ -48,20 +99,53 @@ public class ExportWorkItemsAction extends AbstractHttpAction {
         addOption("fields", false, "Fields to export");
         addOption("exportfilepath", true, "Export file path");
         addOption("limit", true, "Maximum result to fetch");
+        addOption("concurrency", false, "Number of pages to fetch in parallel");
+        addOption("streaming", false, "Stream the query results into the export file");
+        addOption("checkpoint", false, "Record the progress of the export in a checkpoint file");
+        addOption("resume", false, "Resume the export from its checkpoint file");
+        addOption("incremental", false, "Merge the work items changed since the last export into the export file");
+        addOption("charset", false, "Character set of the export file, UTF-8 by default");
+        addOption("exportformat", false, "Format of the export file i.e. CSV or PARQUET, CSV by default");
+        addOption("compression", false, "Compression of the csv file i.e. NONE or GZIP, NONE by default");
+        addOption("compressionlevel", false, "Gzip compression level from 1 to 9, 6 by default");
     }
 
     @Override
     protected void executeSpecific() throws AutomicException {
         QueryRequest queryRequest = prepareAndValidateInputs();
+        if (incremental) {
+            exportIncremental(queryRequest);
+            return;
+        }
+        int offset = prepareCheckpoint();
+        if (streaming) {
+            exportStreaming(queryRequest, offset);
+        } else {
+            export(queryRequest, offset);
+        }
+        if (checkpoint != null) {
+            checkpoint.delete();
+        }
+    }
+
+    private void export(QueryRequest queryRequest, int offset) throws AutomicException {
         try {
-            QueryResponse queryResponse = runQuery(queryRequest, 1, limit);
+            QueryResponse queryResponse = runQuery(queryRequest, offset + 1, Math.max(limit - offset, 1));
 
             int totalResultCount = queryResponse.getTotalResultCount();
             if (totalResultCount != 0) {
-                JsonArray results = queryResponse.getResults();
-                JsonObject jsonObj = results.get(0).getAsJsonObject();
-                prepareUserFieldMapping(jsonObj);
-                createCSV(queryResponse, queryRequest);
+                if (resultFields == null) {
+                    JsonObject jsonObj = queryResponse.getResults().get(0).getAsJsonObject();
+                    prepareUserFieldMapping(jsonObj);
+                }
+                if (incremental) {
+                    getMergeKeyIndex();
+                }
+                if (concurrency > 1) {
+                    createCSVInParallel(queryResponse, queryRequest, offset);
+                } else {
+                    createCSV(queryResponse, queryRequest, offset);
+                }
                 ConsoleWriter.writeln("UC4RB_AC_TOTAL_RESULT_COUNT ::=" + totalResultCount);
                 ConsoleWriter.writeln("UC4RB_AC_EXPORT_FILE_PATH ::=" + filePath);
             } else {
@@ -73,6 +157,55 @@ public class ExportWorkItemsAction extends AbstractHttpAction {
         }
     }
 
+    // Export the work items page by page writing each record to the csv file as it is read from the response.
+    private void exportStreaming(QueryRequest queryRequest, int offset) throws AutomicException {
+        StreamingPageWriter pageWriter = new StreamingPageWriter();
+        try {
+            if (resumed) {
+                pageWriter.resume();
+            }
+            int start = offset;
+            int maxExport = limit;
+            do {
+                queryRequest.setStart(start + 1);
+                int pageSize = Math.min(maxExport - start, BATCH_SIZE);
+                queryRequest.setPageSize(pageSize);
+                queryRequest.setLimit(pageSize);
+                pageWriter.startPage(maxExport - start);
+                long pageStart = System.nanoTime();
+                rallyRestTarget.query(queryRequest, pageWriter);
+                Metrics.current().phase(Metrics.QUERY_PAGE, pageStart);
+                if (!pageWriter.errors.isEmpty()) {
+                    ConsoleWriter.writeln(pageWriter.errors);
+                    RallyUtil.checkStaleRefs(pageWriter.errors.toString(), workSpaceRef);
+                    throw new AutomicException("Unable to export work items");
+                }
+                maxExport = Math.min(pageWriter.totalResultCount, limit);
+                start = start + pageWriter.pageResultCount;
+                if (pageWriter.writer != null) {
+                    pageWriter.writer.flush();
+                    exportedCount = start;
+                    saveCheckpoint(pageWriter.writer);
+                    ConsoleWriter.writeln("Remaining Work items to be exported " + (maxExport - start));
+                }
+            } while (start < maxExport && pageWriter.pageResultCount > 0);
+            if (pageWriter.writer != null) {
+                pageWriter.writer.finish();
+            }
+        } catch (IOException e) {
+            ConsoleWriter.writeln(e);
+            throw new AutomicException("Unable to export work items");
+        } finally {
+            if (pageWriter.writer != null) {
+                pageWriter.writer.close();
+            }
+        }
+        ConsoleWriter.writeln("UC4RB_AC_TOTAL_RESULT_COUNT ::=" + pageWriter.totalResultCount);
+        if (pageWriter.writer != null) {
+            ConsoleWriter.writeln("UC4RB_AC_EXPORT_FILE_PATH ::=" + filePath);
+        }
+    }
+
     private QueryResponse runQuery(QueryRequest qReq, int start, int noofrecords) throws AutomicException, IOException {
         qReq.setStart(start);
         if (noofrecords < BATCH_SIZE) {
@@ -82,47 +215,296 @@ public class ExportWorkItemsAction extends AbstractHttpAction {
             qReq.setPageSize(BATCH_SIZE);
             qReq.setLimit(BATCH_SIZE);
         }
+        long pageStart = System.nanoTime();
         QueryResponse response = rallyRestTarget.query(qReq);
+        Metrics.current().phase(Metrics.QUERY_PAGE, pageStart);
         if (!response.wasSuccessful()) {
             ConsoleWriter.writeln(Arrays.toString(response.getErrors()));
+            RallyUtil.checkStaleRefs(Arrays.toString(response.getErrors()), workSpaceRef);
             throw new AutomicException("Unable to export work items");
         }
         return response;
     }
 
-    private void createCSV(QueryResponse queryResponse, QueryRequest queryRequest) throws AutomicException {
-        int maxExport = queryResponse.getTotalResultCount();
+    private void createCSV(QueryResponse queryResponse, QueryRequest queryRequest, int offset)
+            throws AutomicException {
+        int maxExport = getMaxExport(queryResponse);
+        int remainingItems = maxExport - offset;
 
+        int start = offset;
+        try (RecordWriter writer = openWriter(queryResponse.getResults())) {
+            QueryResponse response = queryResponse;
+            JsonArray results;
+            do {
+                if (start != offset) {
+                    int remainingRecords = maxExport - start;
+                    response = runQuery(queryRequest, start + 1, remainingRecords);
+                }
+                results = response.getResults();
+                remainingItems = writePage(writer, results, remainingItems);
+                start = start + results.size();
+            } while (start < maxExport && results.size() > 0);
+            writer.finish();
+        } catch (IOException e) {
+            throw new AutomicException(" Error in writing csv file" + e.getMessage());
+        }
+    }
+
+    // Fetch the remaining pages concurrently. Pages are requested in order and the queue of pending pages acts as a
+    // reorder buffer so that they are written in the same order as the sequential export.
+    private void createCSVInParallel(QueryResponse queryResponse, QueryRequest queryRequest, int offset)
+            throws AutomicException {
+        int maxExport = getMaxExport(queryResponse);
+        int remainingItems = maxExport - offset;
+        int maxPendingPages = concurrency * PAGES_PER_WORKER;
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        Deque<Future<JsonArray>> pendingPages = new ArrayDeque<>(maxPendingPages);
+        try (RecordWriter writer = openWriter(queryResponse.getResults())) {
+            JsonArray results = queryResponse.getResults();
+            remainingItems = writePage(writer, results, remainingItems);
+            int start = offset + results.size();
+            while (start < maxExport || !pendingPages.isEmpty()) {
+                while (start < maxExport && pendingPages.size() < maxPendingPages) {
+                    pendingPages.add(executor.submit(new PageFetcher(queryRequest.clone(), start, maxExport - start)));
+                    start = start + BATCH_SIZE;
+                }
+                remainingItems = writePage(writer, pendingPages.poll().get(), remainingItems);
+            }
+            writer.finish();
+        } catch (IOException e) {
+            throw new AutomicException(" Error in writing csv file" + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AutomicException("Export of work items has been interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof AutomicException) {
+                throw (AutomicException) cause;
+            }
+            ConsoleWriter.writeln(cause);
+            throw new AutomicException("Unable to export work items");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private int getMaxExport(QueryResponse queryResponse) {
+        int maxExport = queryResponse.getTotalResultCount();
         if (limit != 0 && limit < maxExport) {
             maxExport = limit;
         }
+        return maxExport;
+    }
 
-        int remainingItems = maxExport;
+    // Write the page to the csv file and return the number of work items which are still to be exported.
+    private int writePage(RecordWriter writer, JsonArray results, int remainingItems) throws IOException,
+            AutomicException {
+        long start = System.nanoTime();
+        int goTill = results.size();
+        int remaining = remainingItems - results.size();
+        if (remaining < 0) {
+            goTill = results.size() + remaining;
+        }
+        ConsoleWriter.writeln("Remaining Work items to be exported " + remaining);
+        for (int i = 0; i < goTill; i++) {
+            JsonObject workItem = results.get(i).getAsJsonObject();
+            writer.writeLine(readRecord(workItem));
+            trackLastUpdateDate(workItem);
+        }
+        writer.flush();
+        exportedCount += goTill;
+        saveCheckpoint(writer);
+        Metrics.current().phase(Metrics.WRITE_PAGE, start);
+        return remaining;
+    }
 
-        int start = 0;
-        try (CSVWriter writer = new CSVWriter(filePath, userInputFields)) {
-            QueryResponse response = queryResponse;
+    // Append to the export file if the export is resumed otherwise create it.
+    private RecordWriter openWriter(JsonArray results) throws IOException {
+        if (resumed) {
+            return new CSVWriter(filePath, charset, compressionLevel);
+        }
+        List<JsonObject> records = new ArrayList<>(results.size());
+        for (JsonElement result : results) {
+            records.add(result.getAsJsonObject());
+        }
+        return openWriter(records);
+    }
+
+    // Create the export file, the types of the parquet columns are derived from the given records and widened by the
+    // writer if a later value does not match.
+    private RecordWriter openWriter(List<JsonObject> records) throws IOException {
+        if (FORMAT_PARQUET.equals(exportFormat)) {
+            List<ParquetWriter.ColumnType> types = new ArrayList<>(resultFields.size());
+            for (String field : resultFields) {
+                ParquetWriter.ColumnType type = null;
+                for (JsonObject record : records) {
+                    type = ParquetWriter.ColumnType.common(type, ParquetWriter.ColumnType.of(record.get(field)));
+                }
+                types.add(type);
+            }
+            return new ParquetWriter(filePath, userInputFields, types);
+        }
+        return new CSVWriter(filePath, userInputFields, charset, compressionLevel);
+    }
+
+    // Prepare the checkpoint file and restore the export from it if it is resumed. Returns the number of work items
+    // which have already been exported.
+    private int prepareCheckpoint() throws AutomicException {
+        if (!checkpointing) {
+            return 0;
+        }
+        checkpoint = new ExportCheckpoint(filePath, describeExport());
+        if (resume && checkpoint.exists()) {
+            checkpoint.restore();
+            userInputFields = checkpoint.getHeaders();
+            resultFields = checkpoint.getFields();
+            exportedCount = checkpoint.getOffset();
+            resumed = true;
+            ConsoleWriter.writeln("Resuming export after " + exportedCount + " work items");
+            return exportedCount;
+        }
+        checkpoint.delete();
+        return 0;
+    }
+
+    // the file is completed only at checkpoints, as each completion costs compression ratio
+    private void saveCheckpoint(RecordWriter writer) throws IOException {
+        if (checkpoint != null) {
+            writer.sync();
+            checkpoint.save(exportedCount, userInputFields, resultFields);
+        }
+    }
+
+    // Export the work items changed since the last run and merge them into the export file. The first run, or a run
+    // whose export definition differs from the watermark, exports all work items.
+    private void exportIncremental(QueryRequest queryRequest) throws AutomicException {
+        // order by modification so that the watermark is valid even if the export is limited
+        queryRequest.setOrder(LAST_UPDATE_DATE + " ASC," + OBJECT_ID + " ASC");
+        ExportWatermark watermark = new ExportWatermark(filePath, describeExport());
+        if (watermark.load() && new File(filePath).exists()) {
+            userInputFields = watermark.getHeaders();
+            resultFields = watermark.getFields();
+            lastUpdateDate = watermark.getLastUpdateDate();
+            String deltaFilter = String.format("(%s >= \"%s\")", LAST_UPDATE_DATE, lastUpdateDate);
+            queryRequest.addParam("query", CommonUtil.checkNotEmpty(filters) ? "(" + filters + " AND " + deltaFilter
+                    + ")" : deltaFilter);
+            ConsoleWriter.writeln("Exporting work items changed since " + lastUpdateDate);
+            mergeChanges(queryRequest);
+        } else {
+            if (CommonUtil.checkNotEmpty(filters)) {
+                queryRequest.addParam("query", filters);
+            }
+            export(queryRequest, 0);
+        }
+        if (lastUpdateDate != null) {
+            watermark.save(lastUpdateDate, userInputFields, resultFields);
+        }
+    }
+
+    // Fetch the changed work items and replace the rows having the same ObjectID in the export file, new work items
+    // are appended at the end.
+    private void mergeChanges(QueryRequest queryRequest) throws AutomicException {
+        int keyIndex = getMergeKeyIndex();
+        Map<String, List<String>> changes = new LinkedHashMap<>();
+        int totalResultCount;
+        try {
+            QueryResponse response = runQuery(queryRequest, 1, limit);
+            totalResultCount = response.getTotalResultCount();
+            int maxExport = getMaxExport(response);
+            int start = 0;
+            JsonArray results;
             do {
                 if (start != 0) {
-                    int remainingRecords = maxExport - start;
-                    response = runQuery(queryRequest, start + 1, remainingRecords);
+                    response = runQuery(queryRequest, start + 1, maxExport - start);
                 }
-                JsonArray results = response.getResults();
-                int goTill = results.size();
-                remainingItems = remainingItems - results.size();
-                if (remainingItems < 0) {
-                    goTill = results.size() + remainingItems;
+                results = response.getResults();
+                for (int i = 0; i < results.size() && start + i < maxExport; i++) {
+                    JsonObject workItem = results.get(i).getAsJsonObject();
+                    List<String> record = readRecord(workItem);
+                    changes.put(record.get(keyIndex), record);
+                    trackLastUpdateDate(workItem);
                 }
-                ConsoleWriter.writeln("Remaining Work items to be exported " + remainingItems);
-                for (int i = 0; i < goTill; i++) {
-                    writer.writeLine(readRecord(results.get(i).getAsJsonObject()));
-                }
-                writer.flush();
                 start = start + results.size();
-            } while (start < maxExport);
+            } while (start < maxExport && results.size() > 0);
         } catch (IOException e) {
-            throw new AutomicException(" Error in writing csv file" + e.getMessage());
+            ConsoleWriter.writeln(e);
+            throw new AutomicException("Unable to export work items");
         }
+
+        int updated = 0;
+        File temp = new File(filePath + ".tmp");
+        try {
+            try (CSVReader reader = openReader();
+                    CSVWriter writer = new CSVWriter(temp.getPath(), userInputFields, charset, compressionLevel)) {
+                List<String> header = reader.readLine();
+                if (!userInputFields.equals(header)) {
+                    throw new AutomicException(String.format(
+                            "Header of export file [%s] does not match the exported fields", filePath));
+                }
+                List<String> row;
+                while ((row = reader.readLine()) != null) {
+                    List<String> change = row.size() > keyIndex ? changes.remove(row.get(keyIndex)) : null;
+                    if (change != null) {
+                        writer.writeLine(change);
+                        updated++;
+                    } else {
+                        writer.writeLine(row);
+                    }
+                }
+                for (List<String> change : changes.values()) {
+                    writer.writeLine(change);
+                }
+                writer.finish();
+            }
+            Files.move(temp.toPath(), new File(filePath).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new AutomicException(" Error in merging csv file" + e.getMessage());
+        } finally {
+            if (temp.exists()) {
+                temp.delete();
+            }
+        }
+        ConsoleWriter.writeln("UC4RB_AC_TOTAL_RESULT_COUNT ::=" + totalResultCount);
+        ConsoleWriter.writeln("UC4RB_AC_UPDATED_COUNT ::=" + updated);
+        ConsoleWriter.writeln("UC4RB_AC_ADDED_COUNT ::=" + changes.size());
+        ConsoleWriter.writeln("UC4RB_AC_EXPORT_FILE_PATH ::=" + filePath);
+    }
+
+    private CSVReader openReader() throws IOException {
+        InputStream in = new FileInputStream(filePath);
+        return new CSVReader(compressionLevel != CSVWriter.NO_COMPRESSION ? new GZIPInputStream(in) : in, charset);
+    }
+
+    // Rows of an incremental export are identified by the ObjectID column.
+    private int getMergeKeyIndex() throws AutomicException {
+        int index = resultFields.indexOf(OBJECT_ID);
+        if (index < 0) {
+            throw new AutomicException("Incremental export requires the field " + OBJECT_ID);
+        }
+        return index;
+    }
+
+    private void trackLastUpdateDate(JsonObject workItem) {
+        JsonElement value = workItem.get(LAST_UPDATE_DATE);
+        if (incremental && value != null && value.isJsonPrimitive()) {
+            String date = value.getAsString();
+            // ISO 8601 dates in UTC compare in chronological order
+            if (lastUpdateDate == null || date.compareTo(lastUpdateDate) > 0) {
+                lastUpdateDate = date;
+            }
+        }
+    }
+
+    private String describeExport() {
+        return getOptionValue("workitemtype") + "|" + getOptionValue("workspace") + "|" + filters + "|"
+                + getOptionValue("fields") + "|" + limit + "|" + charset.name() + "|" + compressionLevel;
+    }
+
+    // Number of work items written to the export file, used by the bulk export to report its progress.
+    int getExportedCount() {
+        return exportedCount;
     }
 
     // Validating and preparing input parameters
@@ -145,12 +527,14 @@ public class ExportWorkItemsAction extends AbstractHttpAction {
         QueryRequest queryRequest = new QueryRequest(workItemType);
         String workSpaceName = getOptionValue("workspace");
         if (CommonUtil.checkNotEmpty(workSpaceName)) {
-            String workSpaceRef = RallyUtil.getWorspaceRef(rallyRestTarget, workSpaceName);
+            workSpaceRef = RallyUtil.getWorspaceRef(rallyRestTarget, workSpaceName);
             queryRequest.setWorkspace(workSpaceRef);
         }
 
-        String filters = getOptionValue("filters");
-        if (CommonUtil.checkNotEmpty(filters)) {
+        // the query of an incremental export is completed by the watermark
+        incremental = CommonUtil.convert2Bool(getOptionValue("incremental"));
+        filters = getOptionValue("filters");
+        if (CommonUtil.checkNotEmpty(filters) && !incremental) {
             queryRequest.addParam("query", filters);
         }
 
@@ -159,6 +543,9 @@ public class ExportWorkItemsAction extends AbstractHttpAction {
             prepareUserFields(fieldInput);
             Fetch fetchList = new Fetch();
             fetchList.addAll(uniqueFields);
+            if (incremental) {
+                fetchList.add(LAST_UPDATE_DATE);
+            }
             queryRequest.setFetch(fetchList);
         }
 
@@ -172,11 +559,70 @@ public class ExportWorkItemsAction extends AbstractHttpAction {
         if (limit == 0) {
             limit = Integer.MAX_VALUE;
         }
+
+        // Validate charset
+        String charsetName = getOptionValue("charset");
+        charset = StandardCharsets.UTF_8;
+        if (CommonUtil.checkNotEmpty(charsetName)) {
+            try {
+                charset = Charset.forName(charsetName.trim());
+            } catch (IllegalArgumentException e) {
+                throw new AutomicException(String.format(ExceptionConstants.INVALID_INPUT_PARAMETER, "Charset",
+                        charsetName));
+            }
+        }
+
+        // Validate concurrency
+        concurrency = CommonUtil.parseStringValue(getOptionValue("concurrency"), 1);
+        AgileCentralValidator.lessThan(concurrency, 1, "Concurrency");
+
+        streaming = CommonUtil.convert2Bool(getOptionValue("streaming"));
+        if (streaming && concurrency > 1) {
+            throw new AutomicException("Streaming export can not be combined with a concurrency greater than 1");
+        }
+
+        resume = CommonUtil.convert2Bool(getOptionValue("resume"));
+        checkpointing = resume || CommonUtil.convert2Bool(getOptionValue("checkpoint"));
+        if (incremental && (streaming || checkpointing)) {
+            throw new AutomicException("Incremental export can not be combined with streaming or checkpoint");
+        }
+
+        // Validate export format, only csv files can be appended to or merged
+        String format = getOptionValue("exportformat");
+        exportFormat = CommonUtil.checkNotEmpty(format) ? format.trim().toUpperCase() : FORMAT_CSV;
+        if (!FORMAT_CSV.equals(exportFormat) && !FORMAT_PARQUET.equals(exportFormat)) {
+            throw new AutomicException(String.format(ExceptionConstants.INVALID_INPUT_PARAMETER, "Export format",
+                    format));
+        }
+        if (FORMAT_PARQUET.equals(exportFormat) && (incremental || checkpointing)) {
+            throw new AutomicException("Parquet export can not be combined with incremental export or checkpoint");
+        }
+
+        // Validate compression, the pages of parquet files are always compressed
+        String compression = getOptionValue("compression");
+        compression = CommonUtil.checkNotEmpty(compression) ? compression.trim().toUpperCase() : COMPRESSION_NONE;
+        if (!COMPRESSION_NONE.equals(compression) && !COMPRESSION_GZIP.equals(compression)) {
+            throw new AutomicException(String.format(ExceptionConstants.INVALID_INPUT_PARAMETER, "Compression",
+                    getOptionValue("compression")));
+        }
+        if (COMPRESSION_GZIP.equals(compression) && FORMAT_PARQUET.equals(exportFormat)) {
+            throw new AutomicException("Compression can not be combined with parquet export");
+        }
+        compressionLevel = CSVWriter.NO_COMPRESSION;
+        if (COMPRESSION_GZIP.equals(compression)) {
+            String level = getOptionValue("compressionlevel");
+            compressionLevel = CommonUtil.parseStringValue(level, DEFAULT_COMPRESSION_LEVEL);
+            if (compressionLevel < 1 || compressionLevel > MAX_COMPRESSION_LEVEL) {
+                throw new AutomicException(String.format(ExceptionConstants.INVALID_INPUT_PARAMETER,
+                        "Compression level", level));
+            }
+        }
         return queryRequest;
     }
 
-    // Read the record from json object into the form which can be written in CSV format.
-    private List<String> readRecord(JsonObject workItem) throws AutomicException {
+    // Read the record from json object into the form which can be written in CSV format. Like the field mapping it
+    // is package-private so that the benchmarks can measure it.
+    List<String> readRecord(JsonObject workItem) throws AutomicException {
         List<String> record = new ArrayList<String>(resultFields.size());
         for (String field : resultFields) {
             JsonElement jeObj = workItem.get(field);
@@ -195,7 +641,7 @@ public class ExportWorkItemsAction extends AbstractHttpAction {
     }
 
     // Prepare field mapping by comparing user provided fields and actual fields in case insensitive manner.
-    private void prepareUserFieldMapping(JsonObject jsonObj) throws AutomicException {
+    void prepareUserFieldMapping(JsonObject jsonObj) throws AutomicException {
         Set<Entry<String, JsonElement>> entrySet = jsonObj.entrySet();
         if (userInputFields == null) {
             resultFields = new ArrayList<String>(entrySet.size());
@@ -238,7 +684,7 @@ public class ExportWorkItemsAction extends AbstractHttpAction {
     }
 
     // Validate and Translate user provided field input parameters
-    private void prepareUserFields(String fieldInput) throws AutomicException {
+    void prepareUserFields(String fieldInput) throws AutomicException {
         String[] fields = fieldInput.split(",");
         userInputFields = new ArrayList<String>(fields.length);
         uniqueFields = new HashSet<String>(fields.length);
@@ -269,4 +715,174 @@ public class ExportWorkItemsAction extends AbstractHttpAction {
         return temp;
     }
 
-}
\ No newline at end of file
+    /**
+     * Fetches a single page of work items.
+     */
+    private class PageFetcher implements Callable<JsonArray> {
+
+        private final QueryRequest queryRequest;
+        private final int start;
+        private final int noOfRecords;
+
+        PageFetcher(QueryRequest queryRequest, int start, int noOfRecords) {
+            this.queryRequest = queryRequest;
+            this.start = start;
+            this.noOfRecords = noOfRecords;
+        }
+
+        @Override
+        public JsonArray call() throws AutomicException, IOException {
+            return runQuery(queryRequest, start + 1, noOfRecords).getResults();
+        }
+    }
+
+    /**
+     * Reads a page of the query result from the response stream and writes the requested fields of each record to the
+     * csv file. The csv file is created when the first record has been read since the header depends on it.
+     */
+    private class StreamingPageWriter implements ResponseStreamHandler {
+
+        private final JsonParser parser = new JsonParser();
+        private final List<String> errors = new ArrayList<>();
+        private RecordWriter writer;
+        private int totalResultCount;
+        private int pageResultCount;
+        private int itemsToWrite;
+
+        // position of a field in the record and the csv column each record value is written to
+        private Map<String, Integer> fieldSlots;
+        private int[] columnSlots;
+        private String[] slotValues;
+        private String[] row;
+
+        // Continue writing the records to the existing csv file using the restored field mapping.
+        void resume() throws IOException {
+            prepareSlots();
+            writer = new CSVWriter(filePath, charset, compressionLevel);
+        }
+
+        void startPage(int itemsToWrite) {
+            this.itemsToWrite = itemsToWrite;
+            this.pageResultCount = 0;
+        }
+
+        @Override
+        public void handle(InputStream content) throws IOException, AutomicException {
+            JsonReader reader = new JsonReader(new InputStreamReader(content, StandardCharsets.UTF_8));
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("QueryResult".equals(reader.nextName())) {
+                    readQueryResult(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        private void readQueryResult(JsonReader reader) throws IOException, AutomicException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("Errors".equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        errors.add(reader.nextString());
+                    }
+                    reader.endArray();
+                } else if ("TotalResultCount".equals(name)) {
+                    totalResultCount = reader.nextInt();
+                } else if ("Results".equals(name)) {
+                    readResults(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        private void readResults(JsonReader reader) throws IOException, AutomicException {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (pageResultCount >= itemsToWrite) {
+                    reader.skipValue();
+                } else if (writer == null) {
+                    JsonObject jsonObj = parser.parse(reader).getAsJsonObject();
+                    prepareUserFieldMapping(jsonObj);
+                    prepareSlots();
+                    writer = openWriter(Collections.singletonList(jsonObj));
+                    writer.writeLine(readRecord(jsonObj));
+                } else {
+                    readRow(reader);
+                    writer.writeLine(row);
+                }
+                pageResultCount++;
+            }
+            reader.endArray();
+        }
+
+        private void prepareSlots() {
+            fieldSlots = new HashMap<>(resultFields.size());
+            columnSlots = new int[resultFields.size()];
+            for (int i = 0; i < resultFields.size(); i++) {
+                String field = resultFields.get(i);
+                Integer slot = fieldSlots.get(field);
+                if (slot == null) {
+                    slot = fieldSlots.size();
+                    fieldSlots.put(field, slot);
+                }
+                columnSlots[i] = slot;
+            }
+            slotValues = new String[fieldSlots.size()];
+            row = new String[resultFields.size()];
+        }
+
+        // Read the record into the reusable row in the same form as readRecord(JsonObject).
+        private void readRow(JsonReader reader) throws IOException {
+            Arrays.fill(slotValues, null);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                Integer slot = fieldSlots.get(reader.nextName());
+                if (slot == null) {
+                    reader.skipValue();
+                } else {
+                    slotValues[slot] = readValue(reader);
+                }
+            }
+            reader.endObject();
+            for (int i = 0; i < row.length; i++) {
+                row[i] = slotValues[columnSlots[i]];
+            }
+        }
+
+        private String readValue(JsonReader reader) throws IOException {
+            String value = null;
+            switch (reader.peek()) {
+                case STRING:
+                case NUMBER:
+                    value = reader.nextString();
+                    break;
+                case BOOLEAN:
+                    value = Boolean.toString(reader.nextBoolean());
+                    break;
+                case BEGIN_OBJECT:
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if ("_refObjectName".equals(reader.nextName()) && reader.peek() != JsonToken.BEGIN_OBJECT
+                                && reader.peek() != JsonToken.BEGIN_ARRAY && reader.peek() != JsonToken.NULL) {
+                            value = reader.nextString();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+            return value;
+        }
+    }
+
+}
@@ -3,10 +3,13 @@
  */
 package com.automic.agilecentral.client;
 
+import java.lang.management.ManagementFactory;
+
 import com.automic.agilecentral.exception.AutomicException;
 import com.automic.agilecentral.exception.AutomicRuntimeException;
 import com.automic.agilecentral.util.CommonUtil;
 import com.automic.agilecentral.util.ConsoleWriter;
+import com.automic.agilecentral.util.Metrics;
 
 /**
  * @author shrutinambiar
@@ -22,15 +25,37 @@ public final class Client {
     }
 
     /**
-     * Main method which will start the execution of an action on Agile Central. This method will call the ClientHelper
-     * class which will trigger the execution of specific action and then if action fails this main method will handle
-     * the failed scenario and print the error message and system will exit with the respective response code.
+     * Main method which will start the execution of an action on Agile Central. If a daemon has been configured, the
+     * action is forwarded to it, otherwise it is executed by this process. The system will exit with the response
+     * code of the action.
      *
      * @param params
      *            array of parameters
      */
     public static void main(String[] params) {
+        Integer responseCode = DaemonClient.forward(params);
+        if (responseCode == null) {
+            responseCode = execute(params, ManagementFactory.getRuntimeMXBean().getUptime());
+        }
+        System.exit(responseCode);
+    }
+
+    /**
+     * Method which will call the ClientHelper class which will trigger the execution of specific action and then if
+     * action fails this method will handle the failed scenario and print the error message. The metrics of the action
+     * are reported as configured by the environment.
+     *
+     * @param params
+     *            array of parameters
+     * @return response code
+     */
+    public static int execute(String[] params) {
+        return execute(params, -1);
+    }
+
+    private static int execute(String[] params, long jvmStartup) {
         int responseCode = RESPONSE_NOT_OK;
+        Metrics metrics = Metrics.start(jvmStartup);
         try {
             ClientHelper.executeAction(params);
             responseCode = RESPONSE_OK;
@@ -41,9 +66,11 @@ public final class Client {
             ConsoleWriter.writeln(e);
             ConsoleWriter.writeln(CommonUtil.formatErrorMessage(ERRORMSG));
         } finally {
+            metrics.report();
+            Metrics.stop();
             ConsoleWriter.writeln("Execution ends with response code : " + responseCode);
             ConsoleWriter.flush();
         }
-        System.exit(responseCode);
+        return responseCode;
     }
 }
@@ -0,0 +1,240 @@
+package com.automic.agilecentral.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.automic.agilecentral.constants.Constants;
+import com.automic.agilecentral.util.CommonUtil;
+import com.automic.agilecentral.util.ConsoleWriter;
+import com.automic.agilecentral.util.RallyClientCache;
+
+/**
+ * Resident process which executes the actions forwarded by {@link Client} so that they do not pay for starting the
+ * JVM, loading the libraries and creating new connections. The daemon listens on the loopback port given by the
+ * environment variable {@value Constants#ENV_DAEMON_PORT} and only accepts clients which present the token written to
+ * the token file at startup. Each action is executed with the environment of its client and its output is streamed
+ * back to the client. Relative file paths given as options or environment variables are resolved against the working
+ * directory of the client.
+ *
+ */
+public final class Daemon {
+
+    private static final int TOKEN_SIZE = 32;
+    private static final int MAX_PARAMS = 10000;
+    private static final int MAX_TOKEN_LENGTH = 1024;
+    // options whose names end with this suffix hold a file path e.g. exportfilepath
+    private static final String PATH_OPTION_SUFFIX = "filepath";
+    private static final String[] PATH_VARIABLES = { Constants.ENV_REF_CACHE_FILE, Constants.ENV_METRICS_FILE };
+
+    private Daemon() {
+    }
+
+    /**
+     * Main method which starts the daemon.
+     *
+     * @param params
+     *            not used
+     */
+    public static void main(String[] params) {
+        int port = CommonUtil.getEnvParameter(Constants.ENV_DAEMON_PORT, 0);
+        int threads = CommonUtil.getEnvParameter(Constants.ENV_DAEMON_THREADS, Constants.AC_DAEMON_THREADS);
+        if (port <= 0 || threads <= 0) {
+            ConsoleWriter.writeln(CommonUtil.formatErrorMessage(String.format(
+                    "Environment variables %s and %s have to be positive numbers", Constants.ENV_DAEMON_PORT,
+                    Constants.ENV_DAEMON_THREADS)));
+            ConsoleWriter.flush();
+            System.exit(1);
+        }
+
+        final File tokenFile = DaemonClient.getTokenFile();
+        try (ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+            byte[] token = writeToken(tokenFile);
+            RallyClientCache.enable();
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    tokenFile.delete();
+                    RallyClientCache.closeAll();
+                }
+            });
+            ConsoleWriter.writeln("Daemon is listening on port " + port);
+            ConsoleWriter.flush();
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            while (true) {
+                executor.execute(new Invocation(server.accept(), token));
+            }
+        } catch (IOException e) {
+            ConsoleWriter.writeln(e);
+            ConsoleWriter.flush();
+            System.exit(1);
+        }
+    }
+
+    // Generate a random token and write it to a file only readable by the current user.
+    private static byte[] writeToken(File tokenFile) throws IOException {
+        byte[] random = new byte[TOKEN_SIZE];
+        new SecureRandom().nextBytes(random);
+        StringBuilder sb = new StringBuilder(TOKEN_SIZE * 2);
+        for (byte b : random) {
+            sb.append(String.format("%02x", b));
+        }
+        byte[] token = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        File dir = tokenFile.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+        Files.deleteIfExists(tokenFile.toPath());
+        try {
+            Files.createFile(tokenFile.toPath(),
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(tokenFile.toPath());
+        }
+        Files.write(tokenFile.toPath(), token);
+        return token;
+    }
+
+    // Resolve the relative paths of the file options and of the file environment variables against the working
+    // directory of the client.
+    private static void resolvePaths(String[] params, Map<String, String> environment, String workingDirectory) {
+        for (int i = 0; i + 1 < params.length; i++) {
+            if (params[i].startsWith("-") && params[i].toLowerCase().endsWith(PATH_OPTION_SUFFIX)) {
+                params[i + 1] = resolvePath(params[i + 1], workingDirectory);
+                i++;
+            }
+        }
+        for (String name : PATH_VARIABLES) {
+            String value = environment.get(name);
+            if (value != null) {
+                environment.put(name, resolvePath(value, workingDirectory));
+            }
+        }
+    }
+
+    private static String resolvePath(String path, String workingDirectory) {
+        String temp = path.trim();
+        if (temp.isEmpty() || new File(temp).isAbsolute()) {
+            return path;
+        }
+        return new File(workingDirectory, temp).getPath();
+    }
+
+    /**
+     * Executes a single action forwarded by a client.
+     */
+    private static class Invocation implements Runnable {
+
+        private final Socket socket;
+        private final byte[] token;
+
+        Invocation(Socket socket, byte[] token) {
+            this.socket = socket;
+            this.token = token;
+        }
+
+        @Override
+        public void run() {
+            try (Socket client = socket) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+                FrameOutputStream output = new FrameOutputStream(out);
+
+                byte[] clientToken = DaemonClient.readString(in, MAX_TOKEN_LENGTH).getBytes(
+                        StandardCharsets.UTF_8);
+                if (!MessageDigest.isEqual(token, clientToken)) {
+                    String message = CommonUtil.formatErrorMessage("Invalid daemon token") + System.lineSeparator();
+                    output.write(message.getBytes(StandardCharsets.UTF_8));
+                    output.end(1);
+                    return;
+                }
+                String workingDirectory = DaemonClient.readString(in, DaemonClient.MAX_STRING_LENGTH);
+                int count = in.readInt();
+                if (count < 0 || count > MAX_PARAMS) {
+                    throw new IOException("Invalid number of parameters " + count);
+                }
+                String[] params = new String[count];
+                for (int i = 0; i < count; i++) {
+                    params[i] = DaemonClient.readString(in, DaemonClient.MAX_STRING_LENGTH);
+                }
+                count = in.readInt();
+                if (count < 0 || count > MAX_PARAMS) {
+                    throw new IOException("Invalid number of environment variables " + count);
+                }
+                Map<String, String> environment = new HashMap<>(count);
+                for (int i = 0; i < count; i++) {
+                    String name = DaemonClient.readString(in, DaemonClient.MAX_STRING_LENGTH);
+                    environment.put(name, DaemonClient.readString(in, DaemonClient.MAX_STRING_LENGTH));
+                }
+
+                resolvePaths(params, environment, workingDirectory);
+
+                CommonUtil.setEnvironment(environment);
+                ConsoleWriter.redirect(output);
+                int responseCode = Client.execute(params);
+                output.end(responseCode);
+            } catch (IOException e) {
+                ConsoleWriter.redirect(null);
+                ConsoleWriter.writeln(e);
+                ConsoleWriter.flush();
+            } finally {
+                ConsoleWriter.redirect(null);
+                CommonUtil.setEnvironment(null);
+            }
+        }
+    }
+
+    /**
+     * Sends everything written to it as a frame of output to the client.
+     */
+    private static class FrameOutputStream extends OutputStream {
+
+        private final DataOutputStream out;
+
+        FrameOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            out.flush();
+        }
+
+        synchronized void end(int responseCode) throws IOException {
+            out.writeInt(DaemonClient.END_OF_OUTPUT);
+            out.writeInt(responseCode);
+            out.flush();
+        }
+    }
+}
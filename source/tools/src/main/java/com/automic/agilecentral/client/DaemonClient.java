@@ -0,0 +1,170 @@
+package com.automic.agilecentral.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import com.automic.agilecentral.constants.Constants;
+
+/**
+ * Thin client which forwards the action to the daemon listening on the loopback port given by the environment variable
+ * {@value Constants#ENV_DAEMON_PORT} and streams back its output and response code. It deliberately only depends on
+ * the JDK so that forwarding does not load the libraries used by the actions.
+ *
+ */
+final class DaemonClient {
+
+    /**
+     * Length of the frame which ends the output of an action, it is followed by the response code.
+     */
+    static final int END_OF_OUTPUT = -1;
+
+    /**
+     * Maximum length of a string of the request in bytes.
+     */
+    static final int MAX_STRING_LENGTH = 64 * 1024 * 1024;
+
+    private static final int CONNECT_TIMEOUT = 1000;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private DaemonClient() {
+    }
+
+    /**
+     * Method to execute the action by the daemon.
+     *
+     * @param params
+     *            array of parameters
+     * @return response code of the action or null if no daemon is available and the action has to be executed by
+     *         this process
+     */
+    static Integer forward(String[] params) {
+        String port = System.getenv(Constants.ENV_DAEMON_PORT);
+        if (port == null || port.isEmpty()) {
+            return null;
+        }
+        String token;
+        Socket socket = new Socket();
+        try {
+            token = new String(Files.readAllBytes(getTokenFile().toPath()), StandardCharsets.UTF_8).trim();
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(port.trim())),
+                    CONNECT_TIMEOUT);
+        } catch (IOException | NumberFormatException e) {
+            // daemon is not running, execute the action in process
+            close(socket);
+            return null;
+        }
+
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            writeString(out, token);
+            // relative file paths are resolved against the working directory of the client
+            writeString(out, System.getProperty("user.dir"));
+            out.writeInt(params.length);
+            for (String param : params) {
+                writeString(out, param);
+            }
+            Map<String, String> environment = System.getenv();
+            out.writeInt(environment.size());
+            for (Map.Entry<String, String> entry : environment.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+            out.flush();
+        } catch (IOException e) {
+            // the daemon does not execute an incomplete request, execute the action in process
+            close(socket);
+            return null;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int length;
+            while ((length = in.readInt()) != END_OF_OUTPUT) {
+                if (buffer.length < length) {
+                    buffer = new byte[length];
+                }
+                in.readFully(buffer, 0, length);
+                System.out.write(buffer, 0, length);
+            }
+            int responseCode = in.readInt();
+            System.out.flush();
+            return responseCode;
+        } catch (IOException e) {
+            System.out.println("Connection to daemon has been lost : " + e.getMessage());
+            System.out.flush();
+            return 1;
+        } finally {
+            close(socket);
+        }
+    }
+
+    /**
+     * Method to write a string of the request as its length followed by its UTF-8 encoded bytes.
+     *
+     * @param out
+     *            request stream
+     * @param value
+     *            string to write
+     * @throws IOException
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_LENGTH) {
+            throw new IOException("String of " + bytes.length + " bytes exceeds the maximum length");
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Method to read a string written by {@link #writeString(DataOutputStream, String)}.
+     *
+     * @param in
+     *            request stream
+     * @param maxLength
+     *            maximum length in bytes, so that a client which has not been authorized yet can not exhaust memory
+     * @return string read
+     * @throws IOException
+     */
+    static String readString(DataInputStream in, int maxLength) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Method to get the file holding the token which authorizes the clients of the daemon.
+     *
+     * @return token file
+     */
+    static File getTokenFile() {
+        String path = System.getenv(Constants.ENV_DAEMON_TOKEN_FILE);
+        if (path == null || path.isEmpty()) {
+            return new File(System.getProperty("user.home"), Constants.AC_DAEMON_TOKEN_FILE);
+        }
+        return new File(path);
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+}
@@ -12,6 +12,7 @@ public class Constants {
     public static final String HELP = "help";
 
     public static final String BASE_URL = "baseurl";
+    public static final String HTTP = "http";
     public static final String HTTPS = "https";
     public static final String USERNAME = "username";
     public static final String SKIP_CERT_VALIDATION = "ssl";
@@ -24,9 +25,31 @@ public class Constants {
     public static final String ENV_PASSWORD = "UC4_DECRYPTED_PWD";
     public static final String ENV_API_VERSION = "ENV_API_VERSION";
     public static final String ENV_PORT = "ENV_PORT";
+    public static final String ENV_MAX_CONNECTIONS = "ENV_MAX_CONNECTIONS";
+    public static final String ENV_MAX_CONNECTIONS_PER_ROUTE = "ENV_MAX_CONNECTIONS_PER_ROUTE";
+    public static final String ENV_KEEP_ALIVE = "ENV_KEEP_ALIVE";
+    public static final String ENV_POOL_STATS = "ENV_POOL_STATS";
+    public static final String ENV_RATE_LIMIT = "ENV_RATE_LIMIT";
+    public static final String ENV_MAX_RETRIES = "ENV_MAX_RETRIES";
+    public static final String ENV_REF_CACHE_TTL = "ENV_REF_CACHE_TTL";
+    public static final String ENV_REF_CACHE_FILE = "ENV_REF_CACHE_FILE";
+    public static final String ENV_DAEMON_PORT = "ENV_DAEMON_PORT";
+    public static final String ENV_DAEMON_THREADS = "ENV_DAEMON_THREADS";
+    public static final String ENV_DAEMON_TOKEN_FILE = "ENV_DAEMON_TOKEN_FILE";
+    public static final String ENV_METRICS = "ENV_METRICS";
+    public static final String ENV_METRICS_FILE = "ENV_METRICS_FILE";
+    public static final String ENV_MAX_URL_LENGTH = "ENV_MAX_URL_LENGTH";
     
     public static final String AC_API_VERSION = "v2.0";    
     public static final int AC_PORT = 443;
+    public static final int AC_MAX_CONNECTIONS = 20;
+    public static final int AC_KEEP_ALIVE = 30;
+    public static final int AC_MAX_RETRIES = 5;
+    public static final int AC_REF_CACHE_TTL = 0;
+    public static final String AC_REF_CACHE_FILE = ".agilecentral/refcache.properties";
+    public static final int AC_DAEMON_THREADS = 8;
+    public static final String AC_DAEMON_TOKEN_FILE = ".agilecentral/daemon.token";
+    public static final int AC_MAX_URL_LENGTH = 8000;
     
     public static final String WORKSPACE = "WORKSPACE";
     public static final String PROJECT = "PROJECT";
@@ -36,6 +59,7 @@ public class Constants {
     public static final String DESCRIPTION = "Description";
     public static final String FORMATTED_ID = "FormattedID";
     public static final String EQUALS_OPERATOR = "=";
+    public static final String IN_OPERATOR = "in";
     public static final String CONTENT = "Content";
     public static final String ARTIFACT = "Artifact";
     public static final String SCHEDULE_STATE = "ScheduleState";
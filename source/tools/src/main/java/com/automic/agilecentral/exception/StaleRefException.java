@@ -0,0 +1,21 @@
+package com.automic.agilecentral.exception;
+
+/**
+ * Exception thrown when a request failed because a reference read from the reference cache refers to an object which
+ * does not exist anymore. The reference has been removed from the cache, hence the action can be run again with the
+ * references resolved by CA Agile Central.
+ *
+ */
+public class StaleRefException extends AutomicException {
+
+    private static final long serialVersionUID = 4920617466262418251L;
+
+    /**
+     * Constructor that takes an error message
+     *
+     * @param message
+     */
+    public StaleRefException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,364 @@
+package com.automic.agilecentral.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import com.automic.agilecentral.constants.ExceptionConstants;
+import com.automic.agilecentral.exception.AutomicException;
+
+/**
+ * Request entity which embeds the content of a file as a Base64 encoded string into a JSON document. The file is read,
+ * optionally compressed, and encoded chunk by chunk while the request is sent, hence the memory used does not depend
+ * on the size of the file. The file is read again if the request is retried.
+ *
+ */
+public final class Base64FileEntity extends AbstractHttpEntity {
+
+    // multiple of 3 so that no padding is written before the last chunk
+    private static final int CHUNK_SIZE = 3 * 16 * 1024;
+    private static final byte[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final byte PAD = '=';
+
+    private final Path file;
+    private final byte[] prefix;
+    private final byte[] suffix;
+    private final long size;
+    private final Compression compression;
+
+    /**
+     * @param file
+     *            file to be sent
+     * @param prefix
+     *            JSON written before the encoded content
+     * @param suffix
+     *            JSON written after the encoded content
+     * @param size
+     *            size of the file in bytes
+     * @param compression
+     *            compression applied before the content is encoded
+     */
+    public Base64FileEntity(Path file, String prefix, String suffix, long size, Compression compression) {
+        this.file = file;
+        this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+        this.suffix = suffix.getBytes(StandardCharsets.UTF_8);
+        this.size = size;
+        this.compression = compression;
+        setContentType("application/json; charset=utf-8");
+        setChunked(compression != Compression.NONE);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    // the size of compressed content is not known until it has been sent
+    @Override
+    public long getContentLength() {
+        return compression == Compression.NONE ? prefix.length + (size + 2) / 3 * 4 + suffix.length : -1;
+    }
+
+    // the same content as written by #writeTo, encoded chunk by chunk while it is read
+    @Override
+    public InputStream getContent() throws IOException {
+        return new ContentStream();
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(prefix);
+        Base64Encoder encoder = new Base64Encoder(out);
+        OutputStream content = compression.wrap(encoder, file.getFileName().toString());
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        long remaining = size;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (remaining > 0) {
+                int length = readChunk(channel, chunk, remaining);
+                content.write(chunk.array(), 0, length);
+                remaining -= length;
+            }
+        } finally {
+            // finishes the compression and the encoding, the request stream stays open
+            content.close();
+        }
+        out.write(suffix);
+        out.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    // reads the next chunk of the file, at most the remaining number of bytes
+    private int readChunk(FileChannel channel, ByteBuffer chunk, long remaining) throws IOException {
+        Buffer buffer = chunk;
+        buffer.clear();
+        if (remaining < CHUNK_SIZE) {
+            buffer.limit((int) remaining);
+        }
+        while (chunk.hasRemaining()) {
+            if (channel.read(chunk) < 0) {
+                throw new IOException(String.format("The file[%s] has been truncated while sending it.", file));
+            }
+        }
+        return buffer.position();
+    }
+
+    private static int encode(byte[] in, int offset, int length, byte[] out) {
+        int o = 0;
+        int i = offset;
+        int end = offset + length;
+        for (; i + 3 <= end; i += 3) {
+            int bits = (in[i] & 0xff) << 16 | (in[i + 1] & 0xff) << 8 | in[i + 2] & 0xff;
+            out[o++] = ALPHABET[bits >>> 18];
+            out[o++] = ALPHABET[bits >>> 12 & 0x3f];
+            out[o++] = ALPHABET[bits >>> 6 & 0x3f];
+            out[o++] = ALPHABET[bits & 0x3f];
+        }
+        int left = end - i;
+        if (left > 0) {
+            int bits = (in[i] & 0xff) << 16 | (left == 2 ? (in[i + 1] & 0xff) << 8 : 0);
+            out[o++] = ALPHABET[bits >>> 18];
+            out[o++] = ALPHABET[bits >>> 12 & 0x3f];
+            out[o++] = left == 2 ? ALPHABET[bits >>> 6 & 0x3f] : PAD;
+            out[o++] = PAD;
+        }
+        return o;
+    }
+
+    /**
+     * Compression applied to the content of the file before it is encoded.
+     */
+    public enum Compression {
+        NONE("", null), GZIP(".gz", "application/gzip"), ZIP(".zip", "application/zip");
+
+        private final String extension;
+        private final String contentType;
+
+        private Compression(String extension, String contentType) {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+
+        /**
+         * Method to parse the compression given as input, no compression if the value is empty.
+         *
+         * @param value
+         *            NONE, GZIP or ZIP
+         * @return {@link Compression}
+         * @throws AutomicException
+         */
+        public static Compression of(String value) throws AutomicException {
+            if (!CommonUtil.checkNotEmpty(value)) {
+                return NONE;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new AutomicException(String.format(ExceptionConstants.INVALID_INPUT_PARAMETER, "Compression",
+                        value));
+            }
+        }
+
+        /**
+         * Method to get the name of the attachment holding the compressed file.
+         *
+         * @param fileName
+         *            name of the file
+         * @return name of the attachment
+         */
+        public String getName(String fileName) {
+            return fileName + extension;
+        }
+
+        /**
+         * Method to get the content type of the attachment holding the compressed file.
+         *
+         * @param fileContentType
+         *            content type of the file
+         * @return content type of the attachment
+         */
+        public String getContentType(String fileContentType) {
+            return contentType != null ? contentType : fileContentType;
+        }
+
+        private OutputStream wrap(OutputStream out, String fileName) throws IOException {
+            switch (this) {
+                case GZIP:
+                    return new GZIPOutputStream(out, CHUNK_SIZE);
+                case ZIP:
+                    ZipOutputStream zip = new ZipOutputStream(out);
+                    zip.putNextEntry(new ZipEntry(fileName));
+                    return zip;
+                default:
+                    return out;
+            }
+        }
+    }
+
+    /**
+     * Encodes the bytes written to it in chunks using fixed buffers. Closing it writes the padding but does not close
+     * the underlying stream.
+     */
+    private static final class Base64Encoder extends OutputStream {
+
+        private final OutputStream out;
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private final byte[] encoded = new byte[CHUNK_SIZE / 3 * 4];
+        private int count;
+        private boolean closed;
+
+        Base64Encoder(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            chunk[count++] = (byte) b;
+            if (count == CHUNK_SIZE) {
+                writeChunk();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int offset = off;
+            int length = len;
+            while (length > 0) {
+                if (count == 0 && length >= 3) {
+                    // encode directly from the given bytes as long as no bytes are pending
+                    int n = Math.min(length - length % 3, CHUNK_SIZE);
+                    out.write(encoded, 0, encode(b, offset, n, encoded));
+                    offset += n;
+                    length -= n;
+                    continue;
+                }
+                int n = Math.min(length, CHUNK_SIZE - count);
+                System.arraycopy(b, offset, chunk, count, n);
+                count += n;
+                offset += n;
+                length -= n;
+                if (count == CHUNK_SIZE) {
+                    writeChunk();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                writeChunk();
+            }
+        }
+
+        private void writeChunk() throws IOException {
+            out.write(encoded, 0, encode(chunk, 0, count, encoded));
+            count = 0;
+        }
+    }
+
+    /**
+     * Reads the content of the entity. A chunk of the file is read, compressed and encoded whenever the bytes encoded
+     * so far have been consumed.
+     */
+    private final class ContentStream extends InputStream {
+
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream(CHUNK_SIZE / 3 * 4 + 4);
+        private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        private final FileChannel channel;
+        private final OutputStream content;
+        private long remaining = size;
+        private boolean finished;
+        private byte[] bytes;
+        private int position;
+
+        ContentStream() throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                pending.write(prefix);
+                content = compression.wrap(new Base64Encoder(pending), file.getFileName().toString());
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            take();
+        }
+
+        @Override
+        public int read() throws IOException {
+            while (position == bytes.length) {
+                if (!fill()) {
+                    return -1;
+                }
+            }
+            return bytes[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position == bytes.length) {
+                if (!fill()) {
+                    return -1;
+                }
+            }
+            int n = Math.min(len, bytes.length - position);
+            System.arraycopy(bytes, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return bytes.length - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        // encodes the next chunk of the file, or the end of the content once the whole file has been read
+        private boolean fill() throws IOException {
+            if (finished) {
+                return false;
+            }
+            if (remaining > 0) {
+                int length = readChunk(channel, chunk, remaining);
+                content.write(chunk.array(), 0, length);
+                remaining -= length;
+            } else {
+                content.close();
+                pending.write(suffix);
+                channel.close();
+                finished = true;
+            }
+            take();
+            return true;
+        }
+
+        private void take() {
+            bytes = pending.toByteArray();
+            pending.reset();
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.automic.agilecentral.util;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.automic.agilecentral.exception.AutomicException;
+
+/**
+ * Operation executed by {@link BulkExecutor} for a batch of items at once, e.g. using a single batch request.
+ * Implementations are invoked from several threads at once.
+ *
+ * @param <T>
+ *            type of the item
+ */
+public interface BatchOperation<T> {
+
+    /**
+     * Method to identify the item in the results e.g. its formatted id or its row number.
+     *
+     * @param item
+     * @return identifier of the item
+     */
+    String describe(T item);
+
+    /**
+     * Method to process the items. If an exception is thrown all the items of the batch are considered failed.
+     *
+     * @param items
+     * @return result of each item in the order of the items
+     * @throws AutomicException
+     * @throws IOException
+     */
+    List<BulkResult> execute(List<T> items) throws AutomicException, IOException;
+}
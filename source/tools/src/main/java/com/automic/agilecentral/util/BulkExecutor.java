@@ -0,0 +1,279 @@
+package com.automic.agilecentral.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.automic.agilecentral.exception.AutomicException;
+
+/**
+ * Executes a {@link BulkOperation} or {@link BatchOperation} for a list of items using a fixed number of threads, so
+ * that at most that many requests are sent to CA Agile Central at the same time. The outcome of every item is tracked
+ * and returned in the order of the items.
+ *
+ */
+public final class BulkExecutor {
+
+    private BulkExecutor() {
+    }
+
+    /**
+     * Method to execute the operation for all the items. If continueOnError is false, items which have not been
+     * started when an item fails are skipped. Items which are already in progress are completed.
+     *
+     * @param items
+     *            items to process
+     * @param operation
+     *            operation to execute for each item
+     * @param concurrency
+     *            maximum number of items processed at the same time
+     * @param continueOnError
+     *            whether the remaining items are processed after a failure
+     * @return result of each item in the order of the items
+     * @throws AutomicException
+     */
+    public static <T> List<BulkResult> execute(List<T> items, BulkOperation<T> operation, int concurrency,
+            boolean continueOnError) throws AutomicException {
+        return execute(items, new SingleItemOperation<T>(operation), 1, concurrency, continueOnError);
+    }
+
+    /**
+     * Method to execute the operation for all the items in batches of the given size. If continueOnError is false,
+     * batches which have not been started when an item fails are skipped.
+     *
+     * @param items
+     *            items to process
+     * @param operation
+     *            operation to execute for each batch
+     * @param batchSize
+     *            maximum number of items per batch
+     * @param concurrency
+     *            maximum number of batches processed at the same time
+     * @param continueOnError
+     *            whether the remaining batches are processed after a failure
+     * @return result of each item in the order of the items
+     * @throws AutomicException
+     */
+    public static <T> List<BulkResult> execute(List<T> items, BatchOperation<T> operation, int batchSize,
+            int concurrency, boolean continueOnError) throws AutomicException {
+        List<BulkResult> results = new ArrayList<>(items.size());
+        if (items.isEmpty()) {
+            return results;
+        }
+        int noOfBatches = (items.size() + batchSize - 1) / batchSize;
+        AtomicBoolean failed = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, noOfBatches));
+        try {
+            List<Future<List<BulkResult>>> futures = new ArrayList<>(noOfBatches);
+            for (int start = 0; start < items.size(); start += batchSize) {
+                List<T> batch = items.subList(start, Math.min(start + batchSize, items.size()));
+                futures.add(executor.submit(new BatchTask<T>(batch, operation, continueOnError, failed)));
+            }
+            results.addAll(collect(futures));
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    // Wait for the batches and print the outcome of every item in the order of the items.
+    private static List<BulkResult> collect(List<Future<List<BulkResult>>> futures) throws AutomicException {
+        List<BulkResult> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<List<BulkResult>> future : futures) {
+                for (BulkResult result : future.get()) {
+                    String message = result.getMessage() != null ? " : " + result.getMessage() : "";
+                    ConsoleWriter.writeln(String.format("Work item %s %s%s", result.getItem(), result.getStatus(),
+                            message));
+                    results.add(result);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AutomicException("Bulk operation has been interrupted");
+        } catch (ExecutionException e) {
+            ConsoleWriter.writeln(e.getCause());
+            throw new AutomicException(String.valueOf(e.getCause()));
+        }
+        return results;
+    }
+
+    /**
+     * Executes the operation for items which become available over time e.g. page by page while further pages are
+     * still being fetched. Submitting items blocks while twice as many batches as threads are pending, so that the
+     * items are not fetched faster than they are processed.
+     *
+     * @param <T>
+     *            type of the item
+     */
+    public static final class Pipeline<T> implements AutoCloseable {
+
+        private final BatchOperation<T> operation;
+        private final int batchSize;
+        private final boolean continueOnError;
+        private final AtomicBoolean failed = new AtomicBoolean();
+        private final ExecutorService executor;
+        private final Semaphore pending;
+        private final List<Future<List<BulkResult>>> futures = new ArrayList<>();
+
+        /**
+         * @param operation
+         *            operation to execute for each item
+         * @param concurrency
+         *            maximum number of items processed at the same time
+         * @param continueOnError
+         *            whether the remaining items are processed after a failure
+         */
+        public Pipeline(BulkOperation<T> operation, int concurrency, boolean continueOnError) {
+            this(new SingleItemOperation<T>(operation), 1, concurrency, continueOnError);
+        }
+
+        /**
+         * @param operation
+         *            operation to execute for each batch
+         * @param batchSize
+         *            maximum number of items per batch
+         * @param concurrency
+         *            maximum number of batches processed at the same time
+         * @param continueOnError
+         *            whether the remaining batches are processed after a failure
+         */
+        public Pipeline(BatchOperation<T> operation, int batchSize, int concurrency, boolean continueOnError) {
+            this.operation = operation;
+            this.batchSize = batchSize;
+            this.continueOnError = continueOnError;
+            this.executor = Executors.newFixedThreadPool(concurrency);
+            this.pending = new Semaphore(2 * concurrency);
+        }
+
+        /**
+         * Method to process the items in batches of the configured size.
+         *
+         * @param items
+         *            items to process, the list may be changed once the method returns
+         * @throws AutomicException
+         */
+        public void submit(List<T> items) throws AutomicException {
+            for (int start = 0; start < items.size(); start += batchSize) {
+                final List<T> batch = new ArrayList<>(items.subList(start, Math.min(start + batchSize,
+                        items.size())));
+                try {
+                    pending.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new AutomicException("Bulk operation has been interrupted");
+                }
+                final BatchTask<T> task = new BatchTask<T>(batch, operation, continueOnError, failed);
+                futures.add(executor.submit(new Callable<List<BulkResult>>() {
+
+                    @Override
+                    public List<BulkResult> call() {
+                        try {
+                            return task.call();
+                        } finally {
+                            pending.release();
+                        }
+                    }
+                }));
+            }
+        }
+
+        /**
+         * @return true if an item failed
+         */
+        public boolean hasFailed() {
+            return failed.get();
+        }
+
+        /**
+         * Method to wait until all the submitted items have been processed.
+         *
+         * @return result of each item in the order the items have been submitted
+         * @throws AutomicException
+         */
+        public List<BulkResult> finish() throws AutomicException {
+            return collect(futures);
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Executes the operation for a batch of items and converts errors into failed results.
+     */
+    private static class BatchTask<T> implements Callable<List<BulkResult>> {
+
+        private final List<T> items;
+        private final BatchOperation<T> operation;
+        private final boolean continueOnError;
+        private final AtomicBoolean failed;
+
+        BatchTask(List<T> items, BatchOperation<T> operation, boolean continueOnError, AtomicBoolean failed) {
+            this.items = items;
+            this.operation = operation;
+            this.continueOnError = continueOnError;
+            this.failed = failed;
+        }
+
+        @Override
+        public List<BulkResult> call() {
+            List<BulkResult> results;
+            if (!continueOnError && failed.get()) {
+                results = new ArrayList<>(items.size());
+                for (T item : items) {
+                    results.add(BulkResult.skipped(operation.describe(item)));
+                }
+                return results;
+            }
+            try {
+                results = operation.execute(items);
+            } catch (AutomicException | IOException | RuntimeException e) {
+                // an unexpected response must not abort the items which are in progress or already processed
+                String message = e.getMessage() != null ? e.getMessage() : e.toString();
+                results = new ArrayList<>(items.size());
+                for (T item : items) {
+                    results.add(BulkResult.failure(operation.describe(item), message));
+                }
+            }
+            for (BulkResult result : results) {
+                if (result.getStatus() == BulkResult.Status.FAILED) {
+                    failed.set(true);
+                }
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Adapts a {@link BulkOperation} to batches containing a single item.
+     */
+    private static class SingleItemOperation<T> implements BatchOperation<T> {
+
+        private final BulkOperation<T> operation;
+
+        SingleItemOperation(BulkOperation<T> operation) {
+            this.operation = operation;
+        }
+
+        @Override
+        public String describe(T item) {
+            return operation.describe(item);
+        }
+
+        @Override
+        public List<BulkResult> execute(List<T> items) throws AutomicException, IOException {
+            return Collections.singletonList(operation.execute(items.get(0)));
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.automic.agilecentral.util;
+
+import java.io.IOException;
+
+import com.automic.agilecentral.exception.AutomicException;
+
+/**
+ * Operation executed by {@link BulkExecutor} for each item. Implementations are invoked from several threads at once.
+ *
+ * @param <T>
+ *            type of the item
+ */
+public interface BulkOperation<T> {
+
+    /**
+     * Method to identify the item in the results e.g. its formatted id or its row number.
+     *
+     * @param item
+     * @return identifier of the item
+     */
+    String describe(T item);
+
+    /**
+     * Method to process the item.
+     *
+     * @param item
+     * @return result of the item
+     * @throws AutomicException
+     * @throws IOException
+     */
+    BulkResult execute(T item) throws AutomicException, IOException;
+}
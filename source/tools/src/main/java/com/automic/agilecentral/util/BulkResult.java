@@ -0,0 +1,115 @@
+package com.automic.agilecentral.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.automic.agilecentral.exception.AutomicException;
+
+/**
+ * Outcome of a single item processed by {@link BulkExecutor}.
+ *
+ */
+public final class BulkResult {
+
+    /**
+     * Status of the item
+     */
+    public enum Status {
+        SUCCESS, FAILED, SKIPPED
+    }
+
+    private static final List<String> HEADERS = Arrays.asList(new String[] { "Item", "Status", "FormattedID",
+            "ObjectID", "Message" });
+
+    private final String item;
+    private final Status status;
+    private final String formattedId;
+    private final String objectId;
+    private final String message;
+
+    private BulkResult(String item, Status status, String formattedId, String objectId, String message) {
+        this.item = item;
+        this.status = status;
+        this.formattedId = formattedId;
+        this.objectId = objectId;
+        this.message = message;
+    }
+
+    public static BulkResult success(String item, String formattedId, String objectId) {
+        return new BulkResult(item, Status.SUCCESS, formattedId, objectId, null);
+    }
+
+    public static BulkResult failure(String item, String message) {
+        return new BulkResult(item, Status.FAILED, null, null, message);
+    }
+
+    public static BulkResult skipped(String item) {
+        return new BulkResult(item, Status.SKIPPED, null, null, null);
+    }
+
+    public String getItem() {
+        return item;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getFormattedId() {
+        return formattedId;
+    }
+
+    public String getObjectId() {
+        return objectId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Method to count the results having the given status
+     * 
+     * @param results
+     * @param status
+     * @return number of results
+     */
+    public static int count(List<BulkResult> results, Status status) {
+        int count = 0;
+        for (BulkResult result : results) {
+            if (result.status == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Method to write the results to a csv file, one line per item.
+     * 
+     * @param filePath
+     * @param results
+     * @throws AutomicException
+     */
+    public static void writeResults(String filePath, List<BulkResult> results) throws AutomicException {
+        try (CSVWriter writer = new CSVWriter(filePath, HEADERS)) {
+            List<String> line = new ArrayList<>(HEADERS.size());
+            for (BulkResult result : results) {
+                line.clear();
+                line.add(result.item);
+                line.add(result.status.name());
+                line.add(result.formattedId);
+                line.add(result.objectId);
+                line.add(result.message);
+                writer.writeLine(line);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            ConsoleWriter.writeln(e);
+            throw new AutomicException(String.format("Error occured while writing results to file [%s] : %s",
+                    filePath, e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.automic.agilecentral.util;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This Class used to read csv file. Fields may be enclosed in double quotes in which case they can contain separators,
+ * line breaks and escaped (doubled) quotes, as written by {@link CSVWriter}.
+ * 
+ */
+public class CSVReader implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final char DEFAULT_SEPARATOR = ',';
+    private static final char QUOTE = '"';
+
+    private final BufferedReader br;
+    private final StringBuilder field = new StringBuilder();
+
+    public CSVReader(String filePath) throws IOException {
+        this(filePath, StandardCharsets.UTF_8);
+    }
+
+    public CSVReader(String filePath, Charset charset) throws IOException {
+        this(new FileInputStream(filePath), charset);
+    }
+
+    /**
+     * Create a reader of the csv content of the stream e.g. of a compressed file.
+     *
+     * @param in
+     * @param charset
+     */
+    public CSVReader(InputStream in, Charset charset) {
+        br = new BufferedReader(new InputStreamReader(in, charset), BUFFER_SIZE);
+    }
+
+    /**
+     * Method to read the next line of the csv file
+     * 
+     * @return values of the line or null if end of file has been reached
+     * @throws IOException
+     */
+    public List<String> readLine() throws IOException {
+        int ch = br.read();
+        if (ch == -1) {
+            return null;
+        }
+        List<String> values = new ArrayList<>();
+        boolean quoted = false;
+        field.setLength(0);
+        while (ch != -1) {
+            if (quoted) {
+                if (ch == QUOTE) {
+                    br.mark(1);
+                    if (br.read() == QUOTE) {
+                        field.append(QUOTE);
+                    } else {
+                        br.reset();
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) ch);
+                }
+            } else if (ch == QUOTE) {
+                quoted = true;
+            } else if (ch == DEFAULT_SEPARATOR) {
+                values.add(field.toString());
+                field.setLength(0);
+            } else if (ch == '\n') {
+                break;
+            } else if (ch != '\r') {
+                field.append((char) ch);
+            }
+            ch = br.read();
+        }
+        values.add(field.toString());
+        return values;
+    }
+
+    @Override
+    public void close() {
+        try {
+            br.close();
+        } catch (IOException ie) {
+            ConsoleWriter.writeln(ie);
+        }
+    }
+}
@@ -1,78 +1,465 @@
 package com.automic.agilecentral.util;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.Writer;
+import java.io.InterruptedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
 /**
- * This Class used to create csv file
- * 
+ * This Class used to create csv file. The lines are formatted into a reusable char buffer which is encoded into a byte
+ * buffer and written to the file channel whenever the byte buffer is full, so that writing a line allocates nothing.
+ * The file may be compressed by gzip in which case the full byte buffers are compressed by a separate thread while the
+ * next lines are written. The compressed lines form a single gzip member, unless the writer is synced.
+ *
  */
-public class CSVWriter implements AutoCloseable {
+public class CSVWriter implements RecordWriter {
 
-    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int CHAR_BUFFER_SIZE = 8 * 1024;
+    private static final int BYTE_BUFFER_SIZE = 128 * 1024;
     private static final char DEFAULT_SEPARATOR = ',';
-    private static final String QUOTE = "\"";
-    private static final String DOUBLEQUOTE = "\"\"";
+    private static final char QUOTE_CHAR = '"';
 
-    private BufferedWriter bw = null;
-    private FileWriter fw = null;
+    /**
+     * Compression level of files which are not compressed.
+     */
+    public static final int NO_COMPRESSION = 0;
+
+    private final FileChannel channel;
+    private final CharsetEncoder encoder;
+    private final GzipCompressor compressor;
+    private final char[] chars = new char[CHAR_BUFFER_SIZE];
+    private final CharBuffer charBuffer = CharBuffer.wrap(chars);
+    private ByteBuffer byteBuffer = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+    private int count;
+    private boolean finished;
 
     public CSVWriter(String filePath, List<String> headers) throws IOException {
-        fw = new FileWriter(filePath);
-        bw = new BufferedWriter(fw, BUFFER_SIZE);
+        this(filePath, headers, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create a writer which writes the header to a new csv file encoded in the given charset.
+     *
+     * @param filePath
+     * @param headers
+     * @param charset
+     * @throws IOException
+     */
+    public CSVWriter(String filePath, List<String> headers, Charset charset) throws IOException {
+        this(filePath, headers, charset, NO_COMPRESSION);
+    }
+
+    /**
+     * Create a writer which writes the header to a new csv file encoded in the given charset and compressed by gzip.
+     *
+     * @param filePath
+     * @param headers
+     * @param charset
+     * @param compressionLevel
+     *            gzip compression level from 1 to 9, {@link #NO_COMPRESSION} if the file is not compressed
+     * @throws IOException
+     */
+    public CSVWriter(String filePath, List<String> headers, Charset charset, int compressionLevel)
+            throws IOException {
+        this(filePath, false, charset, compressionLevel);
         writeLine(headers);
     }
 
+    /**
+     * Create a writer which appends lines to an existing csv file i.e. without writing the header.
+     *
+     * @param filePath
+     * @throws IOException
+     */
+    public CSVWriter(String filePath) throws IOException {
+        this(filePath, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create a writer which appends lines to an existing csv file encoded in the given charset.
+     *
+     * @param filePath
+     * @param charset
+     * @throws IOException
+     */
+    public CSVWriter(String filePath, Charset charset) throws IOException {
+        this(filePath, charset, NO_COMPRESSION);
+    }
+
+    /**
+     * Create a writer which appends lines to an existing csv file encoded in the given charset and compressed by gzip.
+     * The lines are appended as a new gzip member.
+     *
+     * @param filePath
+     * @param charset
+     * @param compressionLevel
+     *            gzip compression level from 1 to 9, {@link #NO_COMPRESSION} if the file is not compressed
+     * @throws IOException
+     */
+    public CSVWriter(String filePath, Charset charset, int compressionLevel) throws IOException {
+        this(filePath, true, charset, compressionLevel);
+    }
+
+    private CSVWriter(String filePath, boolean append, Charset charset, int compressionLevel) throws IOException {
+        channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        // characters which can not be encoded are replaced like the writers of java.io do
+        encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        compressor = compressionLevel != NO_COMPRESSION ? new GzipCompressor(channel, compressionLevel) : null;
+    }
+
     /**
      * Method to write line in csv file
-     * 
+     *
      * @param values
      * @throws IOException
      */
+    @Override
     public void writeLine(List<String> values) throws IOException {
-        StringBuilder sb = new StringBuilder();
-        for (String value : values) {
-            if (CommonUtil.checkNotEmpty(value)) {
-                sb.append(QUOTE).append(escapeData(value)).append(QUOTE);
-            } else {
-                sb.append(QUOTE).append(QUOTE);
+        int size = values.size();
+        for (int i = 0; i < size; i++) {
+            writeField(i, values.get(i));
+        }
+        write('\n');
+    }
+
+    /**
+     * Method to write line in csv file. The output is same as {@link #writeLine(List)}.
+     *
+     * @param values
+     * @throws IOException
+     */
+    @Override
+    public void writeLine(String[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            writeField(i, values[i]);
+        }
+        write('\n');
+    }
+
+    // write the quoted value doubling each quote character
+    private void writeField(int column, String value) throws IOException {
+        if (column != 0) {
+            write(DEFAULT_SEPARATOR);
+        }
+        write(QUOTE_CHAR);
+        if (value != null) {
+            int from = 0;
+            int quoteAt = value.indexOf(QUOTE_CHAR);
+            while (quoteAt != -1) {
+                write(value, from, quoteAt + 1);
+                write(QUOTE_CHAR);
+                from = quoteAt + 1;
+                quoteAt = value.indexOf(QUOTE_CHAR, from);
+            }
+            write(value, from, value.length());
+        }
+        write(QUOTE_CHAR);
+    }
+
+    private void write(char c) throws IOException {
+        if (count == chars.length) {
+            encode(false);
+        }
+        chars[count++] = c;
+    }
+
+    private void write(String value, int from, int to) throws IOException {
+        int start = from;
+        while (start < to) {
+            if (count == chars.length) {
+                encode(false);
             }
-            sb.append(DEFAULT_SEPARATOR);
+            int length = Math.min(to - start, chars.length - count);
+            value.getChars(start, start + length, chars, count);
+            count += length;
+            start += length;
+        }
+    }
 
+    // Encode the buffered characters, a high surrogate at the end is kept until its low surrogate has been buffered.
+    private void encode(boolean endOfInput) throws IOException {
+        // the buffers are positioned through Buffer, whose methods are not overridden before Java 9
+        Buffer chunk = charBuffer;
+        chunk.limit(count).position(0);
+        while (encoder.encode(charBuffer, byteBuffer, endOfInput).isOverflow()) {
+            writeBytes();
         }
-        if (sb.length() > 0) {
-            sb.deleteCharAt(sb.length() - 1);
+        int remaining = chunk.remaining();
+        System.arraycopy(chars, chunk.position(), chars, 0, remaining);
+        count = remaining;
+        if (endOfInput) {
+            while (encoder.flush(byteBuffer).isOverflow()) {
+                writeBytes();
+            }
         }
-        sb.append("\n");
-        bw.append(sb.toString());
     }
 
-    private String escapeData(String value) {
-        String result = value;
-        if (result.contains(QUOTE)) {
-            result = result.replace(QUOTE, DOUBLEQUOTE);
+    private void writeBytes() throws IOException {
+        Buffer bytes = byteBuffer;
+        bytes.flip();
+        if (compressor != null) {
+            byteBuffer = compressor.compress(byteBuffer);
+            return;
+        }
+        while (byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer);
         }
-        return result;
+        bytes.clear();
     }
 
+    /**
+     * Method to write the lines to the file. The lines of a compressed file are handed over to the compressor without
+     * waiting for it.
+     *
+     * @throws IOException
+     */
+    @Override
     public void flush() throws IOException {
-        bw.flush();
+        encode(false);
+        writeBytes();
+    }
+
+    /**
+     * Method to write the lines to the file and wait until a compressed file is complete, as the compressed lines are
+     * finished as gzip member.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void sync() throws IOException {
+        flush();
+        if (compressor != null) {
+            compressor.finishMember();
+        }
     }
 
+    /**
+     * Method to write the remaining lines and, if the file is compressed, finish the last gzip member.
+     *
+     * @throws IOException
+     */
     @Override
-    public void close() {
-        close(bw);
-        close(fw);        
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        encode(true);
+        writeBytes();
+        if (compressor != null) {
+            compressor.finishMember();
+        }
     }
-    
-    private void close(Writer wr) {
+
+    @Override
+    public void close() {
+        if (!channel.isOpen()) {
+            return;
+        }
         try {
-            wr.close();
+            try {
+                finish();
+            } finally {
+                if (compressor != null) {
+                    compressor.stop();
+                }
+                channel.close();
+            }
         } catch (IOException ie) {
             ConsoleWriter.writeln(ie);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Compresses the byte buffers of the writer on its own thread and writes them as gzip members to the channel. The
+     * buffers circulate between the writer and the compressor, so that neither of them allocates.
+     */
+    private static final class GzipCompressor implements Runnable {
+
+        private static final int BUFFERS = 3;
+        private static final int GZIP_MAGIC = 0x8b1f;
+        private static final ByteBuffer FINISH = ByteBuffer.allocate(0);
+        private static final ByteBuffer STOP = ByteBuffer.allocate(0);
+
+        private final FileChannel channel;
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private final byte[] output = new byte[BYTE_BUFFER_SIZE];
+        private final BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<>(BUFFERS + 1);
+        private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(BUFFERS);
+        private final Semaphore finished = new Semaphore(0);
+        private final Thread thread;
+        private volatile IOException failure;
+        private int outputLength;
+        private long memberSize;
+        private boolean memberStarted;
+
+        GzipCompressor(FileChannel channel, int level) {
+            this.channel = channel;
+            this.deflater = new Deflater(level, true);
+            for (int i = 1; i < BUFFERS; i++) {
+                free.add(ByteBuffer.allocate(BYTE_BUFFER_SIZE));
+            }
+            thread = new Thread(this, "csv-gzip");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        // Hand over the filled buffer and return an empty one once the compressor has one.
+        ByteBuffer compress(ByteBuffer buffer) throws IOException {
+            checkFailure();
+            try {
+                filled.put(buffer);
+                return free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Compression of csv file has been interrupted");
+            }
+        }
+
+        // Wait until the buffers handed over have been written as complete gzip member.
+        void finishMember() throws IOException {
+            try {
+                filled.put(FINISH);
+                finished.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Compression of csv file has been interrupted");
+            }
+            checkFailure();
+        }
+
+        void stop() {
+            filled.offer(STOP);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            deflater.end();
+        }
+
+        @Override
+        public void run() {
+            try {
+                ByteBuffer buffer;
+                while ((buffer = filled.take()) != STOP) {
+                    if (buffer == FINISH) {
+                        if (failure == null) {
+                            writeMemberEnd();
+                        }
+                        finished.release();
+                        continue;
+                    }
+                    if (failure == null) {
+                        deflate(buffer);
+                    }
+                    ((Buffer) buffer).clear();
+                    free.put(buffer);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void deflate(ByteBuffer buffer) {
+            if (buffer.limit() == 0) {
+                return;
+            }
+            try {
+                if (!memberStarted) {
+                    writeMemberStart();
+                }
+                crc.update(buffer.array(), 0, buffer.limit());
+                memberSize += buffer.limit();
+                deflater.setInput(buffer.array(), 0, buffer.limit());
+                while (!deflater.needsInput()) {
+                    deflateOutput();
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        private void writeMemberStart() throws IOException {
+            // header without file name, modification time and flags
+            byte[] header = { (byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+            append(header, header.length);
+            memberStarted = true;
+        }
+
+        private void writeMemberEnd() {
+            if (!memberStarted) {
+                return;
+            }
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflateOutput();
+                }
+                byte[] trailer = new byte[8];
+                writeIntLittleEndian(trailer, 0, (int) crc.getValue());
+                writeIntLittleEndian(trailer, 4, (int) memberSize);
+                append(trailer, trailer.length);
+                writeOutput();
+            } catch (IOException e) {
+                failure = e;
+            }
+            deflater.reset();
+            crc.reset();
+            memberSize = 0;
+            memberStarted = false;
+        }
+
+        private void deflateOutput() throws IOException {
+            outputLength += deflater.deflate(output, outputLength, output.length - outputLength);
+            if (outputLength == output.length) {
+                writeOutput();
+            }
+        }
+
+        private void append(byte[] bytes, int length) throws IOException {
+            if (outputLength + length > output.length) {
+                writeOutput();
+            }
+            System.arraycopy(bytes, 0, output, outputLength, length);
+            outputLength += length;
+        }
+
+        private void writeOutput() throws IOException {
+            ByteBuffer bytes = ByteBuffer.wrap(output, 0, outputLength);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            outputLength = 0;
+        }
+
+        private void checkFailure() throws IOException {
+            if (failure != null) {
+                throw new IOException("Unable to compress csv file", failure);
+            }
+        }
+
+        private static void writeIntLittleEndian(byte[] bytes, int offset, int value) {
+            for (int i = 0; i < 4; i++) {
+                bytes[offset + i] = (byte) (value >>> (8 * i));
+            }
+        }
+    }
+}
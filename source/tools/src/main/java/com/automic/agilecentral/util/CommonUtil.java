@@ -4,6 +4,11 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
 
 import com.automic.agilecentral.constants.Constants;
 import com.automic.agilecentral.exception.AutomicException;
@@ -15,6 +20,8 @@ import com.automic.agilecentral.validator.AgileCentralValidator;
  */
 public class CommonUtil {
 
+    private static final InheritableThreadLocal<Map<String, String>> ENVIRONMENT = new InheritableThreadLocal<>();
+
     private CommonUtil() {
     }
 
@@ -43,6 +50,32 @@ public class CommonUtil {
         return field != null && !field.isEmpty();
     }
 
+    /**
+     * Method to set the environment of the current thread and the threads it creates. It replaces the process
+     * environment e.g. when the action is executed by the daemon on behalf of a client.
+     * 
+     * @param environment
+     *            environment variables or null to use the process environment
+     */
+    public static void setEnvironment(Map<String, String> environment) {
+        if (environment != null) {
+            ENVIRONMENT.set(environment);
+        } else {
+            ENVIRONMENT.remove();
+        }
+    }
+
+    /**
+     * Method to read an environment variable of the current thread.
+     * 
+     * @param name
+     * @return value or null if not defined
+     */
+    public static String getEnv(String name) {
+        Map<String, String> environment = ENVIRONMENT.get();
+        return environment != null ? environment.get(name) : System.getenv(name);
+    }
+
     /**
      * Method to read environment value. If not defined then it returns the default value as specified.
      * 
@@ -51,7 +84,7 @@ public class CommonUtil {
      * @return
      */
     public static final String getEnvParameter(final String paramName, String defaultValue) {
-        String val = System.getenv(paramName);
+        String val = getEnv(paramName);
         if (val == null) {
             val = defaultValue;
         }
@@ -79,6 +112,26 @@ public class CommonUtil {
         return i;
     }
 
+    /**
+     * Method to parse String containing numeric long value. If string is not valid, then it returns the default value
+     * as specified.
+     *
+     * @param value
+     * @param defaultValue
+     * @return numeric value
+     */
+    public static long parseLongValue(final String value, long defaultValue) {
+        long l = defaultValue;
+        if (checkNotEmpty(value)) {
+            try {
+                l = Long.parseLong(value);
+            } catch (final NumberFormatException nfe) {
+                l = defaultValue;
+            }
+        }
+        return l;
+    }
+
     /**
      * Method to convert YES/NO values to boolean true or false
      * 
@@ -104,7 +157,7 @@ public class CommonUtil {
      * @return parameter value
      */
     public static final int getEnvParameter(final String paramName, int defaultValue) {
-        String val = System.getenv(paramName);
+        String val = getEnv(paramName);
         int i;
         if (val != null) {
             try {
@@ -132,6 +185,38 @@ public class CommonUtil {
         }
     }
 
+    /**
+     * Method to join the values using the given separator.
+     * 
+     * @param values
+     * @param separator
+     * @return joined values
+     */
+    public static String join(List<String> values, String separator) {
+        StringBuilder sb = new StringBuilder();
+        for (String value : values) {
+            if (sb.length() > 0) {
+                sb.append(separator);
+            }
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Method to split the value joined by {@link #join(List, String)}.
+     * 
+     * @param value
+     * @param separator
+     * @return list of values, empty if the value is empty
+     */
+    public static List<String> split(String value, String separator) {
+        if (!checkNotEmpty(value)) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(Arrays.asList(value.split(Pattern.quote(separator))));
+    }
+
     /**
      * Method to validate provided file is Writable
      * 
@@ -141,8 +226,10 @@ public class CommonUtil {
     public static boolean isWritable(File file) {
         boolean flag = false;
         try {
-            if (!file.isDirectory()) {
-                file.createNewFile();
+            if (file.exists()) {
+                flag = !file.isDirectory() && file.canWrite();
+            } else if (file.createNewFile()) {
+                // remove the probe file only, never an existing file
                 file.delete();
                 flag = true;
             }
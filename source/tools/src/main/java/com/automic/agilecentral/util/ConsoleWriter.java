@@ -17,6 +17,22 @@ import com.automic.agilecentral.constants.ExceptionConstants;
  */
 public final class ConsoleWriter {
     private static final ByteWriter WRITER = new ByteWriter(System.out);
+    private static final InheritableThreadLocal<ByteWriter> REDIRECTED = new InheritableThreadLocal<>();
+
+    /**
+     * Method to redirect the output of the current thread and the threads it creates e.g. to the client of the
+     * daemon.
+     * 
+     * @param output
+     *            stream to write to or null to write to console again
+     */
+    public static final void redirect(OutputStream output) {
+        if (output != null) {
+            REDIRECTED.set(new ByteWriter(output));
+        } else {
+            REDIRECTED.remove();
+        }
+    }
 
     /**
      * Method to write a newline to console
@@ -58,7 +74,7 @@ public final class ConsoleWriter {
      */
     public static final void write(String content) {
         String temp = content != null ? content : "null";
-        WRITER.write(temp);
+        writer().write(temp);
     }
 
     /**
@@ -66,7 +82,12 @@ public final class ConsoleWriter {
      * 
      */
     public static final void flush() {
-        WRITER.flush();
+        writer().flush();
+    }
+
+    private static ByteWriter writer() {
+        ByteWriter writer = REDIRECTED.get();
+        return writer != null ? writer : WRITER;
     }
 
     /**
@@ -0,0 +1,143 @@
+package com.automic.agilecentral.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Properties;
+
+import com.automic.agilecentral.exception.AutomicException;
+
+/**
+ * Sidecar file of an export which records the number of work items that have been written completely along with the
+ * exported fields, so that a failed export can be resumed from that point.
+ *
+ */
+public class ExportCheckpoint {
+
+    private static final String SUFFIX = ".checkpoint";
+    private static final String OFFSET = "offset";
+    private static final String FILE_LENGTH = "filelength";
+    private static final String HEADERS = "headers";
+    private static final String FIELDS = "fields";
+    private static final String QUERY = "query";
+    private static final String SEPARATOR = ",";
+
+    private final File file;
+    private final File exportFile;
+    private final String query;
+
+    private int offset;
+    private long fileLength;
+    private List<String> headers;
+    private List<String> fields;
+
+    /**
+     * @param exportFilePath
+     *            path of the export file
+     * @param query
+     *            description of the export, a checkpoint can only be resumed by the same export
+     */
+    public ExportCheckpoint(String exportFilePath, String query) {
+        this.exportFile = new File(exportFilePath);
+        this.file = new File(exportFilePath + SUFFIX);
+        this.query = query;
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    public String getPath() {
+        return file.getPath();
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Method to read the checkpoint and truncate the export file to the last checkpoint i.e. remove the work items
+     * that have been written after it.
+     *
+     * @throws AutomicException
+     *             if the checkpoint can not be read or does not belong to the export
+     */
+    public void restore() throws AutomicException {
+        Properties prop = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            prop.load(in);
+        } catch (IOException e) {
+            ConsoleWriter.writeln(e);
+            throw new AutomicException(String.format("Unable to read checkpoint file [%s] : %s", file,
+                    e.getMessage()));
+        }
+        if (!query.equals(prop.getProperty(QUERY))) {
+            throw new AutomicException(String.format("Checkpoint file [%s] belongs to a different export", file));
+        }
+        offset = CommonUtil.parseStringValue(prop.getProperty(OFFSET), -1);
+        fileLength = CommonUtil.parseLongValue(prop.getProperty(FILE_LENGTH), -1);
+        headers = CommonUtil.split(prop.getProperty(HEADERS), SEPARATOR);
+        fields = CommonUtil.split(prop.getProperty(FIELDS), SEPARATOR);
+        if (offset < 0 || fileLength < 0 || fields.isEmpty() || headers.size() != fields.size()) {
+            throw new AutomicException(String.format("Checkpoint file [%s] is invalid", file));
+        }
+        if (!exportFile.exists() || exportFile.length() < fileLength) {
+            throw new AutomicException(String.format("Export file [%s] does not match the checkpoint file [%s]",
+                    exportFile, file));
+        }
+        try (FileOutputStream out = new FileOutputStream(exportFile, true)) {
+            out.getChannel().truncate(fileLength);
+        } catch (IOException e) {
+            ConsoleWriter.writeln(e);
+            throw new AutomicException(String.format("Unable to truncate export file [%s] : %s", exportFile,
+                    e.getMessage()));
+        }
+    }
+
+    /**
+     * Method to record that the given number of work items have been written to the export file. The file has to be
+     * flushed before.
+     *
+     * @param offset
+     *            number of work items written
+     * @param headers
+     *            header of the export file
+     * @param fields
+     *            fields written for each work item
+     * @throws IOException
+     */
+    public void save(int offset, List<String> headers, List<String> fields) throws IOException {
+        Properties prop = new Properties();
+        prop.setProperty(QUERY, query);
+        prop.setProperty(OFFSET, String.valueOf(offset));
+        prop.setProperty(FILE_LENGTH, String.valueOf(exportFile.length()));
+        prop.setProperty(HEADERS, CommonUtil.join(headers, SEPARATOR));
+        prop.setProperty(FIELDS, CommonUtil.join(fields, SEPARATOR));
+        File temp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            prop.store(out, "Export checkpoint");
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void delete() {
+        if (file.exists() && !file.delete()) {
+            ConsoleWriter.writeln("Unable to delete checkpoint file " + file);
+        }
+    }
+}
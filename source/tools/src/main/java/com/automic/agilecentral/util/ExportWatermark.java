@@ -0,0 +1,114 @@
+package com.automic.agilecentral.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Properties;
+
+import com.automic.agilecentral.exception.AutomicException;
+
+/**
+ * Sidecar file of an incremental export which records the latest LastUpdateDate of the exported work items along with
+ * the exported fields, so that the next run only needs to fetch the work items changed since then.
+ *
+ */
+public class ExportWatermark {
+
+    private static final String SUFFIX = ".watermark";
+    private static final String LAST_UPDATE_DATE = "lastupdatedate";
+    private static final String HEADERS = "headers";
+    private static final String FIELDS = "fields";
+    private static final String QUERY = "query";
+    private static final String SEPARATOR = ",";
+
+    private final File file;
+    private final String query;
+
+    private String lastUpdateDate;
+    private List<String> headers;
+    private List<String> fields;
+
+    /**
+     * @param exportFilePath
+     *            path of the export file
+     * @param query
+     *            description of the export, a watermark only applies to the same export
+     */
+    public ExportWatermark(String exportFilePath, String query) {
+        this.file = new File(exportFilePath + SUFFIX);
+        this.query = query;
+    }
+
+    public String getLastUpdateDate() {
+        return lastUpdateDate;
+    }
+
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Method to read the watermark.
+     *
+     * @return true if a valid watermark of the same export has been read
+     * @throws AutomicException
+     */
+    public boolean load() throws AutomicException {
+        if (!file.exists()) {
+            return false;
+        }
+        Properties prop = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            prop.load(in);
+        } catch (IOException e) {
+            ConsoleWriter.writeln(e);
+            throw new AutomicException(String.format("Unable to read watermark file [%s] : %s", file,
+                    e.getMessage()));
+        }
+        lastUpdateDate = prop.getProperty(LAST_UPDATE_DATE);
+        headers = CommonUtil.split(prop.getProperty(HEADERS), SEPARATOR);
+        fields = CommonUtil.split(prop.getProperty(FIELDS), SEPARATOR);
+        return query.equals(prop.getProperty(QUERY)) && CommonUtil.checkNotEmpty(lastUpdateDate)
+                && !fields.isEmpty() && headers.size() == fields.size();
+    }
+
+    /**
+     * Method to record the latest LastUpdateDate of the exported work items.
+     *
+     * @param lastUpdateDate
+     * @param headers
+     *            header of the export file
+     * @param fields
+     *            fields written for each work item
+     * @throws AutomicException
+     */
+    public void save(String lastUpdateDate, List<String> headers, List<String> fields) throws AutomicException {
+        Properties prop = new Properties();
+        prop.setProperty(QUERY, query);
+        prop.setProperty(LAST_UPDATE_DATE, lastUpdateDate);
+        prop.setProperty(HEADERS, CommonUtil.join(headers, SEPARATOR));
+        prop.setProperty(FIELDS, CommonUtil.join(fields, SEPARATOR));
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (OutputStream out = new FileOutputStream(temp)) {
+                prop.store(out, "Export watermark");
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            ConsoleWriter.writeln(e);
+            throw new AutomicException(String.format("Unable to write watermark file [%s] : %s", file,
+                    e.getMessage()));
+        }
+    }
+}
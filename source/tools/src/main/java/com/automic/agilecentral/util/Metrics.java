@@ -0,0 +1,415 @@
+package com.automic.agilecentral.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import com.automic.agilecentral.constants.Constants;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Metrics of a single action run: number of requests, errors, retries, bytes sent and received and the latency
+ * distribution per WSAPI endpoint, as well as the time spent in the phases of the action e.g. resolving references or
+ * fetching a page. The metrics are bound to the thread running the action and are inherited by the threads it
+ * creates, so that concurrent runs of the daemon are measured separately. A summary is written to the file defined
+ * by {@value Constants#ENV_METRICS_FILE} and printed as output variables if {@value Constants#ENV_METRICS} is set.
+ *
+ */
+public final class Metrics {
+
+    /**
+     * Name of the phase of preparing the client and the common inputs
+     */
+    public static final String PREPARE = "prepareCommonInputs";
+    /**
+     * Name of the phase of the action specific execution
+     */
+    public static final String EXECUTE = "executeSpecific";
+    /**
+     * Name of the phase of resolving a workspace, project or work item reference
+     */
+    public static final String REF_RESOLUTION = "refResolution";
+    /**
+     * Name of the phase of fetching a page of query results, including the parsing of the response
+     */
+    public static final String QUERY_PAGE = "queryPage";
+    /**
+     * Name of the phase of writing a page of query results to the export file
+     */
+    public static final String WRITE_PAGE = "writePage";
+    /**
+     * Name of the phase of updating a single work item or a batch of work items
+     */
+    public static final String ITEM_UPDATE = "itemUpdate";
+    /**
+     * Name of the phase of creating a single work item or a batch of work items
+     */
+    public static final String ITEM_CREATE = "itemCreate";
+
+    private static final InheritableThreadLocal<Metrics> CURRENT = new InheritableThreadLocal<>();
+    // collects the metrics of code running outside of an action e.g. the benchmarks, they are never reported
+    private static final Metrics UNBOUND = new Metrics(-1);
+
+    private final long startMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final long jvmStartup;
+    private final Map<String, Stat> endpoints = new TreeMap<>();
+    private final Map<String, Stat> phases = new TreeMap<>();
+
+    private Metrics(long jvmStartup) {
+        this.jvmStartup = jvmStartup;
+    }
+
+    /**
+     * Method to start collecting the metrics of the action run by the current thread.
+     *
+     * @param jvmStartup
+     *            time in milliseconds from the start of the JVM to the start of the action, -1 if the JVM has been
+     *            started before e.g. by the daemon
+     * @return {@link Metrics}
+     */
+    public static Metrics start(long jvmStartup) {
+        Metrics metrics = new Metrics(jvmStartup);
+        CURRENT.set(metrics);
+        return metrics;
+    }
+
+    /**
+     * Method to stop collecting the metrics of the current thread.
+     */
+    public static void stop() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Method to get the metrics of the action run by the current thread.
+     *
+     * @return {@link Metrics}
+     */
+    public static Metrics current() {
+        Metrics metrics = CURRENT.get();
+        return metrics != null ? metrics : UNBOUND;
+    }
+
+    /**
+     * Method to record the time spent in a phase of the action.
+     *
+     * @param phase
+     *            name of the phase
+     * @param startNanos
+     *            value of {@link System#nanoTime()} when the phase started
+     */
+    public void phase(String phase, long startNanos) {
+        stat(phases, phase).record(System.nanoTime() - startNanos, 0, 0, false);
+    }
+
+    /**
+     * Method to record a request sent to CA Agile Central. Every attempt of a retried request is recorded.
+     *
+     * @param endpoint
+     *            endpoint as returned by {@link #endpoint(String, URI)}
+     * @param latencyNanos
+     *            time until the response has been read
+     * @param bytesOut
+     *            size of the request body
+     * @param bytesIn
+     *            size of the response body after it has been decompressed
+     * @param failed
+     *            true if the request failed or has been refused by the server
+     */
+    public void request(String endpoint, long latencyNanos, long bytesOut, long bytesIn, boolean failed) {
+        stat(endpoints, endpoint).record(latencyNanos, bytesOut, bytesIn, failed);
+    }
+
+    /**
+     * Method to record that a request is sent again.
+     *
+     * @param endpoint
+     *            endpoint as returned by {@link #endpoint(String, URI)}
+     */
+    public void retry(String endpoint) {
+        Stat stat = stat(endpoints, endpoint);
+        synchronized (stat) {
+            stat.retries++;
+        }
+    }
+
+    /**
+     * Method to name the endpoint of a request by its method and its path relative to the WSAPI version, object ids
+     * are replaced so that all the requests to the same type are counted together e.g. GET defect/{id}.
+     *
+     * @param method
+     *            HTTP method
+     * @param uri
+     *            URI of the request
+     * @return name of the endpoint
+     */
+    public static String endpoint(String method, URI uri) {
+        String path = uri.getPath() != null ? uri.getPath() : "";
+        int index = path.indexOf("/webservice/");
+        if (index >= 0) {
+            index = path.indexOf('/', index + "/webservice/".length());
+            path = index >= 0 ? path.substring(index + 1) : "";
+        } else if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        if (path.endsWith(".js")) {
+            path = path.substring(0, path.length() - 3);
+        }
+        StringBuilder name = new StringBuilder(method.length() + path.length() + 1).append(method).append(' ');
+        for (String segment : path.split("/")) {
+            if (name.charAt(name.length() - 1) != ' ') {
+                name.append('/');
+            }
+            name.append(isId(segment) ? "{id}" : segment.toLowerCase());
+        }
+        return name.toString();
+    }
+
+    private static boolean isId(String segment) {
+        if (segment.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (!(c >= '0' && c <= '9') && !(c == '-' && segment.length() == 36)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Stat stat(Map<String, Stat> stats, String name) {
+        synchronized (stats) {
+            Stat stat = stats.get(name);
+            if (stat == null) {
+                stat = new Stat();
+                stats.put(name, stat);
+            }
+            return stat;
+        }
+    }
+
+    /**
+     * Method to write the summary of the metrics as configured by the environment variables
+     * {@value Constants#ENV_METRICS_FILE} and {@value Constants#ENV_METRICS}.
+     */
+    public void report() {
+        String filePath = CommonUtil.getEnv(Constants.ENV_METRICS_FILE);
+        boolean variables = CommonUtil.convert2Bool(CommonUtil.getEnv(Constants.ENV_METRICS));
+        if (!CommonUtil.checkNotEmpty(filePath) && !variables) {
+            return;
+        }
+        long duration = System.nanoTime() - startNanos;
+        Stat total = new Stat();
+        synchronized (endpoints) {
+            for (Stat stat : endpoints.values()) {
+                synchronized (stat) {
+                    total.add(stat);
+                }
+            }
+        }
+        if (CommonUtil.checkNotEmpty(filePath)) {
+            File file = new File(filePath);
+            try {
+                writeJson(file, duration, total);
+                ConsoleWriter.writeln("UC4RB_AC_METRICS_FILE_PATH ::=" + file.getAbsolutePath());
+            } catch (IOException e) {
+                ConsoleWriter.writeln(String.format("Unable to write metrics to file [%s] : %s", file,
+                        e.getMessage()));
+            }
+        }
+        if (variables) {
+            ConsoleWriter.writeln("UC4RB_AC_METRICS_DURATION_MS ::=" + toMillis(duration));
+            ConsoleWriter.writeln("UC4RB_AC_METRICS_REQUESTS ::=" + total.count);
+            ConsoleWriter.writeln("UC4RB_AC_METRICS_ERRORS ::=" + total.errors);
+            ConsoleWriter.writeln("UC4RB_AC_METRICS_RETRIES ::=" + total.retries);
+            ConsoleWriter.writeln("UC4RB_AC_METRICS_BYTES_OUT ::=" + total.bytesOut);
+            ConsoleWriter.writeln("UC4RB_AC_METRICS_BYTES_IN ::=" + total.bytesIn);
+            ConsoleWriter.writeln("UC4RB_AC_METRICS_REQUEST_P50_MS ::=" + toMillis(total.histogram.percentile(50)));
+            ConsoleWriter.writeln("UC4RB_AC_METRICS_REQUEST_P99_MS ::=" + toMillis(total.histogram.percentile(99)));
+        }
+    }
+
+    private void writeJson(File file, long duration, Stat total) throws IOException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try (JsonWriter json = new JsonWriter(new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8))) {
+            json.setIndent("  ");
+            json.beginObject();
+            json.name("startTime").value(format.format(new Date(startMillis)));
+            json.name("durationMs").value(toMillis(duration));
+            if (jvmStartup >= 0) {
+                json.name("jvmStartupMs").value(jvmStartup);
+            }
+            json.name("requests");
+            writeStat(json, total, true);
+            json.name("endpoints");
+            writeStats(json, endpoints, true);
+            json.name("phases");
+            writeStats(json, phases, false);
+            json.endObject();
+        }
+    }
+
+    private static void writeStats(JsonWriter json, Map<String, Stat> stats, boolean request) throws IOException {
+        json.beginObject();
+        synchronized (stats) {
+            for (Map.Entry<String, Stat> entry : stats.entrySet()) {
+                json.name(entry.getKey());
+                synchronized (entry.getValue()) {
+                    writeStat(json, entry.getValue(), request);
+                }
+            }
+        }
+        json.endObject();
+    }
+
+    private static void writeStat(JsonWriter json, Stat stat, boolean request) throws IOException {
+        json.beginObject();
+        json.name("count").value(stat.count);
+        if (request) {
+            json.name("errors").value(stat.errors);
+            json.name("retries").value(stat.retries);
+            json.name("bytesOut").value(stat.bytesOut);
+            json.name("bytesIn").value(stat.bytesIn);
+        }
+        json.name("totalMs").value(toMillis(stat.histogram.sum));
+        json.name("latencyMs");
+        json.beginObject();
+        json.name("min").value(toMillis(stat.histogram.min()));
+        json.name("mean").value(stat.count > 0 ? toMillis(stat.histogram.sum / stat.count) : 0);
+        json.name("p50").value(toMillis(stat.histogram.percentile(50)));
+        json.name("p90").value(toMillis(stat.histogram.percentile(90)));
+        json.name("p99").value(toMillis(stat.histogram.percentile(99)));
+        json.name("max").value(toMillis(stat.histogram.max));
+        json.endObject();
+        json.endObject();
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    /**
+     * Counters of an endpoint or a phase.
+     */
+    private static final class Stat {
+
+        private final Histogram histogram = new Histogram();
+        private long count;
+        private long errors;
+        private long retries;
+        private long bytesOut;
+        private long bytesIn;
+
+        synchronized void record(long latencyNanos, long out, long in, boolean failed) {
+            count++;
+            if (failed) {
+                errors++;
+            }
+            bytesOut += out;
+            bytesIn += in;
+            histogram.record(latencyNanos);
+        }
+
+        void add(Stat other) {
+            count += other.count;
+            errors += other.errors;
+            retries += other.retries;
+            bytesOut += other.bytesOut;
+            bytesIn += other.bytesIn;
+            histogram.add(other.histogram);
+        }
+    }
+
+    /**
+     * Histogram of latencies in microseconds with 8 linear buckets per power of two, hence percentiles are accurate
+     * to about 12%.
+     */
+    private static final class Histogram {
+
+        private static final int LINEAR = 16;
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int MAX_BITS = 42;
+
+        private final long[] buckets = new long[LINEAR + (MAX_BITS - 4) * SUB_BUCKETS];
+        private long count;
+        private long sum;
+        private long min = Long.MAX_VALUE;
+        private long max;
+
+        void record(long nanos) {
+            long micros = Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 0);
+            buckets[index(micros)]++;
+            count++;
+            sum += nanos;
+            min = Math.min(min, nanos);
+            max = Math.max(max, nanos);
+        }
+
+        void add(Histogram other) {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] += other.buckets[i];
+            }
+            count += other.count;
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+
+        long min() {
+            return count > 0 ? min : 0;
+        }
+
+        // upper bound of the bucket holding the percentile, limited by the values recorded
+        long percentile(double percentile) {
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.max(Math.min(TimeUnit.MICROSECONDS.toNanos(upperBound(i)), max), min);
+                }
+            }
+            return max;
+        }
+
+        private static int index(long micros) {
+            if (micros < LINEAR) {
+                return (int) micros;
+            }
+            int bits = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_BITS - 1);
+            int sub = (int) (micros >>> (bits - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return Math.min(LINEAR + (bits - 4) * SUB_BUCKETS + sub, LINEAR + (MAX_BITS - 4) * SUB_BUCKETS - 1);
+        }
+
+        private static long lowerBound(int index) {
+            if (index < LINEAR) {
+                return index;
+            }
+            int bits = (index - LINEAR) / SUB_BUCKETS + 4;
+            int sub = (index - LINEAR) % SUB_BUCKETS;
+            return (long) (SUB_BUCKETS + sub) << (bits - SUB_BUCKET_BITS);
+        }
+
+        private static long upperBound(int index) {
+            if (index < LINEAR) {
+                return index + 1;
+            }
+            int bits = (index - LINEAR) / SUB_BUCKETS + 4;
+            return lowerBound(index) + (1L << (bits - SUB_BUCKET_BITS));
+        }
+    }
+}
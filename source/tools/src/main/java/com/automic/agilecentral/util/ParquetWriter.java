@@ -0,0 +1,943 @@
+package com.automic.agilecentral.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * This Class used to create Apache Parquet file. Every field is an optional column whose type is given by the caller
+ * or derived from its first value, and widened to DOUBLE or STRING as soon as a value does not match it, so that no
+ * value is lost. Strings with repeated values are dictionary encoded and the pages are compressed by gzip. As the
+ * types are only final once all the records have been written, the records are buffered until the writer is finished,
+ * records exceeding the size of a row group are spilled to a temporary file next to the parquet file.
+ *
+ */
+public class ParquetWriter implements RecordWriter {
+
+    /**
+     * Type of a column.
+     */
+    public enum ColumnType {
+        BOOLEAN(0), INT64(2), DOUBLE(5), TIMESTAMP(2), STRING(6);
+
+        private final int physicalType;
+
+        private ColumnType(int physicalType) {
+            this.physicalType = physicalType;
+        }
+
+        /**
+         * Method to derive the type of the column from a value of the field. Numbers are integers unless they have a
+         * fraction or an exponent, strings which are dates in UTC are timestamps and referenced objects are
+         * represented by their names.
+         *
+         * @param value
+         *            value of the field, may be null
+         * @return column type, null if the value is null and does not tell the type
+         */
+        public static ColumnType of(JsonElement value) {
+            if (value == null || value.isJsonNull()) {
+                return null;
+            }
+            if (!value.isJsonPrimitive()) {
+                return STRING;
+            }
+            JsonPrimitive primitive = value.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                return BOOLEAN;
+            }
+            if (primitive.isNumber()) {
+                String number = primitive.getAsString();
+                return number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0 ? INT64
+                        : DOUBLE;
+            }
+            return parseTimestamp(primitive.getAsString()) != NO_TIMESTAMP ? TIMESTAMP : STRING;
+        }
+
+        /**
+         * Method to get the type which holds the values of both types e.g. DOUBLE for integers and doubles.
+         *
+         * @param first
+         *            type, may be null if unknown
+         * @param second
+         *            type, may be null if unknown
+         * @return common type, null if both types are unknown
+         */
+        public static ColumnType common(ColumnType first, ColumnType second) {
+            if (first == null || first == second) {
+                return second;
+            }
+            if (second == null) {
+                return first;
+            }
+            if ((first == INT64 || first == DOUBLE) && (second == INT64 || second == DOUBLE)) {
+                return DOUBLE;
+            }
+            return STRING;
+        }
+
+        // Type of a column whose type is unknown, numbers are only recognized in the form of JSON numbers so that
+        // e.g. leading zeros of a text are not lost.
+        private static ColumnType infer(String value) {
+            if (parseBoolean(value) != null) {
+                return BOOLEAN;
+            }
+            if (parseLong(value) != null) {
+                return INT64;
+            }
+            return parseTimestamp(value) != NO_TIMESTAMP ? TIMESTAMP : STRING;
+        }
+
+        // type which holds the value as well as the values of this type
+        private ColumnType widen(String value) {
+            switch (this) {
+                case BOOLEAN:
+                    return parseBoolean(value) != null ? this : STRING;
+                case INT64:
+                    if (parseLong(value) != null) {
+                        return this;
+                    }
+                    return parseDouble(value) != null ? DOUBLE : STRING;
+                case DOUBLE:
+                    return parseDouble(value) != null ? this : STRING;
+                case TIMESTAMP:
+                    return parseTimestamp(value) != NO_TIMESTAMP ? this : STRING;
+                default:
+                    return this;
+            }
+        }
+    }
+
+    private static final byte[] MAGIC = "PAR1".getBytes(StandardCharsets.US_ASCII);
+    private static final String CREATED_BY = "agilecentral-tool";
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    private static final Pattern JSON_NUMBER = Pattern.compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long ROW_GROUP_SIZE = 64L * 1024 * 1024;
+    private static final int PAGE_SIZE = 1024 * 1024;
+    private static final int MAX_PAGE_ROWS = 20000;
+    private static final int MAX_DICTIONARY_SIZE = 1024 * 1024;
+
+    // values of the enums of the parquet format
+    private static final int REPETITION_OPTIONAL = 1;
+    private static final int CONVERTED_UTF8 = 0;
+    private static final int CONVERTED_TIMESTAMP_MILLIS = 9;
+    private static final int ENCODING_PLAIN = 0;
+    private static final int ENCODING_PLAIN_DICTIONARY = 2;
+    private static final int ENCODING_RLE = 3;
+    private static final int CODEC_GZIP = 2;
+    private static final int PAGE_DATA = 0;
+    private static final int PAGE_DICTIONARY = 2;
+
+    private final File file;
+    private final OutputStream out;
+    private final List<String> headers;
+    private final ColumnType[] types;
+    private final boolean[] widened;
+    private final List<RowGroup> rowGroups = new ArrayList<>();
+    private long position;
+    private long totalRows;
+
+    // records which did not fit into the buffer of a row group
+    private File spillFile;
+    private DataOutputStream spill;
+
+    private String[][] columns;
+    private int rowCount;
+    private long bufferedSize;
+    private boolean finished;
+
+    // reusable buffers of the pages
+    private final Bytes values = new Bytes(PAGE_SIZE);
+    private final Bytes levels = new Bytes(BUFFER_SIZE);
+    private final Bytes page = new Bytes(PAGE_SIZE);
+    private final Bytes compressed = new Bytes(PAGE_SIZE);
+    private final Bytes header = new Bytes(BUFFER_SIZE);
+    private final int[] definitionLevels = new int[MAX_PAGE_ROWS];
+    private final int[] dictionaryIndexes = new int[MAX_PAGE_ROWS];
+
+    /**
+     * Create a writer of a new parquet file.
+     *
+     * @param filePath
+     * @param headers
+     *            names of the columns
+     * @param types
+     *            expected types of the columns, null if the type of a column is unknown
+     * @throws IOException
+     */
+    public ParquetWriter(String filePath, List<String> headers, List<ColumnType> types) throws IOException {
+        this.file = new File(filePath);
+        this.headers = new ArrayList<>(headers);
+        this.types = new ColumnType[headers.size()];
+        for (int i = 0; i < this.types.length && i < types.size(); i++) {
+            this.types[i] = types.get(i);
+        }
+        this.widened = new boolean[headers.size()];
+        this.columns = new String[headers.size()][MAX_PAGE_ROWS];
+        this.out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+        write(MAGIC, MAGIC.length);
+    }
+
+    @Override
+    public void writeLine(List<String> values) throws IOException {
+        ensureCapacity();
+        for (int i = 0; i < columns.length; i++) {
+            add(i, values.get(i));
+        }
+        endRow();
+    }
+
+    @Override
+    public void writeLine(String[] values) throws IOException {
+        ensureCapacity();
+        for (int i = 0; i < columns.length; i++) {
+            add(i, values[i]);
+        }
+        endRow();
+    }
+
+    /**
+     * The records are written when the writer is finished, hence there is nothing to flush before.
+     */
+    @Override
+    public void flush() throws IOException {
+        // row groups are written once the types are final
+    }
+
+    /**
+     * The file is only complete once it has been finished, hence a parquet export can not be resumed.
+     */
+    @Override
+    public void sync() throws IOException {
+        flush();
+    }
+
+    /**
+     * Method to write the row groups and the footer. If the file could not be completed, the partial file is deleted.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] == null) {
+                types[i] = ColumnType.STRING;
+            }
+        }
+        boolean complete = false;
+        try {
+            if (spill != null) {
+                spillRows();
+                spill.close();
+                spill = null;
+                writeSpilledRows();
+            }
+            writeRowGroup();
+            writeFooter();
+            out.close();
+            complete = true;
+        } finally {
+            try {
+                release();
+            } finally {
+                if (!complete && !file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        }
+        for (int i = 0; i < widened.length; i++) {
+            if (widened[i]) {
+                ConsoleWriter.writeln(String.format("Values of field [%s] have been written as %s", headers.get(i),
+                        types[i]));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            finish();
+        } catch (IOException ie) {
+            ConsoleWriter.writeln(ie);
+        }
+    }
+
+    private void release() throws IOException {
+        try {
+            out.close();
+            if (spill != null) {
+                spill.close();
+                spill = null;
+            }
+        } finally {
+            if (spillFile != null && !spillFile.delete()) {
+                spillFile.deleteOnExit();
+            }
+        }
+    }
+
+    private void add(int column, String value) {
+        columns[column][rowCount] = value;
+        if (value != null) {
+            bufferedSize += value.length();
+            ColumnType type = types[column];
+            if (type == null) {
+                types[column] = ColumnType.infer(value);
+            } else if (type.widen(value) != type) {
+                types[column] = type.widen(value);
+                widened[column] = true;
+            }
+        }
+    }
+
+    private void endRow() throws IOException {
+        rowCount++;
+        bufferedSize += columns.length;
+        if (bufferedSize >= ROW_GROUP_SIZE) {
+            spillRows();
+        }
+    }
+
+    // Append the buffered rows to the spill file, each value as its length, -1 for null, followed by its bytes.
+    private void spillRows() throws IOException {
+        if (spill == null) {
+            spillFile = File.createTempFile(file.getName(), ".spill", file.getAbsoluteFile().getParentFile());
+            spill = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile), BUFFER_SIZE));
+        }
+        for (int row = 0; row < rowCount; row++) {
+            for (String[] column : columns) {
+                String value = column[row];
+                if (value == null) {
+                    spill.writeInt(-1);
+                } else {
+                    byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                    spill.writeInt(utf8.length);
+                    spill.write(utf8);
+                }
+            }
+        }
+        for (String[] column : columns) {
+            Arrays.fill(column, 0, rowCount, null);
+        }
+        rowCount = 0;
+        bufferedSize = 0;
+    }
+
+    // Read the spilled rows back and write them as row groups of the final types.
+    private void writeSpilledRows() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile),
+                BUFFER_SIZE))) {
+            byte[] utf8 = new byte[BUFFER_SIZE];
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                ensureCapacity();
+                for (int i = 0; i < columns.length; i++) {
+                    if (i > 0) {
+                        length = in.readInt();
+                    }
+                    String value = null;
+                    if (length >= 0) {
+                        if (utf8.length < length) {
+                            utf8 = new byte[length];
+                        }
+                        in.readFully(utf8, 0, length);
+                        value = new String(utf8, 0, length, StandardCharsets.UTF_8);
+                        bufferedSize += value.length();
+                    }
+                    columns[i][rowCount] = value;
+                }
+                rowCount++;
+                bufferedSize += columns.length;
+                if (bufferedSize >= ROW_GROUP_SIZE) {
+                    writeRowGroup();
+                }
+            }
+        }
+    }
+
+    private void ensureCapacity() {
+        if (rowCount == columns[0].length) {
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = Arrays.copyOf(columns[i], rowCount * 2);
+            }
+        }
+    }
+
+    private void writeRowGroup() throws IOException {
+        if (rowCount == 0) {
+            return;
+        }
+        RowGroup rowGroup = new RowGroup(rowCount);
+        for (int i = 0; i < columns.length; i++) {
+            ColumnChunk chunk = writeColumn(i);
+            rowGroup.columns.add(chunk);
+            rowGroup.totalByteSize += chunk.uncompressedSize;
+            Arrays.fill(columns[i], 0, rowCount, null);
+        }
+        rowGroups.add(rowGroup);
+        totalRows += rowCount;
+        rowCount = 0;
+        bufferedSize = 0;
+    }
+
+    // Write the pages of the column, strings whose values repeat are written as indexes into a dictionary.
+    private ColumnChunk writeColumn(int column) throws IOException {
+        String[] data = columns[column];
+        ColumnType type = types[column];
+        ColumnChunk chunk = new ColumnChunk(column, position);
+        Map<String, Integer> dictionary = type == ColumnType.STRING ? writeDictionary(chunk, data) : null;
+        int bitWidth = dictionary != null ? 32 - Integer.numberOfLeadingZeros(Math.max(dictionary.size() - 1, 0))
+                : 0;
+        chunk.dataPageOffset = position;
+        int from = 0;
+        while (from < rowCount) {
+            values.reset();
+            int count = 0;
+            int bits = 0;
+            int bitCount = 0;
+            while (from + count < rowCount && count < MAX_PAGE_ROWS && values.size() < PAGE_SIZE) {
+                String value = data[from + count];
+                boolean defined = value != null;
+                if (!defined) {
+                    chunk.nullCount++;
+                } else if (dictionary != null) {
+                    dictionaryIndexes[chunk.pageValues] = dictionary.get(value);
+                } else if (type == ColumnType.BOOLEAN) {
+                    bits |= (parseBoolean(value) ? 1 : 0) << bitCount;
+                    if (++bitCount == 8) {
+                        values.write(bits);
+                        bits = 0;
+                        bitCount = 0;
+                    }
+                } else {
+                    writePlain(chunk, type, value);
+                }
+                definitionLevels[count] = defined ? 1 : 0;
+                chunk.pageValues += defined ? 1 : 0;
+                count++;
+            }
+            if (bitCount > 0) {
+                values.write(bits);
+            }
+            page.reset();
+            levels.reset();
+            writeHybrid(levels, definitionLevels, count, 1);
+            page.writeIntLittleEndian(levels.size());
+            levels.writeTo(page);
+            if (dictionary != null) {
+                page.write(bitWidth);
+                writeHybrid(page, dictionaryIndexes, chunk.pageValues, bitWidth);
+            } else {
+                values.writeTo(page);
+            }
+            writePage(chunk, PAGE_DATA, count, dictionary != null ? ENCODING_PLAIN_DICTIONARY : ENCODING_PLAIN);
+            chunk.pageValues = 0;
+            from += count;
+        }
+        return chunk;
+    }
+
+    // Write the distinct values as dictionary page unless they hardly repeat or the dictionary gets too large.
+    private Map<String, Integer> writeDictionary(ColumnChunk chunk, String[] data) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        page.reset();
+        for (int i = 0; i < rowCount; i++) {
+            String value = data[i];
+            if (value != null && !dictionary.containsKey(value)) {
+                if (dictionary.size() >= rowCount / 2 || page.size() >= MAX_DICTIONARY_SIZE) {
+                    return null;
+                }
+                dictionary.put(value, dictionary.size());
+                writeString(page, value);
+            }
+        }
+        if (dictionary.isEmpty()) {
+            return null;
+        }
+        chunk.dictionaryPageOffset = position;
+        writePage(chunk, PAGE_DICTIONARY, dictionary.size(), ENCODING_PLAIN_DICTIONARY);
+        return dictionary;
+    }
+
+    // Write the value in plain encoding, the type has been widened to match every value of the column.
+    private void writePlain(ColumnChunk chunk, ColumnType type, String value) {
+        switch (type) {
+            case INT64:
+            case TIMESTAMP:
+                long longValue = type == ColumnType.TIMESTAMP ? parseTimestamp(value) : parseLong(value);
+                values.writeLongLittleEndian(longValue);
+                chunk.updateStatistics(longValue);
+                break;
+            case DOUBLE:
+                double doubleValue = parseDouble(value);
+                values.writeLongLittleEndian(Double.doubleToLongBits(doubleValue));
+                chunk.updateStatistics(doubleValue);
+                break;
+            default:
+                writeString(values, value);
+        }
+    }
+
+    private static Boolean parseBoolean(String value) {
+        if ("true".equalsIgnoreCase(value)) {
+            return Boolean.TRUE;
+        }
+        return "false".equalsIgnoreCase(value) ? Boolean.FALSE : null;
+    }
+
+    // integer in the form of a JSON number, null if the value is no such integer
+    private static Long parseLong(String value) {
+        if (!JSON_NUMBER.matcher(value).matches()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // JSON number, null if the value is no JSON number
+    private static Double parseDouble(String value) {
+        return JSON_NUMBER.matcher(value).matches() ? Double.valueOf(value) : null;
+    }
+
+    private static void writeString(Bytes bytes, String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        bytes.writeIntLittleEndian(utf8.length);
+        bytes.write(utf8, 0, utf8.length);
+    }
+
+    // Compress the page and write it along with its header.
+    private void writePage(ColumnChunk chunk, int pageType, int valueCount, int encoding) throws IOException {
+        compressed.reset();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, BUFFER_SIZE)) {
+            page.writeTo(gzip);
+        }
+        header.reset();
+        ThriftWriter thrift = new ThriftWriter(header);
+        thrift.structBegin();
+        thrift.i32(1, pageType);
+        thrift.i32(2, page.size());
+        thrift.i32(3, compressed.size());
+        thrift.structField(pageType == PAGE_DATA ? 5 : 7);
+        thrift.i32(1, valueCount);
+        thrift.i32(2, encoding);
+        if (pageType == PAGE_DATA) {
+            thrift.i32(3, ENCODING_RLE);
+            thrift.i32(4, ENCODING_RLE);
+        }
+        thrift.structEnd();
+        thrift.structEnd();
+        write(header.buffer(), header.size());
+        write(compressed.buffer(), compressed.size());
+        chunk.uncompressedSize += header.size() + page.size();
+        chunk.compressedSize += header.size() + compressed.size();
+    }
+
+    private void writeFooter() throws IOException {
+        Bytes footer = new Bytes(BUFFER_SIZE);
+        ThriftWriter thrift = new ThriftWriter(footer);
+        thrift.structBegin();
+        thrift.i32(1, 1);
+        thrift.listBegin(2, ThriftWriter.STRUCT, headers.size() + 1);
+        thrift.structBegin();
+        thrift.string(4, "schema");
+        thrift.i32(5, headers.size());
+        thrift.structEnd();
+        for (int i = 0; i < headers.size(); i++) {
+            writeSchemaElement(thrift, headers.get(i), types[i]);
+        }
+        thrift.i64(3, totalRows);
+        thrift.listBegin(4, ThriftWriter.STRUCT, rowGroups.size());
+        for (RowGroup rowGroup : rowGroups) {
+            thrift.structBegin();
+            thrift.listBegin(1, ThriftWriter.STRUCT, rowGroup.columns.size());
+            for (ColumnChunk chunk : rowGroup.columns) {
+                writeColumnChunk(thrift, chunk);
+            }
+            thrift.i64(2, rowGroup.totalByteSize);
+            thrift.i64(3, rowGroup.rowCount);
+            thrift.structEnd();
+        }
+        thrift.string(6, CREATED_BY);
+        thrift.structEnd();
+        footer.writeIntLittleEndian(footer.size());
+        footer.write(MAGIC, 0, MAGIC.length);
+        write(footer.buffer(), footer.size());
+    }
+
+    private static void writeSchemaElement(ThriftWriter thrift, String name, ColumnType type) {
+        thrift.structBegin();
+        thrift.i32(1, type.physicalType);
+        thrift.i32(3, REPETITION_OPTIONAL);
+        thrift.string(4, name);
+        if (type == ColumnType.STRING) {
+            thrift.i32(6, CONVERTED_UTF8);
+            // logical type STRING
+            thrift.structField(10);
+            thrift.structField(1);
+            thrift.structEnd();
+            thrift.structEnd();
+        } else if (type == ColumnType.TIMESTAMP) {
+            thrift.i32(6, CONVERTED_TIMESTAMP_MILLIS);
+            // logical type TIMESTAMP adjusted to UTC in milliseconds
+            thrift.structField(10);
+            thrift.structField(8);
+            thrift.bool(1, true);
+            thrift.structField(2);
+            thrift.structField(1);
+            thrift.structEnd();
+            thrift.structEnd();
+            thrift.structEnd();
+            thrift.structEnd();
+        }
+        thrift.structEnd();
+    }
+
+    private void writeColumnChunk(ThriftWriter thrift, ColumnChunk chunk) {
+        ColumnType type = types[chunk.column];
+        thrift.structBegin();
+        thrift.i64(2, chunk.offset);
+        thrift.structField(3);
+        thrift.i32(1, type.physicalType);
+        boolean dictionary = chunk.dictionaryPageOffset >= 0;
+        thrift.listBegin(2, ThriftWriter.I32, 2);
+        thrift.listI32(dictionary ? ENCODING_PLAIN_DICTIONARY : ENCODING_PLAIN);
+        thrift.listI32(ENCODING_RLE);
+        thrift.listBegin(3, ThriftWriter.BINARY, 1);
+        thrift.listString(headers.get(chunk.column));
+        thrift.i32(4, CODEC_GZIP);
+        thrift.i64(5, chunk.rowCount);
+        thrift.i64(6, chunk.uncompressedSize);
+        thrift.i64(7, chunk.compressedSize);
+        thrift.i64(9, chunk.dataPageOffset);
+        if (dictionary) {
+            thrift.i64(11, chunk.dictionaryPageOffset);
+        }
+        thrift.structField(12);
+        thrift.i64(3, chunk.nullCount);
+        if (chunk.hasMinMax) {
+            thrift.binary(5, littleEndian(type == ColumnType.DOUBLE ? Double.doubleToLongBits(chunk.maxDouble)
+                    : chunk.max));
+            thrift.binary(6, littleEndian(type == ColumnType.DOUBLE ? Double.doubleToLongBits(chunk.minDouble)
+                    : chunk.min));
+        }
+        thrift.structEnd();
+        thrift.structEnd();
+        thrift.structEnd();
+    }
+
+    private void write(byte[] bytes, int length) throws IOException {
+        out.write(bytes, 0, length);
+        position += length;
+    }
+
+    private static byte[] littleEndian(long value) {
+        byte[] bytes = new byte[8];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (value >>> (8 * i));
+        }
+        return bytes;
+    }
+
+    // Write the values in the RLE/bit-packing hybrid encoding, runs of at least 8 equal values are run length encoded
+    // and all other values are bit-packed in groups of 8.
+    private static void writeHybrid(Bytes bytes, int[] data, int count, int bitWidth) {
+        int i = 0;
+        while (i < count) {
+            int run = runLength(data, i, count);
+            if (run >= 8) {
+                bytes.writeUnsignedVarInt(run << 1);
+                for (int b = 0; b < (bitWidth + 7) / 8; b++) {
+                    bytes.write(data[i] >>> (8 * b));
+                }
+                i += run;
+                continue;
+            }
+            int start = i;
+            int groups = 0;
+            do {
+                i = Math.min(i + 8, count);
+                groups++;
+            } while (i < count && runLength(data, i, count) < 8);
+            bytes.writeUnsignedVarInt(groups << 1 | 1);
+            long buffer = 0;
+            int buffered = 0;
+            for (int v = start; v < start + groups * 8; v++) {
+                buffer |= (long) (v < count ? data[v] : 0) << buffered;
+                buffered += bitWidth;
+                while (buffered >= 8) {
+                    bytes.write((int) buffer);
+                    buffer >>>= 8;
+                    buffered -= 8;
+                }
+            }
+        }
+    }
+
+    // number of equal values starting at the index
+    private static int runLength(int[] data, int index, int count) {
+        int end = index + 1;
+        while (end < count && data[end] == data[index]) {
+            end++;
+        }
+        return end - index;
+    }
+
+    /**
+     * Method to parse a date in UTC like 2017-01-01T10:00:00.000Z.
+     *
+     * @param value
+     * @return milliseconds since the epoch or {@link #NO_TIMESTAMP} if the value is no such date
+     */
+    private static long parseTimestamp(String value) {
+        int length = value.length();
+        if ((length != 20 && length != 24) || value.charAt(4) != '-' || value.charAt(7) != '-'
+                || value.charAt(10) != 'T' || value.charAt(13) != ':' || value.charAt(16) != ':'
+                || value.charAt(length - 1) != 'Z' || (length == 24 && value.charAt(19) != '.')) {
+            return NO_TIMESTAMP;
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 2);
+        int day = digits(value, 8, 2);
+        int hour = digits(value, 11, 2);
+        int minute = digits(value, 14, 2);
+        int second = digits(value, 17, 2);
+        int millis = length == 24 ? digits(value, 20, 3) : 0;
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23 || minute < 0
+                || minute > 59 || second < 0 || second > 60 || millis < 0) {
+            return NO_TIMESTAMP;
+        }
+        // days since the epoch of the proleptic gregorian calendar
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097L + dayOfEra - 719468;
+        return (((days * 24 + hour) * 60 + minute) * 60 + second) * 1000 + millis;
+    }
+
+    private static int digits(String value, int from, int count) {
+        int result = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + c - '0';
+        }
+        return result;
+    }
+
+    private static final class RowGroup {
+
+        private final int rowCount;
+        private final List<ColumnChunk> columns = new ArrayList<>();
+        private long totalByteSize;
+
+        RowGroup(int rowCount) {
+            this.rowCount = rowCount;
+        }
+    }
+
+    private final class ColumnChunk {
+
+        private final int column;
+        private final long offset;
+        private final int rowCount;
+        private long dictionaryPageOffset = -1;
+        private long dataPageOffset;
+        private long uncompressedSize;
+        private long compressedSize;
+        private long nullCount;
+        // number of defined values of the current page
+        private int pageValues;
+
+        // statistics of the numbers and timestamps
+        private boolean hasMinMax;
+        private long min;
+        private long max;
+        private double minDouble;
+        private double maxDouble;
+
+        ColumnChunk(int column, long offset) {
+            this.column = column;
+            this.offset = offset;
+            this.rowCount = ParquetWriter.this.rowCount;
+        }
+
+        void updateStatistics(long value) {
+            min = hasMinMax ? Math.min(min, value) : value;
+            max = hasMinMax ? Math.max(max, value) : value;
+            hasMinMax = true;
+        }
+
+        void updateStatistics(double value) {
+            if (!Double.isNaN(value)) {
+                minDouble = hasMinMax ? Math.min(minDouble, value) : value;
+                maxDouble = hasMinMax ? Math.max(maxDouble, value) : value;
+                hasMinMax = true;
+            }
+        }
+    }
+
+    /**
+     * Byte buffer giving access to its content and writing the primitive encodings of the parquet format.
+     */
+    private static final class Bytes extends ByteArrayOutputStream {
+
+        Bytes(int size) {
+            super(size);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        void writeIntLittleEndian(int value) {
+            write(value);
+            write(value >>> 8);
+            write(value >>> 16);
+            write(value >>> 24);
+        }
+
+        void writeLongLittleEndian(long value) {
+            writeIntLittleEndian((int) value);
+            writeIntLittleEndian((int) (value >>> 32));
+        }
+
+        void writeUnsignedVarInt(long value) {
+            long remaining = value;
+            while ((remaining & ~0x7FL) != 0) {
+                write((int) ((remaining & 0x7F) | 0x80));
+                remaining >>>= 7;
+            }
+            write((int) remaining);
+        }
+    }
+
+    /**
+     * Writer of the thrift compact protocol the metadata of the parquet format is encoded in.
+     */
+    private static final class ThriftWriter {
+
+        static final int BOOLEAN_TRUE = 1;
+        static final int BOOLEAN_FALSE = 2;
+        static final int I32 = 5;
+        static final int I64 = 6;
+        static final int BINARY = 8;
+        static final int LIST = 9;
+        static final int STRUCT = 12;
+
+        private final Bytes bytes;
+        private final int[] lastFieldIds = new int[16];
+        private int depth;
+        private int lastFieldId;
+
+        ThriftWriter(Bytes bytes) {
+            this.bytes = bytes;
+        }
+
+        void structBegin() {
+            lastFieldIds[depth++] = lastFieldId;
+            lastFieldId = 0;
+        }
+
+        void structEnd() {
+            bytes.write(0);
+            lastFieldId = lastFieldIds[--depth];
+        }
+
+        void structField(int id) {
+            fieldHeader(id, STRUCT);
+            structBegin();
+        }
+
+        void i32(int id, int value) {
+            fieldHeader(id, I32);
+            bytes.writeUnsignedVarInt(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+        }
+
+        void i64(int id, long value) {
+            fieldHeader(id, I64);
+            bytes.writeUnsignedVarInt((value << 1) ^ (value >> 63));
+        }
+
+        void bool(int id, boolean value) {
+            fieldHeader(id, value ? BOOLEAN_TRUE : BOOLEAN_FALSE);
+        }
+
+        void binary(int id, byte[] value) {
+            fieldHeader(id, BINARY);
+            bytes.writeUnsignedVarInt(value.length);
+            bytes.write(value, 0, value.length);
+        }
+
+        void string(int id, String value) {
+            binary(id, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void listBegin(int id, int elementType, int size) {
+            fieldHeader(id, LIST);
+            if (size < 15) {
+                bytes.write(size << 4 | elementType);
+            } else {
+                bytes.write(0xF0 | elementType);
+                bytes.writeUnsignedVarInt(size);
+            }
+        }
+
+        void listI32(int value) {
+            bytes.writeUnsignedVarInt(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+        }
+
+        void listString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            bytes.writeUnsignedVarInt(utf8.length);
+            bytes.write(utf8, 0, utf8.length);
+        }
+
+        private void fieldHeader(int id, int type) {
+            int delta = id - lastFieldId;
+            if (delta > 0 && delta <= 15) {
+                bytes.write(delta << 4 | type);
+            } else {
+                bytes.write(type);
+                bytes.writeUnsignedVarInt(((id << 1) ^ (id >> 31)) & 0xFFFFFFFFL);
+            }
+            lastFieldId = id;
+        }
+    }
+}
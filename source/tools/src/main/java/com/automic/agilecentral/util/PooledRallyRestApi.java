@@ -0,0 +1,519 @@
+package com.automic.agilecentral.util;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.DecompressingHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import com.automic.agilecentral.constants.Constants;
+import com.automic.agilecentral.exception.AutomicException;
+import com.google.gson.JsonObject;
+import com.rallydev.rest.RallyRestApi;
+import com.rallydev.rest.client.ApiKeyClient;
+import com.rallydev.rest.client.BasicAuthClient;
+import com.rallydev.rest.client.HttpClient;
+import com.rallydev.rest.request.CreateRequest;
+import com.rallydev.rest.request.QueryRequest;
+import com.rallydev.rest.response.CreateResponse;
+import com.rallydev.rest.util.Fetch;
+
+/**
+ * {@link RallyRestApi} backed by a pooling connection manager so that a single instance can be shared by several
+ * threads. The default Rally client uses a single connection manager which does not allow concurrent requests.
+ * Connections are kept alive between requests and all clients share the SSL socket factory, so TLS sessions are
+ * resumed instead of performing a full handshake for every new connection. All requests pass a {@link RequestGovernor}
+ * which paces them to what the server sustains and retries them when the server throttles or a transient error occurs.
+ *
+ */
+public final class PooledRallyRestApi extends RallyRestApi {
+
+    private static final int HTTP_PORT = 80;
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    private static SSLSocketFactory sslSocketFactory;
+
+    private final StreamingClient streamingClient;
+    private final RequestGovernor governor;
+    private final String identity;
+
+    private PooledRallyRestApi(HttpClient client, StreamingClient streamingClient, RequestGovernor governor,
+            String identity) {
+        super(client);
+        this.streamingClient = streamingClient;
+        this.governor = governor;
+        this.identity = identity;
+    }
+
+    /**
+     * Create a client which authenticates using the API key.
+     *
+     * @param server
+     *            CA Agile Central URL
+     * @param apiKey
+     *            API key
+     * @param settings
+     *            settings of the connection pool
+     * @return {@link PooledRallyRestApi}
+     */
+    public static PooledRallyRestApi withApiKey(URI server, String apiKey, PoolSettings settings) {
+        RequestGovernor governor = settings.createGovernor();
+        PooledApiKeyClient client = new PooledApiKeyClient(server, apiKey, settings, governor);
+        return new PooledRallyRestApi(client, client, governor, hash("apikey:" + apiKey));
+    }
+
+    /**
+     * Create a client which authenticates using username and password.
+     *
+     * @param server
+     *            CA Agile Central URL
+     * @param userName
+     *            username
+     * @param password
+     *            password
+     * @param settings
+     *            settings of the connection pool
+     * @return {@link PooledRallyRestApi}
+     */
+    public static PooledRallyRestApi withBasicAuth(URI server, String userName, String password,
+            PoolSettings settings) {
+        RequestGovernor governor = settings.createGovernor();
+        PooledBasicAuthClient client = new PooledBasicAuthClient(server, userName, password, settings, governor);
+        return new PooledRallyRestApi(client, client, governor, hash("user:" + String.valueOf(userName)
+                .toLowerCase()));
+    }
+
+    /**
+     * Execute the query and pass the response body to the given handler without reading it into memory. Unlike
+     * {@link #query(QueryRequest)} only the page described by the start and page size of the request is fetched.
+     *
+     * @param request
+     *            query request
+     * @param handler
+     *            consumer of the response body
+     * @throws IOException
+     * @throws AutomicException
+     */
+    public void query(QueryRequest request, ResponseStreamHandler handler) throws IOException, AutomicException {
+        StreamingGet get = new StreamingGet(client.getWsapiUrl() + request.toUrl(), handler);
+        streamingClient.doStreamingRequest(get);
+        if (get.failure != null) {
+            throw get.failure;
+        }
+    }
+
+    /**
+     * Create an object whose field holds the Base64 encoded content of a file, e.g. an AttachmentContent. The file is
+     * encoded while it is sent instead of building the request body in memory. Only the reference of the created
+     * object is fetched so that the content is not sent back.
+     *
+     * @param type
+     *            type of the object
+     * @param field
+     *            name of the field holding the content
+     * @param file
+     *            file to be sent
+     * @param compression
+     *            compression applied to the file before it is encoded
+     * @return {@link CreateResponse}
+     * @throws IOException
+     */
+    public CreateResponse create(String type, String field, Path file, Base64FileEntity.Compression compression)
+            throws IOException {
+        CreateRequest request = new CreateRequest(type, new JsonObject());
+        request.setFetch(new Fetch("ObjectID"));
+        HttpPost post = new HttpPost(client.getWsapiUrl() + request.toUrl());
+        String prefix = "{\"" + type + "\":{\"" + field + "\":\"";
+        post.setEntity(new Base64FileEntity(file, prefix, "\"}}", Files.size(file), compression));
+        return new CreateResponse(streamingClient.doStreamingRequest(post));
+    }
+
+    /**
+     * Method to get the identity of the user, i.e. a hash of the user name or the API key, which tells the
+     * references resolved by different users apart without revealing their credentials.
+     *
+     * @return identity of the user
+     */
+    public String getIdentity() {
+        return identity;
+    }
+
+    /**
+     * Method to get the statistics of the connection pool for diagnostics.
+     *
+     * @return leased, pending and available connections
+     */
+    public PoolStats getPoolStats() {
+        return ((PoolingClientConnectionManager) client.getConnectionManager()).getTotalStats();
+    }
+
+    /**
+     * Method to get the governor of the requests for diagnostics.
+     *
+     * @return {@link RequestGovernor}
+     */
+    public RequestGovernor getGovernor() {
+        return governor;
+    }
+
+    private static ClientConnectionManager createPool(PoolSettings settings) {
+        SchemeRegistry registry = new SchemeRegistry();
+        registry.register(new Scheme(Constants.HTTP, HTTP_PORT, PlainSocketFactory.getSocketFactory()));
+        registry.register(new Scheme(Constants.HTTPS, Constants.AC_PORT, getSSLSocketFactory()));
+        PoolingClientConnectionManager pool = new PoolingClientConnectionManager(registry);
+        pool.setMaxTotal(settings.maxTotal);
+        pool.setDefaultMaxPerRoute(settings.maxPerRoute);
+        return pool;
+    }
+
+    // The session cache belongs to the SSL context, hence a single factory is used by all the clients.
+    private static synchronized SSLSocketFactory getSSLSocketFactory() {
+        if (sslSocketFactory == null) {
+            sslSocketFactory = SSLSocketFactory.getSocketFactory();
+        }
+        return sslSocketFactory;
+    }
+
+    // Keep connections alive as long as the server allows but no longer than configured.
+    private static ConnectionKeepAliveStrategy createKeepAliveStrategy(final PoolSettings settings) {
+        return new DefaultConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long duration = super.getKeepAliveDuration(response, context);
+                return duration > 0 && duration < settings.keepAlive ? duration : settings.keepAlive;
+            }
+        };
+    }
+
+    // Execute the request within the limits of the governor and retry it if it has been throttled or failed
+    // transiently. Requests which modify data are only sent again if the server refused them with 429.
+    private static String executeGoverned(DecompressingHttpClient client, RequestGovernor governor,
+            HttpRequestBase request) throws IOException {
+        String method = request.getMethod();
+        boolean idempotent = HttpGet.METHOD_NAME.equals(method) || HttpDelete.METHOD_NAME.equals(method);
+        Metrics metrics = Metrics.current();
+        String endpoint = Metrics.endpoint(method, request.getURI());
+        CountingEntity requestEntity = null;
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntityEnclosingRequest enclosing = (HttpEntityEnclosingRequest) request;
+            if (enclosing.getEntity() != null) {
+                requestEntity = new CountingEntity(enclosing.getEntity());
+                enclosing.setEntity(requestEntity);
+            }
+        }
+        for (int attempt = 0;; attempt++) {
+            String reason = null;
+            long retryAfter = 0;
+            boolean throttled = false;
+            boolean failed = true;
+            long latency = -1;
+            CountingEntity responseEntity = null;
+            if (requestEntity != null) {
+                requestEntity.count = 0;
+            }
+            governor.acquire();
+            long start = System.nanoTime();
+            try {
+                HttpResponse response = null;
+                try {
+                    response = client.execute(request);
+                } catch (IOException e) {
+                    if (!idempotent || attempt >= governor.getMaxRetries() || !RequestGovernor.isTransient(e)) {
+                        throw e;
+                    }
+                    reason = e.toString();
+                }
+                if (response != null) {
+                    latency = System.nanoTime() - start;
+                    HttpEntity entity = response.getEntity();
+                    if (entity != null) {
+                        responseEntity = new CountingEntity(entity);
+                        entity = responseEntity;
+                    }
+                    try {
+                        StatusLine statusLine = response.getStatusLine();
+                        int status = statusLine.getStatusCode();
+                        if (status == HttpStatus.SC_OK) {
+                            String body = consume(request, entity);
+                            failed = false;
+                            return body;
+                        }
+                        throttled = status == SC_TOO_MANY_REQUESTS || status == HttpStatus.SC_SERVICE_UNAVAILABLE;
+                        retryAfter = throttled ? getRetryAfter(response) : 0;
+                        if (!throttled || !(idempotent || status == SC_TOO_MANY_REQUESTS)
+                                || attempt >= governor.getMaxRetries()) {
+                            throw new IOException(statusLine.toString());
+                        }
+                        reason = statusLine.toString();
+                    } finally {
+                        EntityUtils.consumeQuietly(entity);
+                    }
+                }
+            } finally {
+                long end = System.nanoTime();
+                governor.release(latency >= 0 ? latency : end - start, throttled, retryAfter);
+                metrics.request(endpoint, end - start, requestEntity != null ? requestEntity.count : 0,
+                        responseEntity != null ? responseEntity.count : 0, failed);
+            }
+            governor.backoff(attempt, retryAfter, reason);
+            metrics.retry(endpoint);
+            request.reset();
+        }
+    }
+
+    // Read the response body or hand it over to the handler of a streaming request. Once the handler started
+    // consuming the body the request is not sent again.
+    private static String consume(HttpRequestBase request, HttpEntity entity) throws IOException {
+        if (!(request instanceof StreamingGet)) {
+            return EntityUtils.toString(entity, "utf-8");
+        }
+        StreamingGet get = (StreamingGet) request;
+        try (InputStream content = entity.getContent()) {
+            get.handler.handle(content);
+        } catch (AutomicException e) {
+            get.failure = e;
+        }
+        return null;
+    }
+
+    private static String hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Retry-After given in seconds, the HTTP date format is not used by the server
+    private static long getRetryAfter(HttpResponse response) {
+        Header header = response.getFirstHeader("Retry-After");
+        long seconds = header != null ? CommonUtil.parseLongValue(header.getValue().trim(), 0) : 0;
+        return Math.max(seconds, 0) * 1000L;
+    }
+
+    /**
+     * Settings of the connection pool and the request governor of a client.
+     */
+    public static final class PoolSettings {
+
+        private final int maxTotal;
+        private final int maxPerRoute;
+        private final long keepAlive;
+        private final int rate;
+        private final int maxRetries;
+
+        /**
+         * @param maxTotal
+         *            maximum number of connections
+         * @param maxPerRoute
+         *            maximum number of connections to the same host
+         * @param keepAlive
+         *            time in milliseconds an idle connection is kept alive
+         * @param rate
+         *            maximum number of requests per second, 0 for no limit
+         * @param maxRetries
+         *            maximum number of retries of a request
+         */
+        public PoolSettings(int maxTotal, int maxPerRoute, long keepAlive, int rate, int maxRetries) {
+            this.maxTotal = maxTotal;
+            this.maxPerRoute = maxPerRoute;
+            this.keepAlive = keepAlive;
+            this.rate = rate;
+            this.maxRetries = maxRetries;
+        }
+
+        /**
+         * Method to read the settings defined by the environment variables.
+         *
+         * @return {@link PoolSettings}
+         */
+        public static PoolSettings fromEnvironment() {
+            int maxTotal = CommonUtil.getEnvParameter(Constants.ENV_MAX_CONNECTIONS, Constants.AC_MAX_CONNECTIONS);
+            int maxPerRoute = CommonUtil.getEnvParameter(Constants.ENV_MAX_CONNECTIONS_PER_ROUTE, maxTotal);
+            int keepAlive = CommonUtil.getEnvParameter(Constants.ENV_KEEP_ALIVE, Constants.AC_KEEP_ALIVE);
+            int rate = CommonUtil.getEnvParameter(Constants.ENV_RATE_LIMIT, 0);
+            int maxRetries = CommonUtil.getEnvParameter(Constants.ENV_MAX_RETRIES, Constants.AC_MAX_RETRIES);
+            return new PoolSettings(Math.max(maxTotal, 1), Math.max(Math.min(maxPerRoute, maxTotal), 1),
+                    Math.max(keepAlive, 0) * 1000L, Math.max(rate, 0), Math.max(maxRetries, 0));
+        }
+
+        private RequestGovernor createGovernor() {
+            return new RequestGovernor(maxTotal, rate, maxRetries);
+        }
+
+        @Override
+        public String toString() {
+            return "[maxTotal: " + maxTotal + "; maxPerRoute: " + maxPerRoute + "; keepAlive: " + keepAlive
+                    + "; rate: " + rate + "; maxRetries: " + maxRetries + "]";
+        }
+    }
+
+    /**
+     * Counts the bytes of a request or a response body. The bytes of a response are counted after it has been
+     * decompressed.
+     */
+    private static final class CountingEntity extends HttpEntityWrapper {
+
+        private long count;
+
+        CountingEntity(HttpEntity entity) {
+            super(entity);
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new FilterInputStream(super.getContent()) {
+
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        count++;
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    if (n > 0) {
+                        count += n;
+                    }
+                    return n;
+                }
+            };
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            super.writeTo(new FilterOutputStream(out) {
+
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    count++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    count += len;
+                }
+            });
+        }
+    }
+
+    /**
+     * Get request whose response is consumed by a {@link ResponseStreamHandler}.
+     */
+    private static class StreamingGet extends HttpGet {
+
+        private final ResponseStreamHandler handler;
+        private AutomicException failure;
+
+        StreamingGet(String uri, ResponseStreamHandler handler) {
+            super(uri);
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * Client which sends a request along with the authentication details without buffering the request or the
+     * response.
+     */
+    private interface StreamingClient {
+
+        String doStreamingRequest(HttpRequestBase request) throws IOException;
+    }
+
+    private static class PooledApiKeyClient extends ApiKeyClient implements StreamingClient {
+
+        private final PoolSettings settings;
+        private final RequestGovernor governor;
+
+        PooledApiKeyClient(URI server, String apiKey, PoolSettings settings, RequestGovernor governor) {
+            super(server, apiKey);
+            this.settings = settings;
+            this.governor = governor;
+            setKeepAliveStrategy(createKeepAliveStrategy(settings));
+        }
+
+        @Override
+        public String doStreamingRequest(HttpRequestBase request) throws IOException {
+            return doRequest(request);
+        }
+
+        @Override
+        protected String executeRequest(HttpRequestBase request) throws IOException {
+            return executeGoverned(client, governor, request);
+        }
+
+        @Override
+        protected ClientConnectionManager createClientConnectionManager() {
+            return createPool(settings);
+        }
+    }
+
+    private static class PooledBasicAuthClient extends BasicAuthClient implements StreamingClient {
+
+        private final PoolSettings settings;
+        private final RequestGovernor governor;
+
+        PooledBasicAuthClient(URI server, String userName, String password, PoolSettings settings,
+                RequestGovernor governor) {
+            super(server, userName, password);
+            this.settings = settings;
+            this.governor = governor;
+            setKeepAliveStrategy(createKeepAliveStrategy(settings));
+        }
+
+        @Override
+        public String doStreamingRequest(HttpRequestBase request) throws IOException {
+            return doRequest(request);
+        }
+
+        @Override
+        protected String executeRequest(HttpRequestBase request) throws IOException {
+            return executeGoverned(client, governor, request);
+        }
+
+        @Override
+        protected ClientConnectionManager createClientConnectionManager() {
+            return createPool(settings);
+        }
+    }
+}
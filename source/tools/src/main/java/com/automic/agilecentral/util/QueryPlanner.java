@@ -0,0 +1,294 @@
+package com.automic.agilecentral.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.message.BasicNameValuePair;
+
+import com.automic.agilecentral.constants.Constants;
+import com.automic.agilecentral.exception.AutomicException;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.rallydev.rest.RallyRestApi;
+import com.rallydev.rest.request.QueryRequest;
+import com.rallydev.rest.response.QueryResponse;
+import com.rallydev.rest.util.Fetch;
+import com.rallydev.rest.util.QueryFilter;
+
+/**
+ * Queries the objects whose field is equal to one of many values e.g. the work items of a list of formatted ids. The
+ * values are split into as few chunks as the maximum URL length defined by {@value Constants#ENV_MAX_URL_LENGTH}
+ * allows and the chunks are queried concurrently. A chunk is queried using the in operator, or a balanced tree of OR
+ * conditions if the server does not support it or a value can not be listed.
+ *
+ */
+public final class QueryPlanner {
+
+    private static final int MAX_PAGE_SIZE = 2000;
+    private static final String SEPARATOR = ",";
+    // servers which rejected a query using the in operator
+    private static final Set<String> IN_UNSUPPORTED = Collections.newSetFromMap(
+            new ConcurrentHashMap<String, Boolean>());
+    // errors of a server which can not parse the in operator
+    private static final Pattern IN_ERROR = Pattern.compile(
+            "could not parse|[\"']in[\"']|\\bin\\b.*\\boperator\\b|\\boperator\\b.*\\bin\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private final RallyRestApi restApi;
+    private final String type;
+    private final String workspaceRef;
+    private final List<String> fetch;
+    private final int maxUrlLength;
+
+    /**
+     * @param restApi
+     *            client which can be used by several threads
+     * @param type
+     *            type of the objects
+     * @param workspaceRef
+     *            workspace reference, null for the default workspace
+     * @param fetch
+     *            fields to fetch
+     */
+    public QueryPlanner(RallyRestApi restApi, String type, String workspaceRef, List<String> fetch) {
+        this.restApi = restApi;
+        this.type = type;
+        this.workspaceRef = workspaceRef;
+        this.fetch = fetch;
+        this.maxUrlLength = CommonUtil.getEnvParameter(Constants.ENV_MAX_URL_LENGTH, Constants.AC_MAX_URL_LENGTH);
+    }
+
+    /**
+     * Method to query the objects whose field is equal to one of the values.
+     *
+     * @param field
+     *            field to compare
+     * @param values
+     *            values of the field, duplicates are queried once
+     * @param concurrency
+     *            maximum number of chunks queried in parallel
+     * @return objects found in the order of the chunks
+     * @throws AutomicException
+     */
+    public List<JsonObject> queryEqual(String field, Collection<String> values, int concurrency)
+            throws AutomicException {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(values));
+        if (distinct.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String server = restApi.getClient().getServer();
+        boolean useIn = !IN_UNSUPPORTED.contains(server) && canListValues(distinct);
+        List<Chunk> chunks = plan(field, distinct, useIn);
+        List<JsonObject> results = new ArrayList<>(distinct.size());
+        int next = 0;
+        if (useIn) {
+            // the first chunk tells whether the server supports the in operator
+            QueryResponse response = chunks.get(0).send();
+            if (response.wasSuccessful()) {
+                addResults(results, response);
+                next = 1;
+            } else {
+                // other errors e.g. of an overloaded server do not tell that the in operator is not supported
+                if (isInError(response.getErrors())) {
+                    IN_UNSUPPORTED.add(server);
+                }
+                ConsoleWriter.writeln("Query using the in operator failed " + Arrays.toString(response.getErrors())
+                        + ", querying using OR conditions");
+                chunks = plan(field, distinct, false);
+            }
+        }
+        results.addAll(queryAll(chunks.subList(next, chunks.size()), concurrency));
+        return results;
+    }
+
+    private static boolean isInError(String[] errors) {
+        for (String error : errors) {
+            if (error != null && IN_ERROR.matcher(error).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method to combine the filters with OR into a balanced tree, so that the depth of the query grows with the
+     * logarithm of the number of filters instead of linearly.
+     *
+     * @param filters
+     *            filters to combine
+     * @return combined filter, null if there is no filter
+     */
+    public static QueryFilter or(List<QueryFilter> filters) {
+        return filters.isEmpty() ? null : or(filters, 0, filters.size());
+    }
+
+    private static QueryFilter or(List<QueryFilter> filters, int from, int to) {
+        if (to - from == 1) {
+            return filters.get(from);
+        }
+        int middle = (from + to) >>> 1;
+        return or(filters, from, middle).or(or(filters, middle, to));
+    }
+
+    // Split the values so that the URL of each chunk stays within the maximum length. The cost of a value is the
+    // length of its encoded condition, hence the number of values per chunk depends on their length.
+    private List<Chunk> plan(String field, List<String> values, boolean useIn) {
+        int budget = maxUrlLength - getBaseUrlLength();
+        int fixed = useIn ? encodedLength("(" + field + " " + Constants.IN_OPERATOR + " )") : 0;
+        int overhead = encodedLength(useIn ? SEPARATOR : "( OR )");
+        List<Chunk> chunks = new ArrayList<>();
+        List<String> chunk = new ArrayList<>();
+        int length = fixed;
+        for (String value : values) {
+            String condition = useIn ? value : new QueryFilter(field, Constants.EQUALS_OPERATOR, value).toString();
+            int cost = encodedLength(condition) + overhead;
+            if (!chunk.isEmpty() && (length + cost > budget || chunk.size() == MAX_PAGE_SIZE)) {
+                chunks.add(new Chunk(field, chunk, useIn));
+                chunk = new ArrayList<>();
+                length = fixed;
+            }
+            chunk.add(value);
+            length += cost;
+        }
+        chunks.add(new Chunk(field, chunk, useIn));
+        return chunks;
+    }
+
+    private List<JsonObject> queryAll(List<Chunk> chunks, int concurrency) throws AutomicException {
+        List<JsonObject> results = new ArrayList<>();
+        if (chunks.size() <= 1 || concurrency <= 1) {
+            for (Chunk chunk : chunks) {
+                results.addAll(chunk.call());
+            }
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, chunks.size()));
+        try {
+            List<Future<List<JsonObject>>> futures = new ArrayList<>(chunks.size());
+            for (Chunk chunk : chunks) {
+                futures.add(executor.submit(chunk));
+            }
+            for (Future<List<JsonObject>> future : futures) {
+                results.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AutomicException(String.format("Query of %s has been interrupted", type));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AutomicException) {
+                throw (AutomicException) e.getCause();
+            }
+            ConsoleWriter.writeln(e.getCause());
+            throw new AutomicException(e.getCause().getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    private void addResults(List<JsonObject> results, QueryResponse response) throws AutomicException {
+        if (!response.wasSuccessful()) {
+            ConsoleWriter.writeln(Arrays.toString(response.getErrors()));
+            RallyUtil.checkStaleRefs(Arrays.toString(response.getErrors()), workspaceRef);
+            throw new AutomicException(String.format("Unable to query %s", type));
+        }
+        for (JsonElement result : response.getResults()) {
+            results.add(result.getAsJsonObject());
+        }
+    }
+
+    private QueryRequest newRequest(QueryFilter filter, int pageSize) {
+        QueryRequest request = new QueryRequest(type);
+        if (workspaceRef != null) {
+            request.setWorkspace(workspaceRef);
+        }
+        if (fetch != null && !fetch.isEmpty()) {
+            request.setFetch(new Fetch(fetch.toArray(new String[fetch.size()])));
+        }
+        request.setQueryFilter(filter);
+        request.setPageSize(pageSize);
+        return request;
+    }
+
+    // length of the URL without the query filter
+    private int getBaseUrlLength() {
+        String url = restApi.getClient().getServer() + "/slm/webservice/" + restApi.getWsapiVersion()
+                + newRequest(null, MAX_PAGE_SIZE).toUrl() + "&query=";
+        return url.length();
+    }
+
+    private static int encodedLength(String value) {
+        return URLEncodedUtils.format(Arrays.asList(new BasicNameValuePair("q", value)), "utf-8").length() - 2;
+    }
+
+    // values which can be listed as the operand of the in operator
+    private static boolean canListValues(List<String> values) {
+        for (String value : values) {
+            if (value.isEmpty() || value.contains(SEPARATOR) || value.contains(" ") || value.contains("\"")
+                    || value.contains("(") || value.contains(")")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Values queried by a single request.
+     */
+    private final class Chunk implements Callable<List<JsonObject>> {
+
+        private final QueryFilter filter;
+        private final int size;
+
+        Chunk(String field, List<String> values, boolean useIn) {
+            size = values.size();
+            if (useIn) {
+                StringBuilder operand = new StringBuilder();
+                for (String value : values) {
+                    if (operand.length() > 0) {
+                        operand.append(SEPARATOR);
+                    }
+                    operand.append(value);
+                }
+                filter = new QueryFilter(field, Constants.IN_OPERATOR, operand.toString());
+            } else {
+                List<QueryFilter> conditions = new ArrayList<>(size);
+                for (String value : values) {
+                    conditions.add(new QueryFilter(field, Constants.EQUALS_OPERATOR, value));
+                }
+                filter = or(conditions);
+            }
+        }
+
+        QueryResponse send() throws AutomicException {
+            try {
+                return restApi.query(newRequest(filter, Math.min(size, MAX_PAGE_SIZE)));
+            } catch (IOException e) {
+                ConsoleWriter.writeln(e);
+                throw new AutomicException(String.format("Error occured while querying %s : %s", type,
+                        e.getMessage()));
+            }
+        }
+
+        @Override
+        public List<JsonObject> call() throws AutomicException {
+            List<JsonObject> results = new ArrayList<>(size);
+            addResults(results, send());
+            return results;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.automic.agilecentral.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.automic.agilecentral.constants.Constants;
+import com.automic.agilecentral.exception.AutomicException;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.rallydev.rest.RallyRestApi;
+import com.rallydev.rest.util.Ref;
+
+/**
+ * This class packs create, update and delete operations into requests to the batch endpoint of the CA Agile Central
+ * web services API so that many objects are written with a single HTTP request. The response of a batch request is
+ * split into one result per operation.
+ *
+ */
+public final class RallyBatchUtil {
+
+    private static final String BATCH_ENDPOINT = "/batch";
+    private static final String FETCH = "?fetch=" + Constants.FORMATTED_ID + ",ObjectID";
+    private static final String POST = "POST";
+    private static final String DELETE = "DELETE";
+
+    private RallyBatchUtil() {
+    }
+
+    /**
+     * Method to execute the operations with a single batch request.
+     *
+     * @param restApi
+     * @param entries
+     *            operations to execute
+     * @return result of each operation in the order of the operations
+     * @throws IOException
+     * @throws AutomicException
+     */
+    public static List<Result> execute(RallyRestApi restApi, List<Entry> entries) throws IOException,
+            AutomicException {
+        JsonArray batch = new JsonArray();
+        for (Entry entry : entries) {
+            JsonObject wrapper = new JsonObject();
+            wrapper.add("Entry", entry.toJson());
+            batch.add(wrapper);
+        }
+        JsonObject request = new JsonObject();
+        request.add("Batch", batch);
+
+        JsonObject batchResult;
+        try {
+            String response = restApi.getClient().doPost(BATCH_ENDPOINT, request.toString());
+            batchResult = new JsonParser().parse(response).getAsJsonObject().getAsJsonObject("BatchResult");
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new AutomicException("Invalid response of batch request : " + e.getMessage());
+        }
+        if (batchResult == null) {
+            throw new AutomicException("Invalid response of batch request");
+        }
+
+        List<String> errors = readMessages(batchResult, "Errors");
+        if (!errors.isEmpty()) {
+            throw new AutomicException("Batch request failed : " + errors);
+        }
+
+        JsonArray responses = batchResult.getAsJsonArray("Results");
+        if (responses == null || responses.size() != entries.size()) {
+            throw new AutomicException(String.format("Batch request returned %s results, expected %s",
+                    responses == null ? 0 : responses.size(), entries.size()));
+        }
+        List<Result> results = new ArrayList<>(entries.size());
+        for (JsonElement response : responses) {
+            results.add(new Result(unwrap(response.getAsJsonObject())));
+        }
+        return results;
+    }
+
+    // Results may be wrapped into an object like {"CreateResult": {...}} as returned by the single object endpoints
+    private static JsonObject unwrap(JsonObject response) {
+        if (response.entrySet().size() == 1) {
+            for (Map.Entry<String, JsonElement> member : response.entrySet()) {
+                if (member.getKey().endsWith("Result") && member.getValue().isJsonObject()) {
+                    return member.getValue().getAsJsonObject();
+                }
+            }
+        }
+        return response;
+    }
+
+    private static List<String> readMessages(JsonObject response, String name) {
+        List<String> messages = new ArrayList<>();
+        JsonArray array = response.getAsJsonArray(name);
+        if (array != null) {
+            for (JsonElement message : array) {
+                messages.add(message.getAsString());
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Single create, update or delete operation of a batch request.
+     */
+    public static final class Entry {
+
+        private final String path;
+        private final String method;
+        private final String type;
+        private final JsonObject body;
+
+        private Entry(String path, String method, String type, JsonObject body) {
+            this.path = path;
+            this.method = method;
+            this.type = type;
+            this.body = body;
+        }
+
+        /**
+         * Create a new object of the given type.
+         *
+         * @param type
+         *            type of the object e.g hierarchicalrequirement, defect
+         * @param obj
+         *            fields of the object
+         * @return {@link Entry}
+         */
+        public static Entry create(String type, JsonObject obj) {
+            return new Entry("/" + type.toLowerCase() + "/create" + FETCH, POST, type, obj);
+        }
+
+        /**
+         * Update the object identified by the given reference.
+         *
+         * @param ref
+         *            reference of the object
+         * @param obj
+         *            fields to update
+         * @return {@link Entry}
+         */
+        public static Entry update(String ref, JsonObject obj) {
+            return new Entry(Ref.getRelativeRef(ref) + FETCH, POST, Ref.getTypeFromRef(ref), obj);
+        }
+
+        /**
+         * Delete the object identified by the given reference.
+         *
+         * @param ref
+         *            reference of the object
+         * @return {@link Entry}
+         */
+        public static Entry delete(String ref) {
+            return new Entry(Ref.getRelativeRef(ref), DELETE, null, null);
+        }
+
+        private JsonObject toJson() {
+            JsonObject entry = new JsonObject();
+            entry.addProperty("Path", path);
+            entry.addProperty("Method", method);
+            if (body != null) {
+                JsonObject wrapper = new JsonObject();
+                wrapper.add(type, body);
+                entry.add("Body", wrapper);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Outcome of a single operation of a batch request.
+     */
+    public static final class Result {
+
+        private final List<String> errors;
+        private final JsonObject object;
+
+        private Result(JsonObject response) {
+            this.errors = readMessages(response, "Errors");
+            JsonElement obj = response.get("Object");
+            this.object = obj != null && obj.isJsonObject() ? obj.getAsJsonObject() : null;
+        }
+
+        public boolean wasSuccessful() {
+            return errors.isEmpty();
+        }
+
+        public String[] getErrors() {
+            return errors.toArray(new String[errors.size()]);
+        }
+
+        /**
+         * @return created or updated object, null for delete operations
+         */
+        public JsonObject getObject() {
+            return object;
+        }
+    }
+}
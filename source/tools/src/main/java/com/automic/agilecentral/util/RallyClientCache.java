@@ -0,0 +1,69 @@
+package com.automic.agilecentral.util;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the Rally clients of a long running process e.g. the daemon, so that the actions executed by it reuse the
+ * connections and TLS sessions of the previous actions. Clients are only kept once the cache has been enabled.
+ *
+ */
+public final class RallyClientCache {
+
+    private static final Map<String, PooledRallyRestApi> CLIENTS = new HashMap<>();
+    private static boolean enabled;
+
+    private RallyClientCache() {
+    }
+
+    public static synchronized void enable() {
+        enabled = true;
+    }
+
+    public static synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Method to get the client registered for the given key.
+     *
+     * @param key
+     *            identifies server, credentials and settings of the client
+     * @return client or null
+     */
+    public static synchronized PooledRallyRestApi get(String key) {
+        return CLIENTS.get(key);
+    }
+
+    /**
+     * Method to register a client. If another client has been registered for the key in the meantime, that one is
+     * returned and the caller has to close its own client.
+     *
+     * @param key
+     * @param client
+     * @return registered client
+     */
+    public static synchronized PooledRallyRestApi register(String key, PooledRallyRestApi client) {
+        PooledRallyRestApi existing = CLIENTS.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        CLIENTS.put(key, client);
+        return client;
+    }
+
+    /**
+     * Method to close all the registered clients.
+     */
+    public static synchronized void closeAll() {
+        for (PooledRallyRestApi client : CLIENTS.values()) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                ConsoleWriter.writeln("Unable to close Rally client");
+            }
+        }
+        CLIENTS.clear();
+    }
+}
@@ -5,17 +5,23 @@ package com.automic.agilecentral.util;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import com.automic.agilecentral.constants.Constants;
 import com.automic.agilecentral.exception.AutomicException;
+import com.automic.agilecentral.exception.StaleRefException;
 import com.google.gson.JsonObject;
 import com.rallydev.rest.RallyRestApi;
+import com.rallydev.rest.request.CreateRequest;
 import com.rallydev.rest.request.QueryRequest;
+import com.rallydev.rest.response.CreateResponse;
 import com.rallydev.rest.response.QueryResponse;
 import com.rallydev.rest.util.Fetch;
 import com.rallydev.rest.util.QueryFilter;
@@ -26,6 +32,10 @@ import com.rallydev.rest.util.QueryFilter;
  */
 public class RallyUtil {
 
+    // errors of requests which refer to an object which does not exist
+    private static final Pattern NOT_FOUND = Pattern.compile("not found|cannot find|could not read|\\b404\\b",
+            Pattern.CASE_INSENSITIVE);
+
     /**
      * this method is used to read the custom input fields from file and add them to the json.
      * 
@@ -63,6 +73,22 @@ public class RallyUtil {
      * @throws AutomicException
      */
     public static String getWorspaceRef(RallyRestApi restApi, String workspaceName) throws AutomicException {
+        long start = System.nanoTime();
+        try {
+            String server = restApi.getClient().getServer();
+            String identity = getIdentity(restApi);
+            String ref = RefCache.getInstance().get(server, identity, null, Constants.WORKSPACE, workspaceName);
+            if (ref == null) {
+                ref = queryWorspaceRef(restApi, workspaceName);
+                RefCache.getInstance().put(server, identity, null, Constants.WORKSPACE, workspaceName, ref);
+            }
+            return ref;
+        } finally {
+            Metrics.current().phase(Metrics.REF_RESOLUTION, start);
+        }
+    }
+
+    private static String queryWorspaceRef(RallyRestApi restApi, String workspaceName) throws AutomicException {
         QueryRequest queryRequest = new QueryRequest(Constants.WORKSPACE);
         queryRequest.setQueryFilter(new QueryFilter(Constants.NAME, Constants.EQUALS_OPERATOR, workspaceName));
         queryRequest.setFetch(new Fetch(new String[] { Constants.REFERENCE }));
@@ -101,6 +127,23 @@ public class RallyUtil {
      */
     public static String getProjectRef(RallyRestApi restApi, String projectName, String workspaceRef)
             throws AutomicException {
+        long start = System.nanoTime();
+        try {
+            String server = restApi.getClient().getServer();
+            String identity = getIdentity(restApi);
+            String ref = RefCache.getInstance().get(server, identity, workspaceRef, Constants.PROJECT, projectName);
+            if (ref == null) {
+                ref = queryProjectRef(restApi, projectName, workspaceRef);
+                RefCache.getInstance().put(server, identity, workspaceRef, Constants.PROJECT, projectName, ref);
+            }
+            return ref;
+        } finally {
+            Metrics.current().phase(Metrics.REF_RESOLUTION, start);
+        }
+    }
+
+    private static String queryProjectRef(RallyRestApi restApi, String projectName, String workspaceRef)
+            throws AutomicException {
         QueryRequest queryRequest = new QueryRequest(Constants.PROJECT);
         queryRequest.setQueryFilter(new QueryFilter(Constants.NAME, Constants.EQUALS_OPERATOR, projectName));
         queryRequest.setFetch(new Fetch(new String[] { Constants.REFERENCE }));
@@ -145,6 +188,76 @@ public class RallyUtil {
      */
     public static String getWorkItemRef(RallyRestApi restApi, String formattedId, String workspaceRef, String type)
             throws AutomicException {
+        long start = System.nanoTime();
+        try {
+            String server = restApi.getClient().getServer();
+            String identity = getIdentity(restApi);
+            String ref = RefCache.getInstance().get(server, identity, workspaceRef, type, formattedId);
+            if (ref == null) {
+                ref = queryWorkItemRef(restApi, formattedId, workspaceRef, type);
+                RefCache.getInstance().put(server, identity, workspaceRef, type, formattedId, ref);
+            }
+            return ref;
+        } finally {
+            Metrics.current().phase(Metrics.REF_RESOLUTION, start);
+        }
+    }
+
+    /**
+     * Remove the work item ref from the reference cache e.g. after the work item has been deleted.
+     * 
+     * @param restApi
+     * @param formattedId
+     * @param workspaceRef
+     * @param type
+     */
+    public static void invalidateWorkItemRef(RallyRestApi restApi, String formattedId, String workspaceRef,
+            String type) {
+        RefCache.getInstance().invalidate(restApi.getClient().getServer(), getIdentity(restApi), workspaceRef, type,
+                formattedId);
+    }
+
+    /**
+     * Check whether a request failed because an object has not been found, while some of the references it used have
+     * been read from the reference cache. These references are removed from the cache, only the ones named by the
+     * error if the error names any of them.
+     * 
+     * @param error
+     *            errors of the failed request
+     * @param refs
+     *            references used by the request, may contain null
+     * @throws StaleRefException
+     *             if a cached reference has been removed, so that the action can resolve it again
+     */
+    public static void checkStaleRefs(String error, String... refs) throws StaleRefException {
+        if (error == null || !NOT_FOUND.matcher(error).find()) {
+            return;
+        }
+        List<String> named = new ArrayList<>();
+        for (String ref : refs) {
+            if (ref != null && error.contains(ref.substring(ref.lastIndexOf('/') + 1))) {
+                named.add(ref);
+            }
+        }
+        RefCache cache = RefCache.getInstance();
+        boolean invalidated = false;
+        for (String ref : named.isEmpty() ? Arrays.asList(refs) : named) {
+            if (ref != null && cache.invalidateServed(ref)) {
+                invalidated = true;
+            }
+        }
+        if (invalidated) {
+            throw new StaleRefException("A cached reference is stale : " + error);
+        }
+    }
+
+    // references are only cached for clients which know the identity of their user
+    private static String getIdentity(RallyRestApi restApi) {
+        return restApi instanceof PooledRallyRestApi ? ((PooledRallyRestApi) restApi).getIdentity() : null;
+    }
+
+    private static String queryWorkItemRef(RallyRestApi restApi, String formattedId, String workspaceRef, String type)
+            throws AutomicException {
         QueryRequest queryRequest = new QueryRequest(type);
         queryRequest.setQueryFilter(new QueryFilter(Constants.FORMATTED_ID, Constants.EQUALS_OPERATOR, formattedId));
         queryRequest.setFetch(new Fetch(new String[] { Constants.REFERENCE }));
@@ -177,20 +290,21 @@ public class RallyUtil {
     public static QueryResponse queryOR(RallyRestApi restApi, String type, String workspaceRef,
             Map<String, List<String>> queryFilter, List<String> fetch, Map<String, String> queryParam)
             throws IOException, AutomicException {
-        QueryFilter qf = null;
+        List<QueryFilter> conditions = new ArrayList<>();
         if (null != queryFilter && queryFilter.size() > 0) {
 
             for (Map.Entry<String, List<String>> filter : queryFilter.entrySet()) {
                 List<String> values = filter.getValue();
                 for (String val : values) {
-                    qf = qf == null ? new QueryFilter(filter.getKey(), Constants.EQUALS_OPERATOR, val) : qf
-                            .or(new QueryFilter(filter.getKey(), Constants.EQUALS_OPERATOR, val));
+                    conditions.add(new QueryFilter(filter.getKey(), Constants.EQUALS_OPERATOR, val));
                 }
 
             }
 
         }
 
+        // a balanced tree keeps the nesting of the query shallow for many values
+        QueryFilter qf = QueryPlanner.or(conditions);
         return query(restApi, type, workspaceRef, qf, fetch, queryParam);
 
     }
@@ -226,4 +340,66 @@ public class RallyUtil {
 
     }
 
+    /**
+     * Upload the content of a file as AttachmentContent. The file is compressed and Base64 encoded while it is sent.
+     * 
+     * @param restApi
+     * @param file
+     *            file to be uploaded
+     * @param compression
+     *            compression applied to the file
+     * @return reference of the AttachmentContent
+     * @throws IOException
+     * @throws AutomicException
+     */
+    public static String createAttachmentContent(PooledRallyRestApi restApi, Path file,
+            Base64FileEntity.Compression compression) throws IOException, AutomicException {
+        CreateResponse response = restApi.create("AttachmentContent", Constants.CONTENT, file, compression);
+        if (!response.wasSuccessful()) {
+            ConsoleWriter.writeln(Arrays.toString(response.getErrors()));
+            throw new AutomicException(String.format("Unable to upload the file[%s] : %s", file,
+                    Arrays.toString(response.getErrors())));
+        }
+        return response.getObject().get(Constants.REFERENCE).getAsString();
+    }
+
+    /**
+     * Link uploaded AttachmentContent to a work item.
+     * 
+     * @param restApi
+     * @param workItemRef
+     *            reference of the work item
+     * @param contentRef
+     *            reference of the AttachmentContent
+     * @param name
+     *            name of the attachment
+     * @param contentType
+     *            content type of the attachment
+     * @param description
+     *            description of the attachment, may be empty
+     * @return created Attachment
+     * @throws IOException
+     * @throws AutomicException
+     */
+    public static JsonObject createAttachment(RallyRestApi restApi, String workItemRef, String contentRef,
+            String name, String contentType, String description) throws IOException, AutomicException {
+        JsonObject attachment = new JsonObject();
+        attachment.addProperty(Constants.ARTIFACT, workItemRef);
+        attachment.addProperty(Constants.CONTENT, contentRef);
+        attachment.addProperty("ContentType", contentType);
+        attachment.addProperty(Constants.NAME, name);
+        if (CommonUtil.checkNotEmpty(description)) {
+            attachment.addProperty(Constants.DESCRIPTION, description);
+        }
+
+        CreateResponse response = restApi.create(new CreateRequest("Attachment", attachment));
+        if (!response.wasSuccessful()) {
+            ConsoleWriter.writeln(Arrays.toString(response.getErrors()));
+            checkStaleRefs(Arrays.toString(response.getErrors()), workItemRef);
+            throw new AutomicException(String.format("Unable to attach the file to the work item : %s",
+                    Arrays.toString(response.getErrors())));
+        }
+        return response.getObject();
+    }
+
 }
@@ -0,0 +1,36 @@
+package com.automic.agilecentral.util;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writer of the exported records, each record being a list of field values.
+ *
+ */
+public interface RecordWriter extends AutoCloseable {
+
+    void writeLine(List<String> values) throws IOException;
+
+    void writeLine(String[] values) throws IOException;
+
+    void flush() throws IOException;
+
+    /**
+     * Method to write all the records so that the file is complete up to them, e.g. before the progress of the
+     * export is recorded. Unlike {@link #flush()} this may wait for pending work and cost compression ratio.
+     *
+     * @throws IOException
+     */
+    void sync() throws IOException;
+
+    /**
+     * Method to write all the records and complete the file. Unlike {@link #close()}, which only reports failures, a
+     * file which could not be completed is reported to the caller.
+     *
+     * @throws IOException
+     */
+    void finish() throws IOException;
+
+    @Override
+    void close();
+}
@@ -0,0 +1,359 @@
+package com.automic.agilecentral.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import com.automic.agilecentral.constants.Constants;
+
+/**
+ * Persistent cache of the references resolved by {@link RallyUtil} i.e. workspace, project and work item references.
+ * Entries are keyed by CA Agile Central URL, identity of the user, workspace, type and name and expire after the
+ * configured time to live. The identity is a hash of the user name or API key, so that users do not see the references
+ * resolved by others and no credential is stored. The cache is stored in a properties file which is shared by all the
+ * action runs on the agent. It is disabled unless a time to live has been defined using the environment variable
+ * {@value Constants#ENV_REF_CACHE_TTL}.
+ *
+ */
+public final class RefCache {
+
+    private static final String SEPARATOR = "|";
+
+    // caches by file and time to live, the daemon executes actions with the environments of different clients
+    private static final Map<String, RefCache> INSTANCES = new HashMap<>();
+
+    // references served to the action run of the current thread and the threads it created
+    private static final InheritableThreadLocal<Run> RUN = new InheritableThreadLocal<>();
+    // collects the references served outside of an action run
+    private static final Run UNBOUND = new Run();
+
+    private final File file;
+    private final File lockFile;
+    private final long ttlMillis;
+    private final Properties entries = new Properties();
+    // changes which have not been written yet, null values remove the reference
+    private final Map<String, String> pending = new LinkedHashMap<>();
+    private boolean loaded;
+
+    private RefCache(File file, long ttlMillis) {
+        this.file = file;
+        this.lockFile = new File(file.getPath() + ".lock");
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Method to get the cache configured by the environment variables {@value Constants#ENV_REF_CACHE_TTL} and
+     * {@value Constants#ENV_REF_CACHE_FILE} of the current thread.
+     *
+     * @return {@link RefCache}
+     */
+    public static synchronized RefCache getInstance() {
+        long ttl = CommonUtil.getEnvParameter(Constants.ENV_REF_CACHE_TTL, Constants.AC_REF_CACHE_TTL);
+        String defaultFile = new File(System.getProperty("user.home"), Constants.AC_REF_CACHE_FILE).getPath();
+        File file = new File(CommonUtil.getEnvParameter(Constants.ENV_REF_CACHE_FILE, defaultFile))
+                .getAbsoluteFile();
+        String key = file.getPath() + SEPARATOR + ttl;
+        RefCache instance = INSTANCES.get(key);
+        if (instance == null) {
+            instance = new RefCache(file, ttl * 1000L);
+            INSTANCES.put(key, instance);
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return ttlMillis > 0;
+    }
+
+    /**
+     * Method to start tracking the references served to the action run by the current thread.
+     */
+    public static void startRun() {
+        RUN.set(new Run());
+    }
+
+    /**
+     * Method to stop tracking the references served to the current thread and to write the references added or
+     * removed by the action run to the cache files.
+     */
+    public static void stopRun() {
+        Run run = RUN.get();
+        RUN.remove();
+        if (run != null) {
+            Set<RefCache> changed;
+            synchronized (run) {
+                changed = new HashSet<>(run.changed);
+            }
+            for (RefCache cache : changed) {
+                cache.flush();
+            }
+        }
+    }
+
+    /**
+     * Method to read a reference from the cache.
+     *
+     * @param server
+     *            CA Agile Central URL
+     * @param identity
+     *            identity of the user as returned by {@link PooledRallyRestApi#getIdentity()}, nothing is cached if
+     *            null
+     * @param scope
+     *            reference of the workspace the name is resolved in, may be null
+     * @param type
+     *            type of the object
+     * @param name
+     *            name or formatted id of the object
+     * @return reference or null if there is no valid entry
+     */
+    public synchronized String get(String server, String identity, String scope, String type, String name) {
+        if (!isEnabled() || identity == null) {
+            return null;
+        }
+        if (!loaded) {
+            reload();
+        }
+        String key = key(server, identity, scope, type, name);
+        String value = entries.getProperty(key);
+        if (value == null) {
+            return null;
+        }
+        int index = value.indexOf(SEPARATOR);
+        long expiry = CommonUtil.parseLongValue(value.substring(0, Math.max(index, 0)), 0);
+        if (index < 0 || expiry < System.currentTimeMillis()) {
+            return null;
+        }
+        String ref = value.substring(index + 1);
+        Run run = run();
+        synchronized (run) {
+            run.served.put(key, ref);
+        }
+        return ref;
+    }
+
+    /**
+     * Method to add a reference to the cache.
+     *
+     * @param server
+     * @param identity
+     * @param scope
+     * @param type
+     * @param name
+     * @param ref
+     */
+    public synchronized void put(String server, String identity, String scope, String type, String name, String ref) {
+        if (isEnabled() && identity != null) {
+            update(key(server, identity, scope, type, name), (System.currentTimeMillis() + ttlMillis) + SEPARATOR
+                    + ref);
+        }
+    }
+
+    /**
+     * Method to remove a reference from the cache.
+     *
+     * @param server
+     * @param identity
+     * @param scope
+     * @param type
+     * @param name
+     */
+    public synchronized void invalidate(String server, String identity, String scope, String type, String name) {
+        if (isEnabled() && identity != null) {
+            update(key(server, identity, scope, type, name), null);
+        }
+    }
+
+    /**
+     * Method to remove a reference from the cache if it has been read from the cache by the current action run, e.g.
+     * because the object it refers to has not been found.
+     *
+     * @param ref
+     *            reference
+     * @return true if the reference has been read from the cache and has been removed
+     */
+    public synchronized boolean invalidateServed(String ref) {
+        Set<String> keys = new HashSet<>();
+        Run run = run();
+        synchronized (run) {
+            Iterator<Map.Entry<String, String>> served = run.served.entrySet().iterator();
+            while (served.hasNext()) {
+                Map.Entry<String, String> entry = served.next();
+                if (entry.getValue().equals(ref)) {
+                    keys.add(entry.getKey());
+                    served.remove();
+                }
+            }
+        }
+        for (String key : keys) {
+            update(key, null);
+        }
+        return !keys.isEmpty();
+    }
+
+    /**
+     * Method to remove all the references of the given CA Agile Central URL or all references if no URL is given.
+     * This works even if the cache has been disabled.
+     *
+     * @param server
+     *            CA Agile Central URL, may be null
+     * @return number of removed references
+     * @throws IOException
+     */
+    public synchronized int clear(String server) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(lockFile, "rw")) {
+            // released when the file is closed
+            raf.getChannel().lock();
+            load();
+            Iterator<String> changes = pending.keySet().iterator();
+            while (changes.hasNext()) {
+                if (server == null || changes.next().startsWith(normalize(server) + SEPARATOR)) {
+                    changes.remove();
+                }
+            }
+            int count = 0;
+            Iterator<Object> keys = entries.keySet().iterator();
+            while (keys.hasNext()) {
+                String key = (String) keys.next();
+                if (server == null || key.startsWith(normalize(server) + SEPARATOR)) {
+                    keys.remove();
+                    count++;
+                }
+            }
+            store();
+            return count;
+        }
+    }
+
+    private static String key(String server, String identity, String scope, String type, String name) {
+        return normalize(server) + SEPARATOR + identity + SEPARATOR + (scope != null ? scope : "") + SEPARATOR
+                + type.toLowerCase() + SEPARATOR + name;
+    }
+
+    private static Run run() {
+        Run run = RUN.get();
+        return run != null ? run : UNBOUND;
+    }
+
+    private static String normalize(String server) {
+        String temp = server.toLowerCase();
+        return temp.endsWith("/") ? temp.substring(0, temp.length() - 1) : temp;
+    }
+
+    private void reload() {
+        try {
+            load();
+        } catch (IOException e) {
+            ConsoleWriter.writeln("Unable to read reference cache " + file + " : " + e.getMessage());
+        }
+        loaded = true;
+    }
+
+    // Apply the change to the cached references and write it when the action run stops. Changes outside of an
+    // action run are written at once.
+    private void update(String key, String value) {
+        if (!loaded) {
+            reload();
+        }
+        if (value == null) {
+            entries.remove(key);
+        } else {
+            entries.setProperty(key, value);
+        }
+        pending.put(key, value);
+        Run run = RUN.get();
+        if (run == null) {
+            flush();
+        } else {
+            synchronized (run) {
+                run.changed.add(this);
+            }
+        }
+    }
+
+    // Merge the pending changes into the file while holding the lock, so that concurrent action runs do not lose
+    // entries.
+    private synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (dir != null && !dir.exists()) {
+                dir.mkdirs();
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(lockFile, "rw")) {
+                raf.getChannel().lock();
+                load();
+                for (Map.Entry<String, String> change : pending.entrySet()) {
+                    if (change.getValue() == null) {
+                        entries.remove(change.getKey());
+                    } else {
+                        entries.setProperty(change.getKey(), change.getValue());
+                    }
+                }
+                purgeExpired();
+                store();
+            }
+        } catch (IOException e) {
+            ConsoleWriter.writeln("Unable to update reference cache " + file + " : " + e.getMessage());
+        }
+        pending.clear();
+        loaded = true;
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Object> values = entries.values().iterator();
+        while (values.hasNext()) {
+            String value = (String) values.next();
+            int index = value.indexOf(SEPARATOR);
+            if (index < 0 || CommonUtil.parseLongValue(value.substring(0, index), 0) < now) {
+                values.remove();
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        entries.clear();
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                entries.load(in);
+            }
+        }
+    }
+
+    private void store() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            entries.store(out, "CA Agile Central reference cache");
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * References served to an action run and the caches it changed.
+     */
+    private static final class Run {
+
+        // references by their keys
+        private final Map<String, String> served = new HashMap<>();
+        private final Set<RefCache> changed = new HashSet<>();
+    }
+}
@@ -0,0 +1,206 @@
+package com.automic.agilecentral.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLException;
+
+import org.apache.http.conn.ConnectTimeoutException;
+
+/**
+ * Governs the requests sent by a client so that it runs at the highest throughput the server sustains. A token bucket
+ * caps the request rate if a rate has been configured and the number of concurrent requests is adjusted in AIMD
+ * fashion: it grows by one per window of successful requests and is reduced multiplicatively whenever the server
+ * throttles or the latency rises well above its average. Failed requests are retried after a jittered exponential
+ * backoff.
+ *
+ */
+public final class RequestGovernor {
+
+    private static final double THROTTLE_DECREASE = 0.5;
+    private static final double LATENCY_DECREASE = 0.9;
+    private static final double LATENCY_FACTOR = 3;
+    private static final double LATENCY_WEIGHT = 0.1;
+    private static final long BASE_BACKOFF = 500;
+    private static final long MAX_BACKOFF = 30000;
+
+    private final int maxConcurrency;
+    private final double rate;
+    private final int maxRetries;
+    private final Random random = new Random();
+
+    private double limit;
+    private int inFlight;
+    private double tokens;
+    private long lastRefill;
+    private long pausedUntil;
+    private double averageLatency;
+    private long lastDecrease;
+
+    private int throttled;
+    private int retried;
+
+    /**
+     * @param maxConcurrency
+     *            maximum number of concurrent requests
+     * @param rate
+     *            maximum number of requests per second, 0 for no limit
+     * @param maxRetries
+     *            maximum number of retries of a request
+     */
+    public RequestGovernor(int maxConcurrency, double rate, int maxRetries) {
+        this.maxConcurrency = maxConcurrency;
+        this.rate = rate;
+        this.maxRetries = maxRetries;
+        this.limit = maxConcurrency;
+        this.tokens = Math.max(rate, 1);
+        // System.nanoTime() has an arbitrary origin, times are only compared by their difference
+        this.lastRefill = System.nanoTime();
+        this.pausedUntil = lastRefill;
+        this.lastDecrease = lastRefill;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Method to wait until a request may be sent.
+     *
+     * @throws InterruptedIOException
+     */
+    public synchronized void acquire() throws InterruptedIOException {
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                refill(now);
+                long waitNanos;
+                if (pausedUntil - now > 0) {
+                    waitNanos = pausedUntil - now;
+                } else if (inFlight >= (int) limit) {
+                    waitNanos = 0;
+                } else if (rate > 0 && tokens < 1) {
+                    waitNanos = (long) ((1 - tokens) / rate * TimeUnit.SECONDS.toNanos(1));
+                } else {
+                    inFlight++;
+                    if (rate > 0) {
+                        tokens--;
+                    }
+                    return;
+                }
+                if (waitNanos == 0) {
+                    wait();
+                } else {
+                    TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send the request");
+        }
+    }
+
+    /**
+     * Method to report the outcome of a request sent after {@link #acquire()}.
+     *
+     * @param latencyNanos
+     *            time the request took
+     * @param throttledBy
+     *            true if the server throttled the request
+     * @param retryAfter
+     *            time in milliseconds the server asked to wait, 0 if not given
+     */
+    public synchronized void release(long latencyNanos, boolean throttledBy, long retryAfter) {
+        inFlight--;
+        long now = System.nanoTime();
+        if (throttledBy) {
+            throttled++;
+            decrease(now, THROTTLE_DECREASE);
+            if (retryAfter > 0) {
+                long until = now + TimeUnit.MILLISECONDS.toNanos(retryAfter);
+                if (until - pausedUntil > 0) {
+                    pausedUntil = until;
+                }
+            }
+        } else if (averageLatency > 0 && latencyNanos > LATENCY_FACTOR * averageLatency) {
+            decrease(now, LATENCY_DECREASE);
+        } else {
+            limit = Math.min(maxConcurrency, limit + 1 / limit);
+        }
+        if (!throttledBy) {
+            averageLatency = averageLatency == 0 ? latencyNanos : averageLatency + LATENCY_WEIGHT
+                    * (latencyNanos - averageLatency);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Method to wait before the given retry of a request.
+     *
+     * @param attempt
+     *            number of the failed attempt starting at 0
+     * @param retryAfter
+     *            time in milliseconds the server asked to wait, 0 if not given
+     * @param reason
+     *            reason of the retry
+     * @throws InterruptedIOException
+     */
+    public void backoff(int attempt, long retryAfter, String reason) throws InterruptedIOException {
+        long delay;
+        synchronized (this) {
+            retried++;
+            // full jitter, see exponential backoff
+            long ceiling = Math.min(MAX_BACKOFF, BASE_BACKOFF << Math.min(attempt, 16));
+            delay = Math.max(retryAfter, (long) (random.nextDouble() * ceiling));
+        }
+        ConsoleWriter.writeln(String.format("Request failed with %s, retrying in %s ms", reason, delay));
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry the request");
+        }
+    }
+
+    /**
+     * Method to check if the request may succeed when it is sent again.
+     *
+     * @param e
+     *            exception thrown while sending the request
+     * @return false for errors which will not go away e.g. unknown host or certificate errors
+     */
+    public static boolean isTransient(IOException e) {
+        if (e instanceof UnknownHostException || e instanceof SSLException) {
+            return false;
+        }
+        if (e instanceof InterruptedIOException) {
+            // timeouts are interrupted I/O as well, but unlike an interrupt of the thread they are transient
+            return e instanceof SocketTimeoutException || e instanceof ConnectTimeoutException;
+        }
+        return true;
+    }
+
+    private void refill(long now) {
+        if (rate > 0) {
+            tokens = Math.min(Math.max(rate, 1), tokens + (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+        }
+        lastRefill = now;
+    }
+
+    // decrease at most once per average latency so that a burst of responses counts as a single signal
+    private void decrease(long now, double factor) {
+        if (now - lastDecrease > averageLatency) {
+            limit = Math.max(1, limit * factor);
+            lastDecrease = now;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "[limit: " + (int) limit + "; throttled: " + throttled + "; retried: " + retried + "]";
+    }
+}
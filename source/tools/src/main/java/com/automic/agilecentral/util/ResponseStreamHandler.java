@@ -0,0 +1,23 @@
+package com.automic.agilecentral.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.automic.agilecentral.exception.AutomicException;
+
+/**
+ * Callback used to consume the body of a CA Agile Central response as a stream instead of reading it into memory.
+ *
+ */
+public interface ResponseStreamHandler {
+
+    /**
+     * Method to consume the response body. The stream is closed by the caller once this method returns.
+     *
+     * @param content
+     *            response body
+     * @throws IOException
+     * @throws AutomicException
+     */
+    void handle(InputStream content) throws IOException, AutomicException;
+}